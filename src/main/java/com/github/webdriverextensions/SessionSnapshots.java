@@ -0,0 +1,308 @@
+package com.github.webdriverextensions;
+
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.SESSION_SNAPSHOTS_DIRECTORY_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.SESSION_SNAPSHOTS_MAX_AGE_PROPERTY_NAME;
+
+/**
+ * Captures the state of a logged in session, i.e. the cookies, the local
+ * storage and the session storage of the current page, and restores it into
+ * other sessions so that tests do not have to log in through the UI.
+ *
+ * <p>Snapshots are kept per name and browser configuration. They are kept in
+ * memory, or on disk in the directory set by the
+ * {@code webdriverextensions.sessionsnapshots.directory} property so that
+ * they survive between test runs. Snapshots older than the
+ * {@code webdriverextensions.sessionsnapshots.maxage} property (one hour by
+ * default) are not restored.</p>
+ *
+ * <p>Restoring a snapshot navigates to the origin the snapshot was captured
+ * at, restores the storage in one script and then adds the cookies. Note that
+ * only the cookies visible to the page the snapshot was captured at are
+ * captured.</p>
+ *
+ * @see com.github.webdriverextensions.annotations.SessionSnapshot
+ */
+public class SessionSnapshots {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SessionSnapshots.class);
+
+    private static final Gson gson = new Gson();
+    private static final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Object> loginLocks = new ConcurrentHashMap<>();
+
+    private static final String CAPTURE_SCRIPT
+            = "var dump = function (name) {"
+            + "  var items = {};"
+            + "  try {"
+            + "    var storage = window[name];"
+            + "    for (var i = 0; i < storage.length; i++) {"
+            + "      items[storage.key(i)] = storage.getItem(storage.key(i));"
+            + "    }"
+            + "  } catch (e) {}"
+            + "  return items;"
+            + "};"
+            + "return JSON.stringify({"
+            + "  url: window.location.href,"
+            + "  origin: window.location.protocol + '//' + window.location.host,"
+            + "  localStorage: dump('localStorage'),"
+            + "  sessionStorage: dump('sessionStorage')"
+            + "});";
+
+    private static final String RESTORE_SCRIPT
+            = "var snapshot = JSON.parse(arguments[0]);"
+            + "var load = function (name, items) {"
+            + "  try {"
+            + "    var storage = window[name];"
+            + "    storage.clear();"
+            + "    for (var key in items) {"
+            + "      storage.setItem(key, items[key]);"
+            + "    }"
+            + "  } catch (e) {}"
+            + "};"
+            + "load('localStorage', snapshot.localStorage);"
+            + "load('sessionStorage', snapshot.sessionStorage);";
+
+    /**
+     * Creates the state to snapshot, e.g. by logging in through the UI.
+     * Implementations must have a no argument constructor.
+     */
+    public interface Login {
+
+        void login(WebDriver driver);
+    }
+
+    private static class Snapshot {
+
+        String url;
+        String origin;
+        Map<String, String> localStorage = new LinkedHashMap<>();
+        Map<String, String> sessionStorage = new LinkedHashMap<>();
+        List<SnapshotCookie> cookies = new ArrayList<>();
+        long capturedAt;
+    }
+
+    private static class SnapshotCookie {
+
+        String name;
+        String value;
+        String domain;
+        String path;
+        Long expiry;
+        boolean secure;
+        boolean httpOnly;
+    }
+
+    private SessionSnapshots() {}
+
+    /**
+     * Captures the session of the driver in the WebDriverExtensionsContext.
+     *
+     * @param name the name of the snapshot
+     */
+    public static void capture(String name) {
+        capture(name, WebDriverExtensionsContext.getDriver());
+    }
+
+    public static void capture(String name, WebDriver driver) {
+        String storageJson = (String) ((JavascriptExecutor) driver).executeScript(CAPTURE_SCRIPT);
+        Snapshot snapshot = gson.fromJson(storageJson, Snapshot.class);
+        for (Cookie cookie : driver.manage().getCookies()) {
+            SnapshotCookie snapshotCookie = new SnapshotCookie();
+            snapshotCookie.name = cookie.getName();
+            snapshotCookie.value = cookie.getValue();
+            snapshotCookie.domain = cookie.getDomain();
+            snapshotCookie.path = cookie.getPath();
+            snapshotCookie.expiry = cookie.getExpiry() != null ? cookie.getExpiry().getTime() : null;
+            snapshotCookie.secure = cookie.isSecure();
+            snapshotCookie.httpOnly = cookie.isHttpOnly();
+            snapshot.cookies.add(snapshotCookie);
+        }
+        snapshot.capturedAt = System.currentTimeMillis();
+
+        String key = getKey(name, driver);
+        snapshots.put(key, snapshot);
+        Path directory = getDirectory();
+        if (directory != null) {
+            write(directory.resolve(getFileName(key)), snapshot);
+        }
+        log.debug("Captured session snapshot {} with {} cookies", key, snapshot.cookies.size());
+    }
+
+    /**
+     * Restores a snapshot into the session of the driver in the
+     * WebDriverExtensionsContext.
+     *
+     * @param name the name of the snapshot
+     * @return true if the snapshot was restored, false if there is no
+     * snapshot with the name for the browser or it is too old
+     */
+    public static boolean restore(String name) {
+        return restore(name, WebDriverExtensionsContext.getDriver());
+    }
+
+    public static boolean restore(String name, WebDriver driver) {
+        Snapshot snapshot = getSnapshot(getKey(name, driver));
+        if (snapshot == null) {
+            return false;
+        }
+        String currentUrl = driver.getCurrentUrl();
+        if (currentUrl == null || !currentUrl.startsWith(snapshot.origin + "/")) {
+            // Cookies and storage can only be set for the origin of the current page
+            driver.get(snapshot.origin.startsWith("http") ? snapshot.origin + "/" : snapshot.url);
+        }
+        ((JavascriptExecutor) driver).executeScript(RESTORE_SCRIPT, gson.toJson(snapshot));
+        long now = System.currentTimeMillis();
+        for (SnapshotCookie cookie : snapshot.cookies) {
+            if (cookie.expiry != null && cookie.expiry < now) {
+                continue;
+            }
+            driver.manage().addCookie(new Cookie(cookie.name, cookie.value, cookie.domain, cookie.path,
+                    cookie.expiry != null ? new Date(cookie.expiry) : null, cookie.secure, cookie.httpOnly));
+        }
+        return true;
+    }
+
+    /**
+     * Restores the snapshot into the session of the driver, or logs in with
+     * the login and captures the snapshot if there is none. Concurrent calls
+     * for the same snapshot and browser log in only once.
+     */
+    public static void restoreOrLogin(String name, Class<? extends Login> loginClass, WebDriver driver) {
+        if (restore(name, driver)) {
+            return;
+        }
+        String key = getKey(name, driver);
+        Object loginLock = loginLocks.get(key);
+        if (loginLock == null) {
+            loginLocks.putIfAbsent(key, new Object());
+            loginLock = loginLocks.get(key);
+        }
+        synchronized (loginLock) {
+            // Another thread may have logged in while waiting for the lock
+            if (restore(name, driver)) {
+                return;
+            }
+            Login login;
+            try {
+                login = loginClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new WebDriverExtensionException("Failed to create login " + loginClass.getName()
+                        + " of session snapshot " + name + ", make sure it has a public no argument constructor", e);
+            }
+            login.login(driver);
+            capture(name, driver);
+        }
+    }
+
+    public static boolean hasSnapshot(String name, WebDriver driver) {
+        return getSnapshot(getKey(name, driver)) != null;
+    }
+
+    /**
+     * Removes all snapshots with the name, e.g. when the login has expired.
+     */
+    public static void remove(String name) {
+        String prefix = name + "@";
+        for (String key : snapshots.keySet()) {
+            if (key.startsWith(prefix)) {
+                snapshots.remove(key);
+            }
+        }
+        Path directory = getDirectory();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, getFileName(prefix).replace(".json", "*.json"))) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to remove session snapshots {} from {}", name, directory, e);
+        }
+    }
+
+    private static Snapshot getSnapshot(String key) {
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot == null) {
+            Path directory = getDirectory();
+            if (directory != null) {
+                snapshot = read(directory.resolve(getFileName(key)));
+                if (snapshot != null) {
+                    snapshots.putIfAbsent(key, snapshot);
+                }
+            }
+        }
+        long maxAge = TimeUnit.SECONDS.toMillis(PropertyUtils.getLong(SESSION_SNAPSHOTS_MAX_AGE_PROPERTY_NAME, 3600));
+        if (snapshot != null && System.currentTimeMillis() - snapshot.capturedAt > maxAge) {
+            snapshots.remove(key, snapshot);
+            return null;
+        }
+        return snapshot;
+    }
+
+    private static String getKey(String name, WebDriver driver) {
+        // Snapshots are per browser configuration since cookies and storage differ between browsers
+        if (driver instanceof HasCapabilities) {
+            Capabilities capabilities = ((HasCapabilities) driver).getCapabilities();
+            return name + "@" + capabilities.getBrowserName() + "-" + capabilities.getVersion() + "-" + capabilities.getPlatform();
+        }
+        return name + "@" + driver.getClass().getSimpleName();
+    }
+
+    private static Path getDirectory() {
+        String directory = System.getProperty(SESSION_SNAPSHOTS_DIRECTORY_PROPERTY_NAME);
+        return directory != null ? Paths.get(directory) : null;
+    }
+
+    private static String getFileName(String key) {
+        return key.replaceAll("[^A-Za-z0-9._@-]", "_") + ".json";
+    }
+
+    private static Snapshot read(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return gson.fromJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), Snapshot.class);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read session snapshot {}, ignoring it", file, e);
+            return null;
+        }
+    }
+
+    private static void write(Path file, Snapshot snapshot) {
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a temp file and move it so that other forks never read a partly written snapshot
+            Path tempFile = Files.createTempFile(file.getParent(), "snapshot", ".tmp");
+            Files.write(tempFile, gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to write session snapshot {}", file, e);
+        }
+    }
+}
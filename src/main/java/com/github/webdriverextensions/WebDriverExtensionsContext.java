@@ -1,5 +1,6 @@
 package com.github.webdriverextensions;
 
+import com.github.webdriverextensions.internal.DriverRegistry;
 import com.github.webdriverextensions.internal.WebDriverExtensionException;
 import org.openqa.selenium.WebDriver;
 
@@ -8,17 +9,30 @@ public class WebDriverExtensionsContext {
     private static InheritableThreadLocal<WebDriver> threadLocalDriver = new InheritableThreadLocal<>();
 
     public static WebDriver getDriver() {
-        if (threadLocalDriver.get() == null) {
+        WebDriver driver = threadLocalDriver.get();
+        if (driver == null) {
             throw new WebDriverExtensionException("Driver in WebDriverExtensionsContext is not set. Please set the driver with WebDriverExtensionsContext.setDriver(...) method before using the WebDriverExtensions framework. Note that the driver will be thread safe since ThreadLocal is used so don't worry about thread safety.");
         }
-        return threadLocalDriver.get();
+        DriverRegistry driverRegistry = DriverRegistry.getInstanceIfCreated();
+        if (driverRegistry != null) {
+            driverRegistry.touch(driver);
+        }
+        return driver;
     }
 
     public static void removeDriver() {
+        WebDriver driver = threadLocalDriver.get();
+        DriverRegistry driverRegistry = DriverRegistry.getInstanceIfCreated();
+        if (driver != null && driverRegistry != null) {
+            driverRegistry.unregister(driver);
+        }
         threadLocalDriver.remove();
     }
 
     public static void setDriver(WebDriver driver) {
+        if (driver != null && DriverRegistry.isEnabled()) {
+            DriverRegistry.getInstance().register(driver);
+        }
         threadLocalDriver.set(driver);
     }
 
@@ -4,4 +4,45 @@ public class WebDriverExtensionsProperties {
     public static final String INTERNET_EXPLORER_DRIVER_PROPERTY_NAME = "webdriver.internetexplorer.driver"; // Alternative property name that follows naming convention
     public static final String IE_DRIVER_USE64BIT_PROPERTY_NAME = "webdriverextensions.ie.driver.use64Bit";
     public static final String INTERNET_EXPLORER_DRIVER_USE64BIT_PROPERTY_NAME = "webdriverextensions.internetexplorer.driver.use64Bit";
+    public static final String DRIVER_POOL_PROPERTY_NAME = "webdriverextensions.driverpool";
+    public static final String DRIVER_POOL_MAX_SESSIONS_PROPERTY_NAME = "webdriverextensions.driverpool.maxsessions";
+    public static final String DRIVER_POOL_MAX_IDLE_TIME_PROPERTY_NAME = "webdriverextensions.driverpool.maxidletime"; // In seconds
+    public static final String DRIVER_POOL_MAX_USES_PROPERTY_NAME = "webdriverextensions.driverpool.maxuses";
+    public static final String PREWARM_PROPERTY_NAME = "webdriverextensions.prewarm";
+    public static final String PREWARM_MAX_IDLE_TIME_PROPERTY_NAME = "webdriverextensions.prewarm.maxidletime"; // In seconds
+    public static final String KEEP_ALIVE_INTERVAL_PROPERTY_NAME = "webdriverextensions.keepaliveinterval"; // In seconds
+    public static final String ASYNC_QUIT_PROPERTY_NAME = "webdriverextensions.asyncquit";
+    public static final String ASYNC_QUIT_THREADS_PROPERTY_NAME = "webdriverextensions.asyncquit.threads";
+    public static final String ASYNC_QUIT_SHUTDOWN_TIMEOUT_PROPERTY_NAME = "webdriverextensions.asyncquit.shutdowntimeout"; // In seconds
+    public static final String TIMINGS_PROPERTY_NAME = "webdriverextensions.timings";
+    public static final String TIMINGS_FILE_PROPERTY_NAME = "webdriverextensions.timings.file";
+    public static final String SHARD_INDEX_PROPERTY_NAME = "webdriverextensions.shard.index";
+    public static final String SHARD_TOTAL_PROPERTY_NAME = "webdriverextensions.shard.total";
+    public static final String SHARD_STRATEGY_PROPERTY_NAME = "webdriverextensions.shard.strategy";
+    public static final String CIRCUIT_BREAKER_THRESHOLD_PROPERTY_NAME = "webdriverextensions.circuitbreaker.threshold";
+    public static final String CIRCUIT_BREAKER_RETRY_AFTER_PROPERTY_NAME = "webdriverextensions.circuitbreaker.retryafter"; // In seconds
+    public static final String LAUNCH_MAX_CONCURRENT_PROPERTY_NAME = "webdriverextensions.launch.maxconcurrent";
+    public static final String LAUNCH_JITTER_PROPERTY_NAME = "webdriverextensions.launch.jitter"; // In milliseconds
+    public static final String SHARED_DRIVER_SERVICES_PROPERTY_NAME = "webdriverextensions.shareddriverservices";
+    public static final String BROKER_PROPERTY_NAME = "webdriverextensions.broker";
+    public static final String BROKER_IDLE_TIMEOUT_PROPERTY_NAME = "webdriverextensions.broker.idletimeout";
+    public static final String BROKER_MAX_USES_PROPERTY_NAME = "webdriverextensions.broker.maxuses";
+    public static final String BROKER_PORT_FILE_PROPERTY_NAME = "webdriverextensions.broker.portfile";
+    public static final String LOCAL_HUB_PROPERTY_NAME = "webdriverextensions.localhub";
+    public static final String LOCAL_HUB_PORT_PROPERTY_NAME = "webdriverextensions.localhub.port";
+    public static final String LOCAL_HUB_BROWSER_LIMITS_PROPERTY_NAME = "webdriverextensions.localhub.browserlimits";
+    public static final String LOCAL_HUB_QUEUE_TIMEOUT_PROPERTY_NAME = "webdriverextensions.localhub.queuetimeout"; // In seconds
+    public static final String LOCAL_HUB_SESSION_TIMEOUT_PROPERTY_NAME = "webdriverextensions.localhub.sessiontimeout"; // In seconds
+    public static final String REMOTE_ADDRESS_SELECTION_PROPERTY_NAME = "webdriverextensions.remoteaddress.selection";
+    public static final String SESSION_SNAPSHOTS_DIRECTORY_PROPERTY_NAME = "webdriverextensions.sessionsnapshots.directory";
+    public static final String SESSION_SNAPSHOTS_MAX_AGE_PROPERTY_NAME = "webdriverextensions.sessionsnapshots.maxage"; // In seconds
+    public static final String BROWSER_PROFILE_PROPERTY_NAME = "webdriverextensions.browserprofile";
+    public static final String PROFILE_TEMPLATES_PROPERTY_NAME = "webdriverextensions.profiletemplates";
+    public static final String PROFILE_TEMPLATES_DIRECTORY_PROPERTY_NAME = "webdriverextensions.profiletemplates.directory";
+    public static final String REAPER_PROPERTY_NAME = "webdriverextensions.reaper";
+    public static final String REAPER_IDLE_TIMEOUT_PROPERTY_NAME = "webdriverextensions.reaper.idletimeout"; // In seconds
+    public static final String REAPER_INTERVAL_PROPERTY_NAME = "webdriverextensions.reaper.interval"; // In seconds
+    public static final String HARD_TIMEOUT_PROPERTY_NAME = "webdriverextensions.hardtimeout"; // In seconds
+    public static final String PARALLEL_THREADS_PROPERTY_NAME = "webdriverextensions.parallel.threads";
+    public static final String PARALLEL_BROWSER_LIMITS_PROPERTY_NAME = "webdriverextensions.parallel.browserlimits";
 }
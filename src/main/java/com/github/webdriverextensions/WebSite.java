@@ -8,15 +8,19 @@ import org.openqa.selenium.support.pagefactory.FieldDecorator;
 public abstract class WebSite implements Openable {
 
     public void initElements() {
-        PageFactory.initElements(new WebDriverExtensionFieldDecorator(WebDriverExtensionsContext.getDriver()), this);
+        new WebDriverExtensionFieldDecorator(WebDriverExtensionsContext.getDriver()).initElements(this);
     }
 
     public void initElements(WebDriver driver) {
-        PageFactory.initElements(new WebDriverExtensionFieldDecorator(driver), this);
+        new WebDriverExtensionFieldDecorator(driver).initElements(this);
     }
 
     public void initElements(FieldDecorator decorator) {
-        PageFactory.initElements(decorator, this);
+        if (decorator instanceof WebDriverExtensionFieldDecorator) {
+            ((WebDriverExtensionFieldDecorator) decorator).initElements(this);
+        } else {
+            PageFactory.initElements(decorator, this);
+        }
     }
 
     @Override
@@ -0,0 +1,42 @@
+package com.github.webdriverextensions.annotations;
+
+import com.github.webdriverextensions.SessionSnapshots;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the session snapshot, e.g. a logged in user, that a web page needs.
+ *
+ * <p>Before each test of a test class run by the WebDriverRunner that has a
+ * field of an annotated page type, the snapshot is restored into the driver
+ * session. If there is no snapshot yet the login is run and the session is
+ * captured as the snapshot for the following tests.</p>
+ * <pre>
+ * &#064;SessionSnapshot(value = "admin", login = AdminLogin.class)
+ * public class AdminPage extends WebPage {
+ *     ...
+ * }</pre>
+ *
+ * @see SessionSnapshots
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Target(ElementType.TYPE)
+public @interface SessionSnapshot {
+
+    /**
+     * @return the name of the snapshot
+     */
+    String value();
+
+    /**
+     * @return the login that creates the state to snapshot, the default
+     * {@link SessionSnapshots.Login} interface means that the snapshot must be
+     * captured by the tests themselves with
+     * {@link SessionSnapshots#capture(String)}
+     */
+    Class<? extends SessionSnapshots.Login> login() default SessionSnapshots.Login.class;
+}
@@ -0,0 +1,282 @@
+package com.github.webdriverextensions.internal;
+
+import com.github.webdriverextensions.WebComponent;
+import com.github.webdriverextensions.WebPage;
+import com.github.webdriverextensions.WebRepository;
+import com.github.webdriverextensions.WebSite;
+import com.github.webdriverextensions.annotations.Delegate;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.FindAll;
+import org.openqa.selenium.support.FindBy;
+import org.openqa.selenium.support.FindBys;
+
+/**
+ * How the fields of a class are decorated, worked out once per class and
+ * generic type arguments.
+ *
+ * <p>Finding out what kind of field a field is, resolving the type of
+ * generic web components and building the {@link By} of the field
+ * annotations is done when the plan is created. Decorating an object with a
+ * cached plan is then a loop over the fields of the plan, which matters for
+ * web components that are created for every row of a list.</p>
+ *
+ * <p>Plans are immutable and shared by all threads.</p>
+ */
+public class DecorationPlan {
+
+    private static final ConcurrentMap<ObjectPool.ClassGeneric, DecorationPlan> plans = new ConcurrentHashMap<>();
+
+    public enum Kind {
+        WEB_COMPONENT,
+        WEB_COMPONENT_LIST,
+        SITE_OBJECT,
+        PAGE_OBJECT,
+        REPOSITORY_OBJECT,
+        WEB_ELEMENT,
+        WEB_ELEMENT_LIST,
+        NONE
+    }
+
+    private final FieldPlan[] fields;
+    private final Field delegateField;
+    private final int delegateFields;
+
+    private DecorationPlan(Class<?> clazz, ParameterizedType genericTypeArguments) {
+        List<FieldPlan> fieldPlans = new ArrayList<>();
+        for (Class<?> declaringClass = clazz; declaringClass != Object.class && declaringClass != null; declaringClass = declaringClass.getSuperclass()) {
+            for (Field field : declaringClass.getDeclaredFields()) {
+                FieldPlan fieldPlan = FieldPlan.create(field, genericTypeArguments);
+                if (fieldPlan.kind != Kind.NONE) {
+                    field.setAccessible(true);
+                    fieldPlans.add(fieldPlan);
+                }
+            }
+        }
+        this.fields = fieldPlans.toArray(new FieldPlan[fieldPlans.size()]);
+
+        Field[] annotatedFields = ReflectionUtils.getAnnotatedDeclaredFields(clazz, Delegate.class);
+        if (annotatedFields.length > 0) {
+            annotatedFields[0].setAccessible(true); // Make sure field is accessible if it is not declared as public
+        }
+        this.delegateField = annotatedFields.length > 0 ? annotatedFields[0] : null;
+        this.delegateFields = annotatedFields.length;
+    }
+
+    /**
+     * @return the cached plan of the class, created on first use
+     */
+    public static DecorationPlan get(Class<?> clazz, ParameterizedType genericTypeArguments) {
+        ObjectPool.ClassGeneric key = new ObjectPool.ClassGeneric(clazz, genericTypeArguments);
+        DecorationPlan plan = plans.get(key);
+        if (plan == null) {
+            // Two threads may create the same plan, which is harmless since
+            // plans are immutable
+            plan = new DecorationPlan(clazz, genericTypeArguments);
+            DecorationPlan existingPlan = plans.putIfAbsent(key, plan);
+            if (existingPlan != null) {
+                plan = existingPlan;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @return the fields to decorate, in the order PageFactory decorates
+     * them, i.e. the fields of the class before the fields of its super
+     * classes
+     */
+    public FieldPlan[] getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the value of the &#064;Delegate annotated field of the web
+     * component, null if no field is annotated
+     */
+    public WebElement getDelegate(WebComponent webComponent) {
+        if (delegateFields == 0) {
+            return null;
+        }
+        if (delegateFields > 1) {
+            throw new RuntimeException("More than one @Delagate annotation used. There should only exist one.");
+        }
+        try {
+            return (WebElement) delegateField.get(webComponent);
+        } catch (IllegalArgumentException|IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * How a single field is decorated.
+     */
+    public static class FieldPlan {
+
+        private final Field field;
+        private final Kind kind;
+        private final Class<?> type; // The web component class of web component and web component list fields
+        private final ParameterizedType genericTypeArguments; // The type arguments to decorate the web components with
+        private final By by;
+        private final boolean lookupCached;
+        private final boolean searchContextReset;
+
+        private FieldPlan(Field field, Kind kind, Class<?> type, ParameterizedType genericTypeArguments) {
+            this.field = field;
+            this.kind = kind;
+            this.type = type;
+            this.genericTypeArguments = genericTypeArguments;
+            if (kind == Kind.WEB_COMPONENT || kind == Kind.WEB_COMPONENT_LIST || kind == Kind.WEB_ELEMENT || kind == Kind.WEB_ELEMENT_LIST) {
+                WebDriverExtensionAnnotations annotations = new WebDriverExtensionAnnotations(field);
+                this.by = annotations.buildBy();
+                this.lookupCached = annotations.isLookupCached();
+                this.searchContextReset = annotations.isSearchContextReset();
+            } else {
+                this.by = null;
+                this.lookupCached = false;
+                this.searchContextReset = false;
+            }
+        }
+
+        /**
+         * Works out how a field is decorated, without caching the result.
+         *
+         * @param genericTypeArguments the type arguments of the object the
+         * field belongs to, used to resolve fields with a type variable type
+         */
+        public static FieldPlan create(Field field, ParameterizedType genericTypeArguments) {
+            try {
+                if (WebComponent.class.isAssignableFrom(field.getType())) {
+                    Type genericType = field.getGenericType();
+                    return new FieldPlan(field, Kind.WEB_COMPONENT,
+                            ReflectionUtils.getType(field, genericTypeArguments),
+                            resolveGenericTypeArguments(genericType, genericTypeArguments));
+                }
+                if (isWebComponentList(field, genericTypeArguments)) {
+                    Type listType = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+                    return new FieldPlan(field, Kind.WEB_COMPONENT_LIST,
+                            ReflectionUtils.getListType(field, genericTypeArguments),
+                            resolveGenericTypeArguments(listType, genericTypeArguments));
+                }
+                if (WebSite.class.isAssignableFrom(field.getType())) {
+                    return new FieldPlan(field, Kind.SITE_OBJECT, null, null);
+                }
+                if (WebPage.class.isAssignableFrom(field.getType())) {
+                    return new FieldPlan(field, Kind.PAGE_OBJECT, null, null);
+                }
+                if (WebRepository.class.isAssignableFrom(field.getType())) {
+                    return new FieldPlan(field, Kind.REPOSITORY_OBJECT, null, null);
+                }
+                if ("wrappedWebElement".equals(field.getName()) || "delegateWebElement".equals(field.getName())) {
+                    return new FieldPlan(field, Kind.NONE, null, null);
+                }
+                if (WebElement.class.isAssignableFrom(field.getType())) {
+                    return new FieldPlan(field, Kind.WEB_ELEMENT, null, null);
+                }
+                if (isWebElementList(field)) {
+                    return new FieldPlan(field, Kind.WEB_ELEMENT_LIST, null, null);
+                }
+                return new FieldPlan(field, Kind.NONE, null, null);
+            } catch (Exception ex) {
+                if (ex instanceof WebDriverExtensionException) {
+                    throw (WebDriverExtensionException) ex; // re-throw it
+                } else {
+                    throw new WebDriverExtensionException("Failed to decorate field " + field.getName() + " in class " + field.getDeclaringClass(), ex);
+                }
+            }
+        }
+
+        private static ParameterizedType resolveGenericTypeArguments(Type type, ParameterizedType genericTypeArguments) {
+            if (type instanceof TypeVariable) {
+                return genericTypeArguments;
+            } else if (type instanceof ParameterizedType) {
+                return (ParameterizedType) type;
+            } else {
+                return null;
+            }
+        }
+
+        private static boolean isWebComponentList(Field field, ParameterizedType genericTypeArguments) {
+            if (!List.class.isAssignableFrom(field.getType())) {
+                return false;
+            }
+
+            // Type erasure in Java isn't complete. Attempt to discover the generic
+            // type of the list.
+            Type genericType = field.getGenericType();
+            if (!(genericType instanceof ParameterizedType)) {
+                return false;
+            }
+
+            if (!WebComponent.class.isAssignableFrom(ReflectionUtils.getListType(field, genericTypeArguments))) {
+                return false;
+            }
+
+            if (field.getAnnotation(FindBy.class) == null
+                    && field.getAnnotation(FindBys.class) == null) {
+                return false;
+            }
+
+            return true;
+        }
+
+        private static boolean isWebElementList(Field field) {
+            if (!List.class.isAssignableFrom(field.getType())) {
+                return false;
+            }
+
+            Type genericType = field.getGenericType();
+            if (!(genericType instanceof ParameterizedType)) {
+                return false;
+            }
+
+            if (!WebElement.class.equals(((ParameterizedType) genericType).getActualTypeArguments()[0])) {
+                return false;
+            }
+
+            if (field.getAnnotation(FindBy.class) == null
+                    && field.getAnnotation(FindBys.class) == null
+                    && field.getAnnotation(FindAll.class) == null) {
+                return false;
+            }
+
+            return true;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public ParameterizedType getGenericTypeArguments() {
+            return genericTypeArguments;
+        }
+
+        public By getBy() {
+            return by;
+        }
+
+        public boolean isLookupCached() {
+            return lookupCached;
+        }
+
+        public boolean isSearchContextReset() {
+            return searchContextReset;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.webdriverextensions.internal;
+
+import com.github.webdriverextensions.WebDriverExtensionFieldDecorator;
+import java.lang.reflect.ParameterizedType;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * The state shared by all decorators of an object graph: the driver, the
+ * pool of site, page and repository objects and the factories.
+ *
+ * <p>A decorator created with one of the public constructors of
+ * {@link WebDriverExtensionFieldDecorator} creates a new context. The
+ * decorators of nested web components, list elements and pooled objects are
+ * lightweight views of the same context that only differ in their search
+ * context and generic type arguments. The site, page and repository objects
+ * are therefore the same at all nesting levels, and decorating a component
+ * only creates the decorator and its locator factory.</p>
+ */
+public class DecoratorContext {
+
+    private final WebDriver driver;
+    private final ObjectPool pool;
+    private final WebComponentFactory webComponentFactory;
+    private final WebComponentListFactory webComponentListFactory;
+
+    public DecoratorContext(WebDriver driver) {
+        this.driver = driver;
+        this.pool = new ObjectPool(driver);
+        this.webComponentFactory = new DefaultWebComponentFactory();
+        this.webComponentListFactory = new DefaultWebComponentListFactory(webComponentFactory);
+    }
+
+    /**
+     * @return a decorator sharing this context that finds elements in the
+     * search context
+     */
+    public WebDriverExtensionFieldDecorator createDecorator(SearchContext searchContext, ParameterizedType genericTypeArguments) {
+        return new WebDriverExtensionFieldDecorator(searchContext, this, genericTypeArguments);
+    }
+
+    public WebDriver getDriver() {
+        return driver;
+    }
+
+    public ObjectPool getPool() {
+        return pool;
+    }
+
+    public WebComponentFactory getWebComponentFactory() {
+        return webComponentFactory;
+    }
+
+    public WebComponentListFactory getWebComponentListFactory() {
+        return webComponentListFactory;
+    }
+}
@@ -18,4 +18,9 @@ public class DefaultWebComponentListFactory implements WebComponentListFactory {
     public <T extends WebComponent> List<T> create(Class<T> webComponentClass, List<WebElement> webElements, WebDriver driver, ParameterizedType genericTypeArguments) {
         return new WebComponentList<>(webComponentClass, webElements, webComponentFactory, driver, genericTypeArguments);
     }
-}
\ No newline at end of file
+
+    @Override
+    public <T extends WebComponent> List<T> create(Class<T> webComponentClass, List<WebElement> webElements, DecoratorContext context, ParameterizedType genericTypeArguments) {
+        return new WebComponentList<>(webComponentClass, webElements, webComponentFactory, context, genericTypeArguments);
+    }
+}
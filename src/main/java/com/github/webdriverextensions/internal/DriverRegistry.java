@@ -0,0 +1,321 @@
+package com.github.webdriverextensions.internal;
+
+import com.github.webdriverextensions.internal.junitrunner.DriverQuitter;
+import com.github.webdriverextensions.internal.junitrunner.DriverShutdown;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openqa.selenium.WebDriver;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.REAPER_IDLE_TIMEOUT_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.REAPER_INTERVAL_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.REAPER_PROPERTY_NAME;
+
+/**
+ * Keeps track of the drivers set in the {@code WebDriverExtensionsContext}
+ * and quits the ones that have been leaked, e.g. by a test that crashed
+ * before its driver was quit and removed from the context.
+ *
+ * <p>A driver is registered to the thread that sets it in the context and is
+ * unregistered when that thread removes it. A watchdog quits registered
+ * drivers whose thread has died, and drivers that their thread replaced with
+ * another driver without removing them and that have not been set again for
+ * {@code webdriverextensions.reaper.idletimeout} seconds (default 600). The
+ * driver currently set in the context of a live thread is never reaped, since
+ * element commands and page objects use it without going through the
+ * context. The watchdog runs every
+ * {@code webdriverextensions.reaper.interval} seconds (default 30). Drivers
+ * still registered when the JVM exits are quit and reported as leaked.</p>
+ *
+ * <p>Leaked drivers are discarded like the runner discards the driver of a
+ * failed test, i.e. only the window of a shared session is closed and pooled
+ * drivers are removed from the driver pool.</p>
+ *
+ * <p>The registry is enabled by setting the {@code webdriverextensions.reaper}
+ * property to {@code true}.</p>
+ */
+public class DriverRegistry {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DriverRegistry.class);
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 600; // In seconds
+    public static final long DEFAULT_INTERVAL = 30; // In seconds
+
+    private static volatile DriverRegistry instance; // Written while holding DriverRegistry.class
+
+    private final long idleTimeout; // In milliseconds
+    private final Map<WebDriver, Registration> registrations = new IdentityHashMap<>(); // Guarded by this
+    private final AtomicLong registered = new AtomicLong();
+    private final AtomicLong foreignThreadUses = new AtomicLong();
+    private final AtomicLong reapedIdle = new AtomicLong();
+    private final AtomicLong reapedOrphaned = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+    private ScheduledExecutorService watchdog; // Guarded by this
+
+    public static class Registration {
+
+        private final WebDriver driver;
+        private volatile Thread owner;
+        private final long startTime;
+        private volatile long lastCommandTime;
+        private volatile long replacedTime; // 0 while the driver is set in the context of its owner
+
+        Registration(WebDriver driver, Thread owner, long now) {
+            this.driver = driver;
+            this.owner = owner;
+            this.startTime = now;
+            this.lastCommandTime = now;
+        }
+
+        public WebDriver getDriver() {
+            return driver;
+        }
+
+        public Thread getOwner() {
+            return owner;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getLastCommandTime() {
+            return lastCommandTime;
+        }
+
+        /**
+         * @return the time its owner set another driver in its context without
+         * removing this driver, 0 if it has not
+         */
+        public long getReplacedTime() {
+            return replacedTime;
+        }
+    }
+
+    DriverRegistry(long idleTimeout, TimeUnit unit) {
+        this.idleTimeout = unit.toMillis(idleTimeout);
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.isTrue(REAPER_PROPERTY_NAME);
+    }
+
+    public static synchronized DriverRegistry getInstance() {
+        if (instance == null) {
+            DriverRegistry registry = new DriverRegistry(
+                    PropertyUtils.getLong(REAPER_IDLE_TIMEOUT_PROPERTY_NAME, DEFAULT_IDLE_TIMEOUT), TimeUnit.SECONDS);
+            registry.startWatchdog(PropertyUtils.getLong(REAPER_INTERVAL_PROPERTY_NAME, DEFAULT_INTERVAL), TimeUnit.SECONDS);
+            DriverShutdown.register();
+            instance = registry;
+        }
+        return instance;
+    }
+
+    /**
+     * Quits the drivers still registered if the registry has been created,
+     * called when the JVM shuts down before the pooled drivers are quit.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * @return the registry if it has been created, without the locking of
+     * getInstance() since it is called for every use of a driver
+     */
+    public static DriverRegistry getInstanceIfCreated() {
+        return instance;
+    }
+
+    /**
+     * Registers the driver to the current thread. A driver already registered
+     * to another thread is moved to the current thread.
+     */
+    public synchronized void register(WebDriver driver) {
+        long now = System.currentTimeMillis();
+        for (Registration ownedRegistration : registrations.values()) {
+            if (ownedRegistration.owner == Thread.currentThread() && ownedRegistration.driver != driver && ownedRegistration.replacedTime == 0) {
+                ownedRegistration.replacedTime = now;
+            }
+        }
+        Registration registration = registrations.get(driver);
+        if (registration == null) {
+            registrations.put(driver, new Registration(driver, Thread.currentThread(), now));
+            registered.incrementAndGet();
+        } else {
+            registration.owner = Thread.currentThread();
+            registration.lastCommandTime = now;
+            registration.replacedTime = 0;
+        }
+    }
+
+    /**
+     * Unregisters the driver if it is registered to the current thread, a
+     * thread that inherited the driver does not own it.
+     */
+    public synchronized void unregister(WebDriver driver) {
+        Registration registration = registrations.get(driver);
+        if (registration != null && registration.owner == Thread.currentThread()) {
+            registrations.remove(driver);
+        }
+    }
+
+    /**
+     * Records that the driver is being used by the current thread.
+     */
+    public void touch(WebDriver driver) {
+        Registration registration;
+        synchronized (this) {
+            registration = registrations.get(driver);
+        }
+        if (registration != null) {
+            registration.lastCommandTime = System.currentTimeMillis();
+            if (registration.owner != Thread.currentThread()) {
+                // E.g. a thread of a pool that inherited the driver of the thread that started it
+                foreignThreadUses.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized Registration getRegistration(WebDriver driver) {
+        return registrations.get(driver);
+    }
+
+    private synchronized void startWatchdog(long interval, TimeUnit unit) {
+        watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "webdriverextensions-reaper-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        watchdog.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reap();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to reap leaked drivers", e);
+                }
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Quits the drivers whose thread has died and the drivers that have been
+     * replaced in the context of their thread for longer than the idle
+     * timeout.
+     *
+     * @return the number of drivers quit
+     */
+    int reap() {
+        long now = System.currentTimeMillis();
+        List<Registration> orphaned = new ArrayList<>();
+        List<Registration> idle = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Registration> iterator = registrations.values().iterator(); iterator.hasNext();) {
+                Registration registration = iterator.next();
+                if (!registration.owner.isAlive()) {
+                    orphaned.add(registration);
+                    iterator.remove();
+                } else if (registration.replacedTime != 0
+                        && now - Math.max(registration.replacedTime, registration.lastCommandTime) > idleTimeout) {
+                    idle.add(registration);
+                    iterator.remove();
+                }
+            }
+        }
+        for (Registration registration : orphaned) {
+            log.warn("Quitting driver started {} ms ago since its thread {} has died without quitting it",
+                    now - registration.startTime, registration.owner.getName());
+            reapedOrphaned.incrementAndGet();
+            quit(registration.driver);
+        }
+        for (Registration registration : idle) {
+            log.warn("Quitting driver of thread {} since the thread set another driver {} ms ago without quitting it",
+                    registration.owner.getName(), now - registration.replacedTime);
+            reapedIdle.incrementAndGet();
+            quit(registration.driver);
+        }
+        return orphaned.size() + idle.size();
+    }
+
+    void shutdown() {
+        List<Registration> remaining;
+        synchronized (this) {
+            if (watchdog != null) {
+                watchdog.shutdownNow();
+            }
+            remaining = new ArrayList<>(registrations.values());
+            registrations.clear();
+        }
+        for (Registration registration : remaining) {
+            leaked.incrementAndGet();
+            quit(registration.driver);
+        }
+        String report = "Registered {} drivers (reaped idle = {}, reaped with dead thread = {}, leaked at exit = {}, uses from other threads = {})";
+        if (getLeaks() > 0) {
+            log.warn(report, getRegistered(), getReapedIdle(), getReapedOrphaned(), getLeakedAtExit(), getForeignThreadUses());
+        } else {
+            log.info(report, getRegistered(), getReapedIdle(), getReapedOrphaned(), getLeakedAtExit(), getForeignThreadUses());
+        }
+    }
+
+    private static void quit(WebDriver driver) {
+        try {
+            DriverQuitter.getInstance().discard(driver);
+        } catch (RuntimeException e) {
+            log.warn("Failed to quit leaked driver", e);
+        }
+    }
+
+    public synchronized int getActive() {
+        return registrations.size();
+    }
+
+    public long getRegistered() {
+        return registered.get();
+    }
+
+    /**
+     * @return the number of drivers reaped since their thread replaced them
+     * with another driver and did not use them for the idle timeout
+     */
+    public long getReapedIdle() {
+        return reapedIdle.get();
+    }
+
+    public long getReapedOrphaned() {
+        return reapedOrphaned.get();
+    }
+
+    public long getLeakedAtExit() {
+        return leaked.get();
+    }
+
+    /**
+     * @return the number of drivers that were reaped or still registered when
+     * the JVM exited
+     */
+    public long getLeaks() {
+        return reapedIdle.get() + reapedOrphaned.get() + leaked.get();
+    }
+
+    public long getForeignThreadUses() {
+        return foreignThreadUses.get();
+    }
+}
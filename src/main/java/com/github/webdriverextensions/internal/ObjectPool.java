@@ -2,97 +2,186 @@ package com.github.webdriverextensions.internal;
 
 import com.github.webdriverextensions.WebDriverExtensionFieldDecorator;
 import java.lang.reflect.Field;
-import java.util.HashMap;
 import com.github.webdriverextensions.WebPage;
 import com.github.webdriverextensions.WebRepository;
 import com.github.webdriverextensions.WebSite;
 import static com.github.webdriverextensions.internal.utils.StringUtils.quote;
 import java.lang.reflect.ParameterizedType;
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.openqa.selenium.WebDriver;
 
+/**
+ * The site, page and repository objects of a decorator context, created
+ * once per class and generic type arguments.
+ *
+ * <p>The pool can be used by several threads. Looking up an object that
+ * has been created is lock free. Objects are created and decorated while
+ * holding the lock of the pool, so an object is only created once and other
+ * threads never see an object before its fields are decorated. Since the
+ * object is added to the pool before it is decorated, a site that has a
+ * page that refers back to the site gets the site being decorated.</p>
+ */
 public class ObjectPool {
 
     private final WebDriver driver;
-    private final HashMap<Class<?>, WebSite> siteObjects = new HashMap<>();
-    private final HashMap<ClassGeneric, WebPage> pageObjects = new HashMap<>();
-    private final HashMap<ClassGeneric, WebRepository> repositoryObjects = new HashMap<>();
+    private final ConcurrentMap<ClassGeneric, Entry> objects = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
 
-    public static class ClassGeneric {
-        Class<?> clazz;
-        ParameterizedType generics;
+    /**
+     * A class and its generic type arguments. Keys are immutable and their
+     * hash code is computed once.
+     */
+    public static final class ClassGeneric {
+
+        private final Class<?> clazz;
+        private final ParameterizedType generics;
+        private final int hashCode;
+
+        public ClassGeneric(Class<?> clazz, ParameterizedType generics) {
+            this.clazz = clazz;
+            this.generics = generics;
+            this.hashCode = 31 * clazz.hashCode() + Objects.hashCode(generics);
+        }
+
+        public Class<?> getClazz() {
+            return clazz;
+        }
+
+        public ParameterizedType getGenerics() {
+            return generics;
+        }
 
         @Override
         public int hashCode() {
-            return new HashCodeBuilder()
-                    .append(clazz)
-                    .append(generics)
-                    .toHashCode();
+            return hashCode;
         }
 
         @Override
         public boolean equals(final Object obj) {
             if (obj instanceof ClassGeneric) {
                 final ClassGeneric other = (ClassGeneric) obj;
-                return new EqualsBuilder()
-                        .append(clazz, other.clazz)
-                        .append(generics, other.generics)
-                        .isEquals();
+                return clazz == other.clazz && Objects.equals(generics, other.generics);
             } else {
                 return false;
             }
         }
     }
 
+    private static class Entry {
+
+        private final Object object;
+        private volatile boolean decorated; // Written while holding the lock of the pool
+
+        Entry(Object object) {
+            this.object = object;
+        }
+    }
+
+    private interface Creator {
+
+        Object create(Field field);
+
+        void initElements(Object object, WebDriverExtensionFieldDecorator decorator);
+    }
+
+    private final Creator siteObjectCreator = new Creator() {
+        @Override
+        public Object create(Field field) {
+            return createSiteObject(field);
+        }
+
+        @Override
+        public void initElements(Object object, WebDriverExtensionFieldDecorator decorator) {
+            ((WebSite) object).initElements(decorator);
+        }
+    };
+
+    private final Creator pageObjectCreator = new Creator() {
+        @Override
+        public Object create(Field field) {
+            return createPageObject(field);
+        }
+
+        @Override
+        public void initElements(Object object, WebDriverExtensionFieldDecorator decorator) {
+            ((WebPage) object).initElements(decorator);
+        }
+    };
+
+    private final Creator repositoryObjectCreator = new Creator() {
+        @Override
+        public Object create(Field field) {
+            return createRepositoryObject(field);
+        }
+
+        @Override
+        public void initElements(Object object, WebDriverExtensionFieldDecorator decorator) {
+            ((WebRepository) object).initElements(decorator);
+        }
+    };
+
     public ObjectPool(WebDriver driver) {
         this.driver = driver;
     }
 
     public WebSite getSiteObject(Field field, WebDriverExtensionFieldDecorator decorator) {
-        WebSite siteObject = siteObjects.get(field.getType());
-        if (siteObject == null) {
-            siteObject = createSiteObject(field);
-            siteObjects.put(field.getType(), siteObject);
-            siteObject.initElements(decorator);
-        }
-        return siteObject;
+        // Site objects are shared by all type arguments
+        return (WebSite) getObject(new ClassGeneric(field.getType(), null), field, decorator, siteObjectCreator);
     }
 
     public WebPage getPageObject(Field field, WebDriverExtensionFieldDecorator decorator) {
-        ClassGeneric key = new ClassGeneric();
-        key.clazz = field.getType();
+        return (WebPage) getObject(createKey(field), field, decorator, pageObjectCreator);
+    }
+
+    public WebRepository getRepositoryObject(Field field, WebDriverExtensionFieldDecorator decorator) {
+        return (WebRepository) getObject(createKey(field), field, decorator, repositoryObjectCreator);
+    }
+
+    private static ClassGeneric createKey(Field field) {
         if (field.getGenericType() instanceof ParameterizedType) {
-            key.generics = (ParameterizedType)field.getGenericType();
-        }
-        WebPage pageObject = pageObjects.get(key);
-        if (pageObject == null) {
-            pageObject = createPageObject(field);
-            pageObjects.put(key, pageObject);
-            if (field.getGenericType() instanceof ParameterizedType) {
-                decorator.setGenericTypeArguments((ParameterizedType) field.getGenericType());
+            return new ClassGeneric(field.getType(), (ParameterizedType) field.getGenericType());
+        }
+        return new ClassGeneric(field.getType(), null);
+    }
+
+    private Object getObject(ClassGeneric key, Field field, WebDriverExtensionFieldDecorator decorator, Creator creator) {
+        Entry entry = objects.get(key);
+        if (entry != null && entry.decorated) {
+            return entry.object;
+        }
+        synchronized (lock) {
+            entry = objects.get(key);
+            if (entry != null) {
+                // Either decorated by another thread while waiting for the
+                // lock, or being decorated further up this thread's stack
+                return entry.object;
+            }
+            entry = new Entry(creator.create(field));
+            objects.put(key, entry);
+            try {
+                creator.initElements(entry.object, createDecorator(field, decorator));
+            } catch (RuntimeException e) {
+                objects.remove(key);
+                throw e;
             }
-            pageObject.initElements(decorator);
+            entry.decorated = true;
+            return entry.object;
         }
-        return pageObject;
     }
 
-    public WebRepository getRepositoryObject(Field field, WebDriverExtensionFieldDecorator decorator) {
-        ClassGeneric key = new ClassGeneric();
-        key.clazz = field.getType();
+    /**
+     * @return a decorator sharing the context of the decorator of the field
+     * that finds elements from the root of the page, since site, page and
+     * repository objects are shared by all nesting levels
+     */
+    private WebDriverExtensionFieldDecorator createDecorator(Field field, WebDriverExtensionFieldDecorator decorator) {
+        ParameterizedType genericTypeArguments = null;
         if (field.getGenericType() instanceof ParameterizedType) {
-            key.generics = (ParameterizedType)field.getGenericType();
-        }
-        WebRepository repositoryObject = repositoryObjects.get(key);
-        if (repositoryObject == null) {
-            repositoryObject = createRepositoryObject(field);
-            repositoryObjects.put(key, repositoryObject);
-            if (field.getGenericType() instanceof ParameterizedType) {
-                decorator.setGenericTypeArguments((ParameterizedType) field.getGenericType());
-            }
-            repositoryObject.initElements(decorator);
+            genericTypeArguments = (ParameterizedType) field.getGenericType();
         }
-        return repositoryObject;
+        return decorator.getContext().createDecorator(driver, genericTypeArguments);
     }
 
     private WebSite createSiteObject(Field field) {
@@ -1,89 +1,233 @@
 package com.github.webdriverextensions.internal;
 
-import com.github.webdriverextensions.WebDriverExtensionFieldDecorator;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.RandomAccess;
 import com.github.webdriverextensions.WebComponent;
 import java.lang.reflect.ParameterizedType;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.support.PageFactory;
 
 public class WebComponentList<T extends WebComponent> implements List<T> {
 
     private Class<T> webComponentClass;
     private List<WebElement> wrappedWebElements;
-    private List<T> webComponents;
+    private Snapshot snapshot; // Null until the elements are located or after a refresh
+    private long rebuilds;
+    private long reuses;
+    private long createdWebComponents;
     private WebComponentFactory webComponentFactory = new DefaultWebComponentFactory();
-    private WebDriver driver;
+    private DecoratorContext context;
     private ParameterizedType genericTypeArguments;
 
     public WebComponentList(Class<T> webComponentClass, List<WebElement> webElements, WebComponentFactory webComponentFactory, WebDriver driver) {
         this.webComponentClass = webComponentClass;
         this.wrappedWebElements = webElements;
         this.webComponentFactory = webComponentFactory;
-        this.driver = driver;
+        this.context = new DecoratorContext(driver);
     }
 
     public WebComponentList(Class<T> webComponentClass, List<WebElement> webElements, WebComponentFactory webComponentFactory, WebDriver driver, ParameterizedType genericTypeArguments) {
         this.webComponentClass = webComponentClass;
         this.wrappedWebElements = webElements;
         this.webComponentFactory = webComponentFactory;
-        this.driver = driver;
+        this.context = new DecoratorContext(driver);
         this.genericTypeArguments = genericTypeArguments;
     }
 
-    public void createWebComponents() {
-        webComponents = new ArrayList<>();
-        for (WebElement webElement : wrappedWebElements) {
-            try {
-                // Create web component and add it to list
-                T webComponent = webComponentFactory.create(webComponentClass, webElement);
-                PageFactory.initElements(new WebDriverExtensionFieldDecorator(webElement, driver, genericTypeArguments), webComponent);
-                webComponents.add(webComponent);
-            } catch (Exception e) {
-                throw new WebDriverExtensionException(e);
+    public WebComponentList(Class<T> webComponentClass, List<WebElement> webElements, WebComponentFactory webComponentFactory, DecoratorContext context, ParameterizedType genericTypeArguments) {
+        this.webComponentClass = webComponentClass;
+        this.wrappedWebElements = webElements;
+        this.webComponentFactory = webComponentFactory;
+        this.context = context;
+        this.genericTypeArguments = genericTypeArguments;
+    }
+
+    /**
+     * The elements matched when the list was last used, and the web
+     * components of the elements. A web component is created the first time
+     * its index is accessed, so a list of thousands of rows of which only a
+     * few are used only creates those few.
+     *
+     * <p>Iterators and sub lists are views of the snapshot they were created
+     * from. They are not affected by later changes of the page.</p>
+     */
+    private class Snapshot extends AbstractList<T> implements RandomAccess {
+
+        private final WebElement[] webElements;
+        private final WebComponent[] webComponents;
+
+        Snapshot(WebElement[] webElements) {
+            this.webElements = webElements;
+            this.webComponents = new WebComponent[webElements.length];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            WebComponent webComponent = webComponents[index];
+            if (webComponent == null) {
+                webComponent = createWebComponent(webElements[index]);
+                webComponents[index] = webComponent;
             }
+            return (T) webComponent;
+        }
+
+        @Override
+        public int size() {
+            return webElements.length;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (!hasIdentityEquals(o)) {
+                return super.indexOf(o);
+            }
+            // Only a web component already created can be the same object
+            for (int i = 0; i < webComponents.length; i++) {
+                if (webComponents[i] == o) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            if (!hasIdentityEquals(o)) {
+                return super.lastIndexOf(o);
+            }
+            for (int i = webComponents.length - 1; i >= 0; i--) {
+                if (webComponents[i] == o) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
         }
     }
 
+    /**
+     * Creates the web components of the elements currently matched, unless
+     * the components already created are still valid.
+     *
+     * <p>The elements are located again on every call, which is a single
+     * round trip to the driver, and compared to the elements the components
+     * were created for. The components are reused if the same elements are
+     * matched in the same order and re-created otherwise, e.g. when rows have
+     * been added, removed or reordered or the page has been reloaded.</p>
+     */
+    public void createWebComponents() {
+        Snapshot currentSnapshot = getSnapshot();
+        for (int i = 0; i < currentSnapshot.size(); i++) {
+            currentSnapshot.get(i);
+        }
+    }
+
+    /**
+     * @return the snapshot of the elements currently matched, the previous
+     * snapshot if the same elements are matched
+     */
+    private Snapshot getSnapshot() {
+        WebElement[] webElements = wrappedWebElements.toArray(new WebElement[0]);
+        if (snapshot != null && Arrays.equals(webElements, snapshot.webElements)) {
+            reuses++;
+            return snapshot;
+        }
+        snapshot = new Snapshot(webElements);
+        rebuilds++;
+        return snapshot;
+    }
+
+    private WebComponent createWebComponent(WebElement webElement) {
+        try {
+            T webComponent = webComponentFactory.create(webComponentClass, webElement);
+            context.createDecorator(webElement, genericTypeArguments).initElements(webComponent);
+            createdWebComponents++;
+            return webComponent;
+        } catch (Exception e) {
+            throw new WebDriverExtensionException(e);
+        }
+    }
+
+    private static boolean hasIdentityEquals(Object o) {
+        if (!(o instanceof WebComponent)) {
+            return false;
+        }
+        try {
+            return o.getClass().getMethod("equals", Object.class).getDeclaringClass() == Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Drops the created web components so that they are created again on the
+     * next call, e.g. when the elements have been changed in place.
+     */
+    public void refresh() {
+        snapshot = null;
+    }
+
+    /**
+     * @return the number of times the web components have been created
+     */
+    public long getRebuilds() {
+        return rebuilds;
+    }
+
+    /**
+     * @return the number of times the web components already created were
+     * reused instead of created again
+     */
+    public long getReuses() {
+        return reuses;
+    }
+
+    /**
+     * @return the number of web components created, which only includes the
+     * components of the indexes that have been accessed
+     */
+    public long getCreatedWebComponents() {
+        return createdWebComponents;
+    }
+
     @Override
     public int size() {
-        createWebComponents();
-        return webComponents.size();
+        return getSnapshot().size();
     }
 
     @Override
     public boolean isEmpty() {
-        createWebComponents();
-        return webComponents.isEmpty();
+        return getSnapshot().isEmpty();
     }
 
     @Override
     public boolean contains(Object o) {
-        createWebComponents();
-        return webComponents.contains(o);
+        return getSnapshot().contains(o);
     }
 
     @Override
     public Iterator<T> iterator() {
-        createWebComponents();
-        return webComponents.iterator();
+        return getSnapshot().iterator();
     }
 
     @Override
     public Object[] toArray() {
-        createWebComponents();
-        return webComponents.toArray();
+        return getSnapshot().toArray();
     }
 
     @Override
     public <T> T[] toArray(T[] ts) {
-        createWebComponents();
-        return webComponents.toArray(ts);
+        return getSnapshot().toArray(ts);
     }
 
     @Override
@@ -98,8 +242,7 @@ public class WebComponentList<T extends WebComponent> implements List<T> {
 
     @Override
     public boolean containsAll(Collection<?> clctn) {
-        createWebComponents();
-        return webComponents.containsAll(clctn);
+        return getSnapshot().containsAll(clctn);
     }
 
     @Override
@@ -129,8 +272,7 @@ public class WebComponentList<T extends WebComponent> implements List<T> {
 
     @Override
     public T get(int i) {
-        createWebComponents();
-        return webComponents.get(i);
+        return getSnapshot().get(i);
     }
 
     @Override
@@ -150,31 +292,26 @@ public class WebComponentList<T extends WebComponent> implements List<T> {
 
     @Override
     public int indexOf(Object o) {
-        createWebComponents();
-        return webComponents.indexOf(o);
+        return getSnapshot().indexOf(o);
     }
 
     @Override
     public int lastIndexOf(Object o) {
-        createWebComponents();
-        return webComponents.lastIndexOf(o);
+        return getSnapshot().lastIndexOf(o);
     }
 
     @Override
     public ListIterator<T> listIterator() {
-        createWebComponents();
-        return webComponents.listIterator();
+        return getSnapshot().listIterator();
     }
 
     @Override
     public ListIterator<T> listIterator(int i) {
-        createWebComponents();
-        return webComponents.listIterator();
+        return getSnapshot().listIterator(i);
     }
 
     @Override
     public List<T> subList(int i, int i1) {
-        createWebComponents();
-        return webComponents.subList(i, i1);
+        return getSnapshot().subList(i, i1);
     }
-}
\ No newline at end of file
+}
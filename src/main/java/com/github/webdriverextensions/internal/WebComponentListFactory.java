@@ -9,4 +9,12 @@ import org.openqa.selenium.WebElement;
 public interface WebComponentListFactory {
 
     <T extends WebComponent> List<T> create(Class<T> webComponentClass, List<WebElement> webElements, WebDriver driver, ParameterizedType genericTypeArguments);
+
+    /**
+     * Creates a list whose web components are decorated by decorators
+     * sharing the context.
+     */
+    default <T extends WebComponent> List<T> create(Class<T> webComponentClass, List<WebElement> webElements, DecoratorContext context, ParameterizedType genericTypeArguments) {
+        return create(webComponentClass, webElements, context.getDriver(), genericTypeArguments);
+    }
 }
\ No newline at end of file
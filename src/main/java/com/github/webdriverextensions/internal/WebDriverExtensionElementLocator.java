@@ -28,6 +28,12 @@ public class WebDriverExtensionElementLocator implements ElementLocator {
         by = annotations.buildBy();
     }
 
+    public WebDriverExtensionElementLocator(SearchContext searchContext, By by, boolean shouldCache) {
+        this.searchContext = searchContext;
+        this.shouldCache = shouldCache;
+        this.by = by;
+    }
+
     @Override
     public WebElement findElement() {
         if (cachedElement != null && shouldCache) {
@@ -27,4 +27,14 @@ public class WebDriverExtensionElementLocatorFactory implements ElementLocatorFa
     public ElementLocator createLocator(Field field) {
         return new WebDriverExtensionElementLocator(searchContext, field, driver);
     }
+
+    /**
+     * Creates a new element locator for a field without reading the
+     * annotations of the field again.
+     *
+     * @param fieldPlan the decoration plan of the field
+     */
+    public ElementLocator createLocator(DecorationPlan.FieldPlan fieldPlan) {
+        return new WebDriverExtensionElementLocator(fieldPlan.isSearchContextReset() ? driver : searchContext, fieldPlan.getBy(), fieldPlan.isLookupCached());
+    }
 }
@@ -0,0 +1,70 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.utils.StringUtils;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.PARALLEL_BROWSER_LIMITS_PROPERTY_NAME;
+
+/**
+ * Limits the number of tests that run at the same time with a certain
+ * browser, e.g. to not start more Firefox browsers than the machine can
+ * handle when running tests in parallel.
+ *
+ * <p>The limits are shared by all runners in the JVM and are configured with
+ * the {@code webdriverextensions.parallel.browserlimits} property as a comma
+ * separated list of browser names and limits, e.g. {@code chrome:6,firefox:2}.
+ * Browsers without a limit are not limited.</p>
+ */
+public class BrowserSessionLimiter {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(BrowserSessionLimiter.class);
+    private static final Map<String, Semaphore> limits = parseBrowserLimits(System.getProperty(PARALLEL_BROWSER_LIMITS_PROPERTY_NAME, ""));
+
+    private BrowserSessionLimiter() {}
+
+    public static void acquire(String browserName) throws InterruptedException {
+        Semaphore semaphore = getSemaphore(browserName);
+        if (semaphore != null) {
+            semaphore.acquire();
+        }
+    }
+
+    public static void release(String browserName) {
+        Semaphore semaphore = getSemaphore(browserName);
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    private static Semaphore getSemaphore(String browserName) {
+        return browserName != null ? limits.get(browserName.toLowerCase()) : null;
+    }
+
+    static Map<String, Semaphore> parseBrowserLimits(String browserLimitsString) {
+        return parseBrowserLimits(PARALLEL_BROWSER_LIMITS_PROPERTY_NAME, browserLimitsString);
+    }
+
+    static Map<String, Semaphore> parseBrowserLimits(String propertyName, String browserLimitsString) {
+        Map<String, Semaphore> result = new HashMap<>();
+        for (String browserLimitString : browserLimitsString.split(",")) {
+            if (StringUtils.isBlank(browserLimitString)) {
+                continue;
+            }
+            String[] browserAndLimit = browserLimitString.split(":");
+            int limit = browserAndLimit.length == 2 ? org.apache.commons.lang3.math.NumberUtils.toInt(browserAndLimit[1].trim(), 0) : 0;
+            if (limit <= 0) {
+                log.warn("Ignoring invalid browser limit {} in property " + propertyName
+                        + ", expected a browser name and a positive limit e.g. chrome:6", StringUtils.quote(browserLimitString));
+                continue;
+            }
+            result.put(browserAndLimit[0].trim().toLowerCase(), new Semaphore(limit, true));
+        }
+        if (!result.isEmpty()) {
+            log.info("Browsers limited by system property {}: {}", propertyName, browserLimitsString);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+}
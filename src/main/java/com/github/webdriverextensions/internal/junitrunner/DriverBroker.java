@@ -0,0 +1,207 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.WebDriverProperties;
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.BROKER_IDLE_TIMEOUT_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.BROKER_MAX_USES_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.BROKER_PORT_FILE_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.BROKER_PROPERTY_NAME;
+
+/**
+ * Runs a {@link LocalHub} in a daemon process of its own so that warm browsers
+ * can be shared by all test JVMs on the machine, e.g. by all Surefire forks,
+ * instead of every fork starting its own browsers.
+ *
+ * <p>The first JVM that needs the broker starts it and the port it listens to
+ * is written to a port file in the temp directory. Later JVMs find the running
+ * broker through the port file. The broker exits by itself when it has not
+ * received any request for the idle timeout, which defaults to ten minutes,
+ * and has no active sessions. Sessions whose client exited without deleting
+ * them are quit after the session timeout of the hub, so they do not keep the
+ * broker running.</p>
+ *
+ * <p>The broker is enabled by setting the {@code webdriverextensions.broker}
+ * property to {@code true}. Tests that use a browser supported by the broker
+ * then create a RemoteWebDriver connected to it, unless the test class runs
+ * against a remote address.</p>
+ */
+public class DriverBroker {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DriverBroker.class);
+
+    private static final long STARTUP_TIMEOUT = 30000; // In milliseconds
+    private static URL address; // Guarded by DriverBroker.class
+
+    private DriverBroker() {}
+
+    public static boolean isEnabled() {
+        return PropertyUtils.isTrue(BROKER_PROPERTY_NAME);
+    }
+
+    /**
+     * @return the address of the running broker, the broker is started if it
+     * is not already running
+     */
+    public static synchronized URL getAddress() {
+        if (address != null && isRunning(address)) {
+            return address;
+        }
+        Path portFile = getPortFile();
+        Path lockFile = Paths.get(portFile + ".lock");
+        // Lock so that forks starting at the same time do not start one broker each
+        try (FileChannel channel = new RandomAccessFile(lockFile.toFile(), "rw").getChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                URL runningAddress = readAddress(portFile);
+                if (runningAddress == null || !isRunning(runningAddress)) {
+                    Files.deleteIfExists(portFile);
+                    runningAddress = startBroker(portFile);
+                }
+                address = runningAddress;
+                return address;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new WebDriverExtensionException("Failed to start driver broker", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverExtensionException("Interrupted while starting driver broker", e);
+        }
+    }
+
+    private static Path getPortFile() {
+        String portFile = System.getProperty(BROKER_PORT_FILE_PROPERTY_NAME);
+        if (portFile != null) {
+            return Paths.get(portFile);
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"), "webdriverextensions-broker-" + System.getProperty("user.name") + ".port");
+    }
+
+    private static URL readAddress(Path portFile) throws IOException {
+        if (!Files.exists(portFile)) {
+            return null;
+        }
+        String port = new String(Files.readAllBytes(portFile), StandardCharsets.UTF_8).trim();
+        if (!port.matches("\\d+")) {
+            return null;
+        }
+        return new URL("http", "127.0.0.1", Integer.parseInt(port), "/wd/hub");
+    }
+
+    static boolean isRunning(URL address) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(address + "/status").openConnection();
+            connection.setConnectTimeout(1000);
+            connection.setReadTimeout(5000);
+            try {
+                return connection.getResponseCode() == 200;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the system properties the runner honours when it starts a
+     * browser itself, i.e. the driver and browser binary paths, and the
+     * webdriverextensions settings, as java command line arguments
+     */
+    static List<String> getForwardedProperties() {
+        List<String> arguments = new ArrayList<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("webdriver") || name.startsWith("phantomjs")
+                    || name.equals(WebDriverProperties.CHROME_BINARY_PROPERTY_NAME)) {
+                arguments.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        return arguments;
+    }
+
+    private static URL startBroker(Path portFile) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(getForwardedProperties());
+        command.add("-D" + BROKER_PORT_FILE_PROPERTY_NAME + "=" + portFile);
+        command.add("-cp");
+        // Surefire runs the tests with a manifest-only jar so prefer the real test class path
+        String classPath = System.getProperty("surefire.test.class.path");
+        command.add(classPath != null ? classPath : System.getProperty("java.class.path"));
+        command.add(DriverBroker.class.getName());
+
+        log.info("Starting driver broker");
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(portFile + ".log")))
+                .start();
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            URL startedAddress = readAddress(portFile);
+            if (startedAddress != null && isRunning(startedAddress)) {
+                log.info("Driver broker started at {}", startedAddress);
+                return startedAddress;
+            }
+            if (!process.isAlive()) {
+                throw new WebDriverExtensionException("Driver broker exited with exit code " + process.exitValue()
+                        + ", see " + portFile + ".log for details");
+            }
+            Thread.sleep(100);
+        }
+        process.destroy();
+        throw new WebDriverExtensionException("Driver broker did not start within " + STARTUP_TIMEOUT + " ms");
+    }
+
+    /**
+     * Starts a broker and writes its port to the port file.
+     */
+    public static void main(String[] args) throws Exception {
+        long idleTimeout = PropertyUtils.getLong(BROKER_IDLE_TIMEOUT_PROPERTY_NAME, 600);
+        int maxUses = PropertyUtils.getInt(BROKER_MAX_USES_PROPERTY_NAME, 0);
+        final LocalHub hub = new LocalHub(0, idleTimeout, TimeUnit.SECONDS, maxUses, LocalHub.getBrowserLimitsFromProperties());
+        hub.setTimeoutsFromProperties();
+        hub.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                hub.stop();
+            }
+        }, "webdriverextensions-broker-shutdown"));
+
+        Path portFile = getPortFile();
+        Path tempFile = Files.createTempFile(portFile.toAbsolutePath().getParent(), "webdriverextensions-broker", ".tmp");
+        Files.write(tempFile, String.valueOf(hub.getAddress().getPort()).getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile, portFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(idleTimeout);
+        while (System.currentTimeMillis() - hub.getLastActivity() < idleTimeoutMillis || hub.getActiveSessionCount() > 0) {
+            Thread.sleep(1000);
+            // Also quits the abandoned sessions that would otherwise keep the broker running
+            hub.removeExpiredSessions();
+        }
+        log.info("Driver broker idle for {} seconds, exiting", idleTimeout);
+        String port = String.valueOf(hub.getAddress().getPort());
+        if (Files.exists(portFile) && port.equals(new String(Files.readAllBytes(portFile), StandardCharsets.UTF_8).trim())) {
+            Files.deleteIfExists(portFile);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.CIRCUIT_BREAKER_RETRY_AFTER_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.CIRCUIT_BREAKER_THRESHOLD_PROPERTY_NAME;
+
+/**
+ * Stops trying to create drivers for a browser configuration that keeps
+ * failing to start, e.g. because of a broken grid node or driver binary, so
+ * that the remaining tests for it fail at once instead of each waiting for a
+ * timeout.
+ *
+ * <p>After the threshold number of consecutive failures the circuit opens and
+ * {@link #beforeCreate(Object)} throws an exception caused by the last
+ * failure. When the retry time has passed one caller is let through as a
+ * probe. If the probe succeeds the circuit closes again, otherwise it stays
+ * open for another retry time.</p>
+ *
+ * <p>The circuit breaker is enabled by setting the
+ * {@code webdriverextensions.circuitbreaker.threshold} property to the number
+ * of consecutive failures that opens the circuit. The retry time is set in
+ * seconds with the {@code webdriverextensions.circuitbreaker.retryafter}
+ * property (default 60).</p>
+ */
+public class DriverCircuitBreaker {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DriverCircuitBreaker.class);
+
+    public static final long DEFAULT_RETRY_AFTER = 60; // In seconds
+
+    private static DriverCircuitBreaker instance;
+
+    private static class Circuit {
+
+        private int consecutiveFailures;
+        private Throwable lastFailure;
+        private long openedAt;
+        private boolean probing;
+    }
+
+    private final int threshold;
+    private final long retryAfter;
+    private final Map<Object, Circuit> circuits = new HashMap<>(); // Guarded by this
+
+    public DriverCircuitBreaker(int threshold, long retryAfter, TimeUnit retryAfterUnit) {
+        this.threshold = threshold;
+        this.retryAfter = retryAfterUnit.toMillis(retryAfter);
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.getInt(CIRCUIT_BREAKER_THRESHOLD_PROPERTY_NAME, 0) > 0;
+    }
+
+    public static synchronized DriverCircuitBreaker getInstance() {
+        if (instance == null) {
+            instance = new DriverCircuitBreaker(
+                    PropertyUtils.getInt(CIRCUIT_BREAKER_THRESHOLD_PROPERTY_NAME, 0),
+                    PropertyUtils.getLong(CIRCUIT_BREAKER_RETRY_AFTER_PROPERTY_NAME, DEFAULT_RETRY_AFTER),
+                    TimeUnit.SECONDS);
+        }
+        return instance;
+    }
+
+    /**
+     * Checks that a driver may be created for the key. Every call that does
+     * not throw must be followed by a call to {@link #afterSuccess(Object)} or
+     * {@link #afterFailure(Object, Throwable)}.
+     *
+     * @throws WebDriverExtensionException if the circuit for the key is open,
+     * caused by the last failure to create a driver for it
+     */
+    public synchronized void beforeCreate(Object key) {
+        Circuit circuit = circuits.get(key);
+        if (circuit == null || circuit.consecutiveFailures < threshold) {
+            return;
+        }
+        long retryIn = circuit.openedAt + retryAfter - System.currentTimeMillis();
+        if (retryIn <= 0 && !circuit.probing) {
+            log.info("Retrying to create driver for {} after {} consecutive failures", key, circuit.consecutiveFailures);
+            circuit.probing = true;
+            return;
+        }
+        throw new WebDriverExtensionException("Not creating driver for " + key + " since the last "
+                + circuit.consecutiveFailures + " attempts failed, "
+                + (circuit.probing ? "a retry is in progress" : "retrying in " + TimeUnit.MILLISECONDS.toSeconds(retryIn) + " s"),
+                circuit.lastFailure);
+    }
+
+    public synchronized void afterSuccess(Object key) {
+        Circuit circuit = circuits.remove(key);
+        if (circuit != null && circuit.consecutiveFailures >= threshold) {
+            log.info("Created driver for {} again, closing circuit", key);
+        }
+    }
+
+    public synchronized void afterFailure(Object key, Throwable cause) {
+        Circuit circuit = circuits.get(key);
+        if (circuit == null) {
+            circuit = new Circuit();
+            circuits.put(key, circuit);
+        }
+        circuit.consecutiveFailures++;
+        circuit.lastFailure = cause;
+        circuit.probing = false;
+        if (circuit.consecutiveFailures >= threshold) {
+            circuit.openedAt = System.currentTimeMillis();
+            log.warn("Failed to create driver for {} {} times in a row, failing its tests at once for {} s",
+                    key, circuit.consecutiveFailures, TimeUnit.MILLISECONDS.toSeconds(retryAfter));
+        }
+    }
+}
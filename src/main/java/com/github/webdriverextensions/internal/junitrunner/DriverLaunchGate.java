@@ -0,0 +1,118 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.LAUNCH_JITTER_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.LAUNCH_MAX_CONCURRENT_PROPERTY_NAME;
+
+/**
+ * Limits the number of drivers being started at the same time, so that many
+ * parallel or pre-warming threads starting browsers at once do not make the
+ * startups time out. Unlike the {@link BrowserSessionLimiter} it does not
+ * limit the number of running browsers, only the number of starting ones.
+ *
+ * <p>The limit is set with the {@code webdriverextensions.launch.maxconcurrent}
+ * property. Setting the {@code webdriverextensions.launch.jitter} property to
+ * a number of milliseconds additionally delays each start by a random time up
+ * to it, to spread out starts that would otherwise happen at the same moment.
+ * The time spent waiting is logged when the JVM shuts down, to help tuning the
+ * limit.</p>
+ */
+public class DriverLaunchGate {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DriverLaunchGate.class);
+
+    private static DriverLaunchGate instance;
+
+    private final Semaphore launchPermits;
+    private final long maxJitter;
+    private final AtomicLong launches = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    /**
+     * @param maxConcurrentLaunches the max number of drivers starting at the
+     * same time or 0 for no limit
+     * @param maxJitter the max random delay before each start in milliseconds
+     */
+    public DriverLaunchGate(int maxConcurrentLaunches, long maxJitter) {
+        this.launchPermits = maxConcurrentLaunches > 0 ? new Semaphore(maxConcurrentLaunches, true) : null;
+        this.maxJitter = maxJitter;
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.getInt(LAUNCH_MAX_CONCURRENT_PROPERTY_NAME, 0) > 0
+                || PropertyUtils.getLong(LAUNCH_JITTER_PROPERTY_NAME, 0) > 0;
+    }
+
+    public static synchronized DriverLaunchGate getInstance() {
+        if (instance == null) {
+            instance = new DriverLaunchGate(
+                    PropertyUtils.getInt(LAUNCH_MAX_CONCURRENT_PROPERTY_NAME, 0),
+                    PropertyUtils.getLong(LAUNCH_JITTER_PROPERTY_NAME, 0));
+            Runtime.getRuntime().addShutdownHook(new Thread("webdriverextensions-launchgate-shutdown") {
+                @Override
+                public void run() {
+                    log.info("Started {} drivers (average wait to start = {} ms, max wait to start = {} ms)",
+                            instance.getLaunches(), instance.getAverageWaitTime(), instance.getMaxWaitTime());
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Waits until a driver may be started. Must be followed by a call to
+     * {@link #release()} when the driver has started or failed to start.
+     *
+     * @return the time waited in milliseconds
+     */
+    public long acquire() throws InterruptedException {
+        long start = System.nanoTime();
+        if (launchPermits != null) {
+            launchPermits.acquire();
+        }
+        if (maxJitter > 0) {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(maxJitter + 1));
+            } catch (InterruptedException e) {
+                release();
+                throw e;
+            }
+        }
+        long waitTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        launches.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+        long max;
+        do {
+            max = maxWaitTime.get();
+        } while (waitTime > max && !maxWaitTime.compareAndSet(max, waitTime));
+        if (waitTime > 0) {
+            log.debug("Waited {} ms to start driver", waitTime);
+        }
+        return waitTime;
+    }
+
+    public void release() {
+        if (launchPermits != null) {
+            launchPermits.release();
+        }
+    }
+
+    public long getLaunches() {
+        return launches.get();
+    }
+
+    public long getAverageWaitTime() {
+        long count = launches.get();
+        return count > 0 ? totalWaitTime.get() / count : 0;
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+}
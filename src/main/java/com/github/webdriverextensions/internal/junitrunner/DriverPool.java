@@ -0,0 +1,289 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.WebDriver;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.DRIVER_POOL_MAX_IDLE_TIME_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.DRIVER_POOL_MAX_SESSIONS_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.DRIVER_POOL_MAX_USES_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.DRIVER_POOL_PROPERTY_NAME;
+
+/**
+ * Keeps started drivers alive between tests so that the browser startup cost
+ * is paid once per worker instead of once per test.
+ *
+ * <p>Drivers are leased by key (typically the browser configuration) and
+ * returned with {@link #release(WebDriver)} when the test is done. A returned
+ * driver is kept idle until it is leased again, until it has been idle longer
+ * than the max idle time or until it has been used the max number of times.
+ * Idle drivers are kept alive by the {@link SessionKeepAlive}. All drivers
+ * still alive are quit when the JVM shuts down.</p>
+ *
+ * <p>The pool is enabled by setting the {@code webdriverextensions.driverpool}
+ * property to {@code true}.</p>
+ */
+public class DriverPool {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DriverPool.class);
+
+    public static final int DEFAULT_MAX_SESSIONS = Integer.MAX_VALUE;
+    public static final long DEFAULT_MAX_IDLE_TIME = 300; // In seconds
+    public static final int DEFAULT_MAX_USES = 100;
+    private static final long LEASE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    private static DriverPool instance;
+
+    public interface DriverFactory {
+        WebDriver create() throws Exception;
+    }
+
+    private static class Session {
+
+        private final Object key;
+        private final WebDriver driver;
+        private int uses;
+        private long idleSince;
+
+        private Session(Object key, WebDriver driver) {
+            this.key = key;
+            this.driver = driver;
+        }
+    }
+
+    private static class KeySessions {
+
+        private final Deque<Session> idle = new ArrayDeque<>();
+        private int live;
+    }
+
+    private final int maxSessions;
+    private final long maxIdleTime;
+    private final int maxUses;
+    private final Map<Object, KeySessions> sessions = new HashMap<>(); // Guarded by this
+    private final Map<WebDriver, Session> leased = new IdentityHashMap<>(); // Guarded by this
+    private boolean shutdown = false; // Guarded by this
+
+    public DriverPool(int maxSessions, long maxIdleTime, TimeUnit maxIdleTimeUnit, int maxUses) {
+        this.maxSessions = maxSessions > 0 ? maxSessions : DEFAULT_MAX_SESSIONS;
+        this.maxIdleTime = maxIdleTimeUnit.toMillis(maxIdleTime);
+        this.maxUses = maxUses;
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.isTrue(DRIVER_POOL_PROPERTY_NAME);
+    }
+
+    public static synchronized DriverPool getInstance() {
+        if (instance == null) {
+            instance = new DriverPool(
+                    PropertyUtils.getInt(DRIVER_POOL_MAX_SESSIONS_PROPERTY_NAME, DEFAULT_MAX_SESSIONS),
+                    PropertyUtils.getLong(DRIVER_POOL_MAX_IDLE_TIME_PROPERTY_NAME, DEFAULT_MAX_IDLE_TIME),
+                    TimeUnit.SECONDS,
+                    PropertyUtils.getInt(DRIVER_POOL_MAX_USES_PROPERTY_NAME, DEFAULT_MAX_USES));
+            DriverShutdown.register();
+            log.info("Driver pool enabled (maxSessions = {}, maxIdleTime = {}s, maxUses = {})",
+                    instance.maxSessions, TimeUnit.MILLISECONDS.toSeconds(instance.maxIdleTime), instance.maxUses);
+        }
+        return instance;
+    }
+
+    /**
+     * Shuts down the pool if it has been created.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * Leases an idle driver for the key or creates a new one with the factory
+     * if there is none. Blocks if the max number of sessions for the key are
+     * already leased.
+     */
+    public WebDriver lease(Object key, DriverFactory factory) throws Exception {
+        List<Session> evicted = new ArrayList<>();
+        Session session;
+        KeySessions keySessions;
+        synchronized (this) {
+            if (shutdown) {
+                throw new WebDriverExtensionException("Cannot lease driver since the driver pool is shut down");
+            }
+            evicted.addAll(removeExpiredSessions());
+            keySessions = getKeySessions(key);
+            long deadline = System.currentTimeMillis() + LEASE_TIMEOUT;
+            while (true) {
+                session = keySessions.idle.pollFirst();
+                if (session != null || keySessions.live < maxSessions) {
+                    break;
+                }
+                long timeLeft = deadline - System.currentTimeMillis();
+                if (timeLeft <= 0) {
+                    throw new WebDriverExtensionException("Timed out waiting for a free driver for " + key + " since all " + maxSessions + " sessions are leased");
+                }
+                wait(timeLeft);
+            }
+            if (session == null) {
+                keySessions.live++;
+            }
+        }
+        quit(evicted);
+
+        if (session == null) {
+            WebDriver driver;
+            try {
+                driver = factory.create();
+            } catch (Exception | Error e) {
+                synchronized (this) {
+                    keySessions.live--;
+                    notifyAll();
+                }
+                throw e;
+            }
+            session = new Session(key, driver);
+            log.debug("Created new pooled driver for {}", key);
+        } else {
+            SessionKeepAlive.unregister(session.driver);
+            log.debug("Reusing pooled driver for {}", key);
+        }
+
+        synchronized (this) {
+            session.uses++;
+            leased.put(session.driver, session);
+        }
+        return session.driver;
+    }
+
+    /**
+     * Returns a leased driver to the pool. The driver is quit instead if it
+     * has been used the max number of times.
+     */
+    public void release(WebDriver driver) {
+        Session session;
+        boolean retire;
+        synchronized (this) {
+            session = leased.remove(driver);
+            if (session == null) {
+                throw new WebDriverExtensionException("Cannot release driver since it is not leased from the driver pool");
+            }
+            retire = shutdown || (maxUses > 0 && session.uses >= maxUses);
+            if (retire) {
+                getKeySessions(session.key).live--;
+            } else {
+                // Kept alive before it is idle so that the next lease always unregisters it
+                SessionKeepAlive.register(driver);
+                session.idleSince = System.currentTimeMillis();
+                getKeySessions(session.key).idle.addFirst(session);
+            }
+            notifyAll();
+        }
+        if (retire) {
+            log.debug("Retiring pooled driver for {} after {} uses", session.key, session.uses);
+            quit(session);
+        }
+    }
+
+    /**
+     * Removes a leased driver from the pool and quits it, e.g. when it is
+     * broken and should not be used again.
+     */
+    public void invalidate(WebDriver driver) {
+        Session session;
+        synchronized (this) {
+            session = leased.remove(driver);
+            if (session != null) {
+                getKeySessions(session.key).live--;
+                notifyAll();
+            }
+        }
+        if (session != null) {
+            quit(session);
+        } else {
+            DriverQuitter.getInstance().quit(driver);
+        }
+    }
+
+    public synchronized boolean hasIdleSession(Object key) {
+        KeySessions keySessions = sessions.get(key);
+        return keySessions != null && !keySessions.idle.isEmpty();
+    }
+
+    public boolean isLeased(WebDriver driver) {
+        synchronized (this) {
+            return leased.containsKey(driver);
+        }
+    }
+
+    /**
+     * Quits all idle and leased drivers. Drivers leased after the pool is
+     * shut down are refused and drivers released after it are quit.
+     */
+    public void shutdown() {
+        List<Session> sessionsToQuit = new ArrayList<>();
+        synchronized (this) {
+            shutdown = true;
+            for (KeySessions keySessions : sessions.values()) {
+                sessionsToQuit.addAll(keySessions.idle);
+                keySessions.live -= keySessions.idle.size();
+                keySessions.idle.clear();
+            }
+            sessionsToQuit.addAll(leased.values());
+            leased.clear();
+            notifyAll();
+        }
+        quit(sessionsToQuit);
+    }
+
+    private KeySessions getKeySessions(Object key) {
+        KeySessions keySessions = sessions.get(key);
+        if (keySessions == null) {
+            keySessions = new KeySessions();
+            sessions.put(key, keySessions);
+        }
+        return keySessions;
+    }
+
+    private List<Session> removeExpiredSessions() {
+        List<Session> expired = new ArrayList<>();
+        if (maxIdleTime <= 0) {
+            return expired;
+        }
+        long now = System.currentTimeMillis();
+        for (KeySessions keySessions : sessions.values()) {
+            for (Iterator<Session> iter = keySessions.idle.iterator(); iter.hasNext();) {
+                Session session = iter.next();
+                if (now - session.idleSince > maxIdleTime) {
+                    iter.remove();
+                    keySessions.live--;
+                    expired.add(session);
+                }
+            }
+        }
+        return expired;
+    }
+
+    private void quit(List<Session> sessionsToQuit) {
+        for (Session session : sessionsToQuit) {
+            quit(session);
+        }
+    }
+
+    private void quit(Session session) {
+        SessionKeepAlive.unregister(session.driver);
+        try {
+            DriverQuitter.getInstance().quit(session.driver);
+        } catch (Exception e) {
+            log.warn("Failed to quit pooled driver for {}", session.key, e);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openqa.selenium.WebDriver;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.PREWARM_MAX_IDLE_TIME_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.PREWARM_PROPERTY_NAME;
+
+/**
+ * Starts drivers in the background before they are needed so that the driver
+ * startup time is hidden behind the test that is currently running.
+ *
+ * <p>The runner calls {@link #prewarm(Object, DriverPool.DriverFactory)} with
+ * the browser configuration of an upcoming test and {@link #take(Object)} when
+ * the test starts. Drivers waiting to be taken are kept alive by the
+ * {@link SessionKeepAlive}. A driver that is never taken, e.g. since the test
+ * it was pre-warmed for was skipped, is quit when the runner
+ * {@link #discard(Object) discards} it, when it has not been taken within
+ * {@code webdriverextensions.prewarm.maxidletime} seconds (default 300) or
+ * when the JVM shuts down.</p>
+ *
+ * <p>Pre-warming is enabled by setting the {@code webdriverextensions.prewarm}
+ * property to {@code true}.</p>
+ */
+public class DriverPrewarmer {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DriverPrewarmer.class);
+
+    public static final long DEFAULT_MAX_IDLE_TIME = 300; // In seconds
+
+    private static DriverPrewarmer instance;
+
+    private final long maxIdleTime;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService expirer;
+    private final Map<Object, Deque<Future<WebDriver>>> prewarmedDrivers = new HashMap<>(); // Guarded by this
+
+    public DriverPrewarmer() {
+        this(DEFAULT_MAX_IDLE_TIME, TimeUnit.SECONDS);
+    }
+
+    public DriverPrewarmer(long maxIdleTime, TimeUnit maxIdleTimeUnit) {
+        this.maxIdleTime = maxIdleTimeUnit.toMillis(maxIdleTime);
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "webdriverextensions-prewarm-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.expirer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "webdriverextensions-prewarm-expiry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.isTrue(PREWARM_PROPERTY_NAME);
+    }
+
+    public static synchronized DriverPrewarmer getInstance() {
+        if (instance == null) {
+            instance = new DriverPrewarmer(PropertyUtils.getLong(PREWARM_MAX_IDLE_TIME_PROPERTY_NAME, DEFAULT_MAX_IDLE_TIME), TimeUnit.SECONDS);
+            DriverShutdown.register();
+        }
+        return instance;
+    }
+
+    /**
+     * Shuts down the pre-warmer if it has been created.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * Starts creating a driver for the key in the background.
+     */
+    public void prewarm(final Object key, final DriverPool.DriverFactory factory) {
+        final Future<WebDriver> prewarmedDriver = executor.submit(new Callable<WebDriver>() {
+            @Override
+            public WebDriver call() throws Exception {
+                long start = System.currentTimeMillis();
+                WebDriver driver = factory.create();
+                SessionKeepAlive.register(driver);
+                log.debug("Pre-warmed driver for {} in {} ms", key, System.currentTimeMillis() - start);
+                return driver;
+            }
+        });
+        synchronized (this) {
+            Deque<Future<WebDriver>> keyDrivers = prewarmedDrivers.get(key);
+            if (keyDrivers == null) {
+                keyDrivers = new ArrayDeque<>();
+                prewarmedDrivers.put(key, keyDrivers);
+            }
+            keyDrivers.addLast(prewarmedDriver);
+        }
+        if (maxIdleTime > 0) {
+            expirer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (remove(key, prewarmedDriver)) {
+                        log.debug("Quitting driver pre-warmed for {} since it was not taken within {} ms", key, maxIdleTime);
+                        quitLater(prewarmedDriver);
+                    }
+                }
+            }, maxIdleTime, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Quits the driver most recently pre-warmed for the key, e.g. when the
+     * test it was pre-warmed for was skipped. Does nothing if no driver is
+     * pre-warmed for the key.
+     */
+    public void discard(final Object key) {
+        final Future<WebDriver> prewarmedDriver;
+        synchronized (this) {
+            Deque<Future<WebDriver>> keyDrivers = prewarmedDrivers.get(key);
+            prewarmedDriver = keyDrivers != null ? keyDrivers.pollLast() : null;
+        }
+        if (prewarmedDriver != null) {
+            log.debug("Quitting driver pre-warmed for {} since it was not taken", key);
+            quitLater(prewarmedDriver);
+        }
+    }
+
+    private synchronized boolean remove(Object key, Future<WebDriver> prewarmedDriver) {
+        Deque<Future<WebDriver>> keyDrivers = prewarmedDrivers.get(key);
+        return keyDrivers != null && keyDrivers.remove(prewarmedDriver);
+    }
+
+    private void quitLater(final Future<WebDriver> prewarmedDriver) {
+        // The driver may still be starting, so wait for it in the background
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    quit(prewarmedDriver);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            quit(prewarmedDriver); // Shutting down
+        }
+    }
+
+    private static void quit(Future<WebDriver> prewarmedDriver) {
+        try {
+            WebDriver driver = prewarmedDriver.get(30, TimeUnit.SECONDS);
+            SessionKeepAlive.unregister(driver);
+            DriverQuitter.getInstance().quit(driver);
+        } catch (ExecutionException e) {
+            // Pre-warming failed, there is no driver to quit
+        } catch (Exception e) {
+            log.debug("Failed to quit pre-warmed driver", e);
+        }
+    }
+
+    /**
+     * Takes a driver pre-warmed for the key, waiting for it to finish starting
+     * if needed.
+     *
+     * @return the pre-warmed driver or null if no driver was pre-warmed for
+     * the key or if pre-warming it failed
+     */
+    public WebDriver take(Object key) throws InterruptedException {
+        Future<WebDriver> prewarmedDriver;
+        synchronized (this) {
+            Deque<Future<WebDriver>> keyDrivers = prewarmedDrivers.get(key);
+            prewarmedDriver = keyDrivers != null ? keyDrivers.pollFirst() : null;
+        }
+        if (prewarmedDriver == null) {
+            return null;
+        }
+        try {
+            WebDriver driver = prewarmedDriver.get();
+            SessionKeepAlive.unregister(driver);
+            return driver;
+        } catch (ExecutionException e) {
+            log.debug("Failed to pre-warm driver for {}", key, e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * @return true if a driver for the key can be taken from the driver pool
+     * or the pre-warmer without creating a new one
+     */
+    public static boolean isReady(Object key) {
+        return (DriverPool.isEnabled() && DriverPool.getInstance().hasIdleSession(key))
+                || (isEnabled() && getInstance().isPrewarmed(key));
+    }
+
+    public synchronized boolean isPrewarmed(Object key) {
+        Deque<Future<WebDriver>> keyDrivers = prewarmedDrivers.get(key);
+        return keyDrivers != null && !keyDrivers.isEmpty();
+    }
+
+    /**
+     * Quits all drivers that have been pre-warmed but not taken.
+     */
+    public void shutdown() {
+        List<Future<WebDriver>> remainingDrivers = new ArrayList<>();
+        synchronized (this) {
+            for (Deque<Future<WebDriver>> keyDrivers : prewarmedDrivers.values()) {
+                remainingDrivers.addAll(keyDrivers);
+            }
+            prewarmedDrivers.clear();
+        }
+        expirer.shutdownNow();
+        executor.shutdown();
+        for (Future<WebDriver> remainingDriver : remainingDrivers) {
+            quit(remainingDriver);
+        }
+        try {
+            // Wait for the drivers being discarded
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
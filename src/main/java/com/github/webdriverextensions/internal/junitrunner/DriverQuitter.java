@@ -0,0 +1,197 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openqa.selenium.WebDriver;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.ASYNC_QUIT_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.ASYNC_QUIT_THREADS_PROPERTY_NAME;
+
+/**
+ * Quits drivers and keeps metrics of how long the quits take and how many of
+ * them fail, e.g. to spot leaking sessions.
+ *
+ * <p>When the {@code webdriverextensions.asyncquit} property is set to
+ * {@code true} drivers are quit on a bounded pool of background threads
+ * ({@code webdriverextensions.asyncquit.threads}, default 4) so that the next
+ * test can start at once. If too many quits are pending the driver is quit in
+ * the calling thread instead. Pending quits are drained when the JVM shuts
+ * down, waiting at most {@code webdriverextensions.asyncquit.shutdowntimeout}
+ * seconds (default 60).</p>
+ */
+public class DriverQuitter {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DriverQuitter.class);
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT = 60; // In seconds
+    private static final int MAX_PENDING_QUITS_PER_THREAD = 16;
+
+    private static final DriverQuitter instance = new DriverQuitter();
+
+    private final AtomicLong quits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalQuitTime = new AtomicLong();
+    private final AtomicLong maxQuitTime = new AtomicLong();
+    private final AtomicInteger pending = new AtomicInteger();
+    private ThreadPoolExecutor executor; // Guarded by this
+
+    public static DriverQuitter getInstance() {
+        return instance;
+    }
+
+    public static boolean isAsyncEnabled() {
+        return PropertyUtils.isTrue(ASYNC_QUIT_PROPERTY_NAME);
+    }
+
+    /**
+     * Quits the driver, in the background if asynchronous quits are enabled.
+     * Exceptions thrown when quitting the driver synchronously are rethrown
+     * after being counted, exceptions thrown in the background are logged.
+     */
+    public void quit(final WebDriver driver) {
+        if (!isAsyncEnabled()) {
+            quitNow(driver);
+            return;
+        }
+        pending.incrementAndGet();
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    quitNow(driver);
+                } catch (Exception e) {
+                    log.warn("Failed to quit driver", e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Quits a driver that the test using it could not quit. Only the window of
+     * a shared session is closed, and the session is quit if no other test is
+     * using it. A driver leased from the driver pool is removed from the pool.
+     */
+    public void discard(WebDriver driver) {
+        if (SharedSessions.isShared(driver)) {
+            WebDriver sharedDriver = SharedSessions.release(driver);
+            if (sharedDriver != null) {
+                discard(sharedDriver);
+            }
+            return;
+        }
+        if (DriverPool.isEnabled() && DriverPool.getInstance().isLeased(driver)) {
+            DriverPool.getInstance().invalidate(driver);
+        } else {
+            quit(driver);
+        }
+    }
+
+    /**
+     * Quits the driver in the calling thread, also if asynchronous quits are
+     * enabled.
+     */
+    void quitNow(WebDriver driver) {
+        DriverShutdown.register(); // Reports the metrics at shutdown, also when quitting synchronously
+        long start = System.nanoTime();
+        try {
+            driver.quit();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            ProfileTemplates.released(driver);
+            RemoteEndpoints.releasedEverywhere(driver);
+            long quitTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            quits.incrementAndGet();
+            totalQuitTime.addAndGet(quitTime);
+            long max;
+            do {
+                max = maxQuitTime.get();
+            } while (quitTime > max && !maxQuitTime.compareAndSet(max, quitTime));
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int threads = Math.max(PropertyUtils.getInt(ASYNC_QUIT_THREADS_PROPERTY_NAME, DEFAULT_THREADS), 1);
+            executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * MAX_PENDING_QUITS_PER_THREAD),
+                    new ThreadFactory() {
+                        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "webdriverextensions-quit-" + threadNumber.getAndIncrement());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    },
+                    new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable quit, ThreadPoolExecutor executor) {
+                            // Too many pending quits or shutting down, quit in the calling thread
+                            quit.run();
+                        }
+                    });
+        }
+        return executor;
+    }
+
+    /**
+     * Waits for the pending quits to finish.
+     *
+     * @return true if all pending quits finished within the timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        ThreadPoolExecutor executorToShutdown;
+        synchronized (this) {
+            executorToShutdown = executor;
+        }
+        boolean drained = true;
+        if (executorToShutdown != null) {
+            executorToShutdown.shutdown();
+            try {
+                drained = executorToShutdown.awaitTermination(timeout, unit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drained = false;
+            }
+            if (!drained) {
+                log.warn("{} drivers were not quit within {} {}, their sessions may be leaking", getPendingQuits(), timeout, unit);
+            }
+        }
+        log.info("Quit {} drivers (failures = {}, average time = {} ms, max time = {} ms)",
+                getQuits(), getFailures(), getAverageQuitTime(), getMaxQuitTime());
+        return drained;
+    }
+
+    public long getQuits() {
+        return quits.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public int getPendingQuits() {
+        return pending.get();
+    }
+
+    public long getAverageQuitTime() {
+        long count = quits.get();
+        return count > 0 ? totalQuitTime.get() / count : 0;
+    }
+
+    public long getMaxQuitTime() {
+        return maxQuitTime.get();
+    }
+}
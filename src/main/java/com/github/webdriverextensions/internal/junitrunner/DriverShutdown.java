@@ -0,0 +1,52 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.DriverRegistry;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.ASYNC_QUIT_SHUTDOWN_TIMEOUT_PROPERTY_NAME;
+
+/**
+ * The one shutdown hook quitting the drivers that are still alive when the
+ * JVM shuts down.
+ *
+ * <p>Shutdown hooks run concurrently, so the driver registry, the
+ * pre-warmer, the pool, the quitter, the local hub, the shared driver
+ * services and the profile templates do not add hooks of their own but
+ * register this one. It quits the leaked, pre-warmed and pooled drivers,
+ * waits for the pending quits and only then stops the local hub and the
+ * shared driver services the drivers were using and deletes the remaining
+ * browser profile clones.</p>
+ */
+public class DriverShutdown {
+
+    private static boolean registered = false; // Guarded by DriverShutdown.class
+
+    private DriverShutdown() {}
+
+    /**
+     * Adds the shutdown hook if it has not been added already.
+     */
+    public static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        Runtime.getRuntime().addShutdownHook(new Thread("webdriverextensions-shutdown") {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        });
+    }
+
+    private static void shutdown() {
+        DriverRegistry.shutdownInstance();
+        DriverPrewarmer.shutdownInstance();
+        DriverPool.shutdownInstance();
+        DriverQuitter.getInstance().shutdown(PropertyUtils.getLong(ASYNC_QUIT_SHUTDOWN_TIMEOUT_PROPERTY_NAME, DriverQuitter.DEFAULT_SHUTDOWN_TIMEOUT), TimeUnit.SECONDS);
+        LocalHub.shutdownInstance();
+        SharedDriverServices.stopAll();
+        ProfileTemplates.shutdownInstance();
+    }
+}
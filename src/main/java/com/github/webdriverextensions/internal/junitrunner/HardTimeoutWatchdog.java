@@ -0,0 +1,273 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.service.DriverCommandExecutor;
+import org.openqa.selenium.remote.service.DriverService;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.HARD_TIMEOUT_PROPERTY_NAME;
+import static com.github.webdriverextensions.internal.utils.StringUtils.quote;
+import static com.github.webdriverextensions.internal.utils.WebDriverUtils.getCurrentDateAndTime;
+import static com.github.webdriverextensions.internal.utils.WebDriverUtils.getScreenshotFilePath;
+
+/**
+ * Enforces the deadlines of tests, so that a test hanging in a driver command
+ * does not hold its thread and browser forever.
+ *
+ * <p>When a deadline expires a screenshot is taken, the driver is quit and if
+ * the quit does not return in time the driver process is killed, unless the
+ * process is a shared driver service that other tests are using too. Each of
+ * the steps runs on a thread of its own with a timeout since the driver may be
+ * hanging. Then the test thread is interrupted. Killing the session makes the
+ * command the test is blocked in fail, so that the test returns and frees its
+ * browser slot.</p>
+ *
+ * <p>Deadlines are set with the &#064;HardTimeout annotation or for all tests
+ * with the {@code webdriverextensions.hardtimeout} property (in seconds).</p>
+ */
+public class HardTimeoutWatchdog {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(HardTimeoutWatchdog.class);
+
+    private static final long STEP_TIMEOUT = 10000; // In milliseconds
+
+    private static HardTimeoutWatchdog instance; // Guarded by HardTimeoutWatchdog.class
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(createThreadFactory("webdriverextensions-watchdog-"));
+    private final ExecutorService steps = Executors.newCachedThreadPool(createThreadFactory("webdriverextensions-watchdog-step-"));
+    private final AtomicLong expiredDeadlines = new AtomicLong();
+
+    public static synchronized HardTimeoutWatchdog getInstance() {
+        if (instance == null) {
+            instance = new HardTimeoutWatchdog();
+        }
+        return instance;
+    }
+
+    /**
+     * @return the deadline of all tests in milliseconds set by the
+     * {@code webdriverextensions.hardtimeout} property, 0 if not set
+     */
+    public static long getDefaultTimeout() {
+        return TimeUnit.SECONDS.toMillis(PropertyUtils.getLong(HARD_TIMEOUT_PROPERTY_NAME, 0));
+    }
+
+    /**
+     * Starts the deadline of a test running in the current thread.
+     *
+     * @param testName the name of the test, used in the failure message and
+     * the screenshot file name
+     * @param driver the driver to quit when the deadline expires, or null to
+     * only interrupt the test
+     * @param timeout the time to the deadline in milliseconds
+     */
+    public Deadline start(String testName, WebDriver driver, long timeout) {
+        Deadline deadline = new Deadline(testName, driver, timeout, Thread.currentThread());
+        deadline.expiry = scheduler.schedule(deadline, timeout, TimeUnit.MILLISECONDS);
+        return deadline;
+    }
+
+    public long getExpiredDeadlines() {
+        return expiredDeadlines.get();
+    }
+
+    public class Deadline implements Runnable {
+
+        private static final int RUNNING = 0;
+        private static final int FINISHED = 1;
+        private static final int EXPIRED = 2;
+
+        private final String testName;
+        private final WebDriver driver;
+        private final long timeout;
+        private final Thread testThread;
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        private final CountDownLatch expired = new CountDownLatch(1);
+        private ScheduledFuture<?> expiry;
+        private StackTraceElement[] stackTrace; // Written before expired is counted down
+        private String diagnostic; // Written before expired is counted down
+
+        private Deadline(String testName, WebDriver driver, long timeout, Thread testThread) {
+            this.testName = testName;
+            this.driver = driver;
+            this.timeout = timeout;
+            this.testThread = testThread;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(RUNNING, EXPIRED)) {
+                return;
+            }
+            try {
+                expiredDeadlines.incrementAndGet();
+                stackTrace = testThread.getStackTrace();
+                StringBuilder message = new StringBuilder("Test " + testName + " did not finish within its hard timeout of " + timeout + " ms");
+                if (driver != null) {
+                    String screenshot = takeScreenshot();
+                    message.append(screenshot != null ? ", screenshot saved to " + quote(screenshot) : ", no screenshot could be taken");
+                    message.append(quitOrKill());
+                }
+                diagnostic = message.toString();
+                log.warn(diagnostic);
+                testThread.interrupt();
+            } finally {
+                expired.countDown();
+            }
+        }
+
+        /**
+         * Stops the deadline when the test has finished. If the deadline
+         * expired the handling of the expiry is waited for and the interrupt
+         * of the test thread is cleared.
+         *
+         * @return true if the deadline expired
+         */
+        public boolean finish() {
+            if (state.compareAndSet(RUNNING, FINISHED)) {
+                expiry.cancel(false);
+                return false;
+            }
+            while (expired.getCount() > 0) {
+                try {
+                    expired.await();
+                } catch (InterruptedException e) {
+                    // The test thread is interrupted by the expiry
+                }
+            }
+            Thread.interrupted(); // Clear the interrupt of the expiry so the thread can run the next test
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        /**
+         * @return the failure of the test, with the stack trace of where the
+         * test was when the deadline expired
+         */
+        public WebDriverExtensionException createFailure(Throwable cause) {
+            WebDriverExtensionException failure = new WebDriverExtensionException(diagnostic, cause);
+            if (stackTrace != null) {
+                failure.setStackTrace(stackTrace);
+            }
+            return failure;
+        }
+
+        private String takeScreenshot() {
+            if (!(driver instanceof TakesScreenshot)) {
+                return null;
+            }
+            try {
+                return runStep(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        File screenshotFile = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
+                        String filePath = getScreenshotFilePath(testName + "-timeout-" + getCurrentDateAndTime());
+                        FileUtils.copyFile(screenshotFile, new File(filePath));
+                        return filePath;
+                    }
+                });
+            } catch (Exception e) {
+                log.debug("Failed to take screenshot of timed out test {}", testName, e);
+                return null;
+            }
+        }
+
+        /**
+         * @return how the driver was stopped, to be appended to the failure
+         * message
+         */
+        private String quitOrKill() {
+            try {
+                runStep(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        DriverQuitter.getInstance().quitNow(driver);
+                        return null;
+                    }
+                });
+                return ", the driver was quit";
+            } catch (Exception e) {
+                log.debug("Failed to quit driver of timed out test {}", testName, e);
+            }
+            DriverService driverService = getDriverService(driver);
+            if (driverService == null) {
+                log.warn("Could not kill driver of timed out test {} since it has no driver process", testName);
+                return ", the driver could not be quit and was not killed since it has no driver process of its own";
+            }
+            if (SharedDriverServices.isShared(driverService)) {
+                log.warn("Could not kill driver of timed out test {} since its driver process is shared with other tests", testName);
+                return ", the driver could not be quit and was not killed since its driver process is shared with other tests";
+            }
+            driverService.stop();
+            return ", the driver process was killed";
+        }
+    }
+
+    private <T> T runStep(Callable<T> step) throws Exception {
+        Future<T> result = steps.submit(step);
+        try {
+            return result.get(STEP_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the service that started the driver process of a local driver,
+     * null for remote drivers
+     */
+    static DriverService getDriverService(WebDriver driver) {
+        if (!(driver instanceof RemoteWebDriver)
+                || !(((RemoteWebDriver) driver).getCommandExecutor() instanceof DriverCommandExecutor)) {
+            return null;
+        }
+        try {
+            Field serviceField = DriverCommandExecutor.class.getDeclaredField("service");
+            serviceField.setAccessible(true);
+            return (DriverService) serviceField.get(((RemoteWebDriver) driver).getCommandExecutor());
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            log.debug("Failed to get driver service", e);
+            return null;
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
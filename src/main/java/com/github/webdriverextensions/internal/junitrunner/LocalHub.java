@@ -0,0 +1,863 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.WebDriverProperties;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.edge.EdgeDriverService;
+import org.openqa.selenium.firefox.GeckoDriverService;
+import org.openqa.selenium.ie.InternetExplorerDriverService;
+import org.openqa.selenium.phantomjs.PhantomJSDriverService;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.Dialect;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.SessionId;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.openqa.selenium.remote.service.DriverService;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.LOCAL_HUB_BROWSER_LIMITS_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.LOCAL_HUB_PORT_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.LOCAL_HUB_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.LOCAL_HUB_QUEUE_TIMEOUT_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.LOCAL_HUB_SESSION_TIMEOUT_PROPERTY_NAME;
+
+/**
+ * A minimal WebDriver hub listening on the loopback interface that starts
+ * local browsers for the sessions requested by RemoteWebDriver clients and
+ * keeps them warm between sessions.
+ *
+ * <p>A new session request is served by an idle session with the same desired
+ * capabilities if there is one, otherwise a driver service (e.g. chromedriver)
+ * is started and the request is forwarded to it. All other commands are
+ * forwarded as is to the driver service of the session, so the hub works with
+ * both the JSON wire and the W3C protocol. When a client deletes its session
+ * the browser is reset like a pooled driver (see {@link SessionReset}) and kept
+ * idle for the next client, until it has been idle longer than the max idle
+ * time or has been used the max number of times.</p>
+ *
+ * <p>The number of active sessions per browser can be limited, e.g. with
+ * {@code chrome:4,firefox:2}. New session requests over the limit are queued
+ * and served in order as sessions are deleted, and fail if they have been
+ * queued for the queue timeout. The queue depth, the time spent
+ * queued and the session times are reported by the status endpoint and logged
+ * when the hub is stopped.</p>
+ *
+ * <p>An active session that has not received a command for the session
+ * timeout, e.g. because its client exited without deleting it, is quit and
+ * its browser limit released.</p>
+ *
+ * <p>Only browsers driven by a driver service are supported, i.e. not
+ * HtmlUnit. The driver services are started with the driver binaries set by
+ * the system properties of the hub JVM and Chrome with the binary set by the
+ * {@code chrome.binary.path} property, like the runner does when it starts
+ * the browsers itself.</p>
+ *
+ * <p>Setting the {@code webdriverextensions.localhub} property to {@code true}
+ * runs a hub inside the test JVM, listening to the port set by the
+ * {@code webdriverextensions.localhub.port} property (any free port by
+ * default), with the browser limits set by the
+ * {@code webdriverextensions.localhub.browserlimits} property, the queue
+ * timeout set by the {@code webdriverextensions.localhub.queuetimeout}
+ * property (10 minutes by default) and the session timeout set by the
+ * {@code webdriverextensions.localhub.sessiontimeout} property (30 minutes by
+ * default).</p>
+ */
+public class LocalHub {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(LocalHub.class);
+
+    private static final Gson gson = new Gson();
+    private static final Type JSON_OBJECT_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+    private static final Pattern STATUS_PATH = Pattern.compile("^(?:/wd/hub)?/status/?$");
+    private static final Pattern SESSION_PATH = Pattern.compile("^(?:/wd/hub)?/session(?:/([^/]+)(/.*)?)?/?$");
+    private static final int CONNECT_TIMEOUT = 10000; // In milliseconds
+    private static final int READ_TIMEOUT = 600000; // In milliseconds
+    private static final long EMBEDDED_MAX_IDLE_TIME = 60; // In seconds
+    private static final long DEFAULT_QUEUE_TIMEOUT = 600; // In seconds
+    private static final long DEFAULT_SESSION_TIMEOUT = 1800; // In seconds
+
+    private static LocalHub instance;
+
+    private static class HubSession {
+
+        private final Object key;
+        private final String browserName;
+        private final DriverService service;
+        private final String sessionId;
+        private final Dialect dialect;
+        private final byte[] newSessionResponse;
+        private int uses;
+        private long idleSince;
+        private long leasedAt; // In nanoseconds
+        private volatile long lastCommand; // In milliseconds since the epoch
+
+        private HubSession(Object key, String browserName, DriverService service, String sessionId, Dialect dialect, byte[] newSessionResponse) {
+            this.key = key;
+            this.browserName = browserName;
+            this.service = service;
+            this.sessionId = sessionId;
+            this.dialect = dialect;
+            this.newSessionResponse = newSessionResponse;
+        }
+    }
+
+    private static class Reply {
+
+        private final int status;
+        private final byte[] body;
+
+        private Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private String getBodyString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final long maxIdleTime;
+    private final int maxUses;
+    private final Map<String, Semaphore> browserLimits;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, HubSession> activeSessions = new HashMap<>(); // Guarded by this
+    private final Map<Object, Deque<HubSession>> idleSessions = new HashMap<>(); // Guarded by this
+    private volatile long lastActivity = System.currentTimeMillis();
+    private volatile long queueTimeout; // In milliseconds, 0 for no timeout
+    private volatile long sessionTimeout; // In milliseconds, 0 for no timeout
+    private final AtomicInteger queuedRequests = new AtomicInteger();
+    private final AtomicInteger maxQueuedRequests = new AtomicInteger();
+    private final AtomicLong totalQueueTime = new AtomicLong();
+    private final AtomicLong sessions = new AtomicLong();
+    private final AtomicLong totalSessionTime = new AtomicLong();
+    private final AtomicLong maxSessionTime = new AtomicLong();
+
+    /**
+     * @param port the port to listen to or 0 for any free port
+     */
+    public LocalHub(int port, long maxIdleTime, TimeUnit maxIdleTimeUnit, int maxUses) throws IOException {
+        this(port, maxIdleTime, maxIdleTimeUnit, maxUses, Collections.<String, Semaphore>emptyMap());
+    }
+
+    /**
+     * @param port the port to listen to or 0 for any free port
+     * @param browserLimits the max number of active sessions per lower case
+     * browser name, browsers without a limit are not limited
+     */
+    public LocalHub(int port, long maxIdleTime, TimeUnit maxIdleTimeUnit, int maxUses, Map<String, Semaphore> browserLimits) throws IOException {
+        this.maxIdleTime = maxIdleTimeUnit.toMillis(maxIdleTime);
+        this.maxUses = maxUses;
+        this.browserLimits = browserLimits;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "webdriverextensions-hub-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                LocalHub.this.handle(exchange);
+            }
+        });
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.isTrue(LOCAL_HUB_PROPERTY_NAME);
+    }
+
+    /**
+     * @return the hub running in this JVM, it is started on first use and
+     * stopped when the JVM shuts down
+     */
+    public static synchronized LocalHub getInstance() {
+        if (instance == null) {
+            try {
+                instance = new LocalHub(PropertyUtils.getInt(LOCAL_HUB_PORT_PROPERTY_NAME, 0), EMBEDDED_MAX_IDLE_TIME, TimeUnit.SECONDS, 0,
+                        getBrowserLimitsFromProperties());
+            } catch (IOException e) {
+                throw new WebDriverException("Failed to start local hub", e);
+            }
+            instance.setTimeoutsFromProperties();
+            instance.start();
+            DriverShutdown.register();
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the hub running in this JVM if it has been started, called when
+     * the JVM shuts down after the drivers using it have been quit.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.stop();
+        }
+    }
+
+    static Map<String, Semaphore> getBrowserLimitsFromProperties() {
+        return BrowserSessionLimiter.parseBrowserLimits(LOCAL_HUB_BROWSER_LIMITS_PROPERTY_NAME,
+                System.getProperty(LOCAL_HUB_BROWSER_LIMITS_PROPERTY_NAME, ""));
+    }
+
+    /**
+     * Sets how long an active session may go without receiving a command
+     * before it is quit and its browser limit released, e.g. because its
+     * client exited without deleting it. Sessions never time out by default.
+     *
+     * @param sessionTimeout the timeout or 0 for no timeout
+     */
+    public void setSessionTimeout(long sessionTimeout, TimeUnit sessionTimeoutUnit) {
+        this.sessionTimeout = sessionTimeoutUnit.toMillis(sessionTimeout);
+    }
+
+    /**
+     * Sets how long a new session request may be queued waiting for a browser
+     * limit before it fails. Requests wait for as long as needed by default.
+     *
+     * @param queueTimeout the timeout or 0 for no timeout
+     */
+    public void setQueueTimeout(long queueTimeout, TimeUnit queueTimeoutUnit) {
+        this.queueTimeout = queueTimeoutUnit.toMillis(queueTimeout);
+    }
+
+    void setTimeoutsFromProperties() {
+        setQueueTimeout(PropertyUtils.getLong(LOCAL_HUB_QUEUE_TIMEOUT_PROPERTY_NAME, DEFAULT_QUEUE_TIMEOUT), TimeUnit.SECONDS);
+        setSessionTimeout(PropertyUtils.getLong(LOCAL_HUB_SESSION_TIMEOUT_PROPERTY_NAME, DEFAULT_SESSION_TIMEOUT), TimeUnit.SECONDS);
+    }
+
+    public static boolean supports(String browserName) {
+        return BrowserType.CHROME.equalsIgnoreCase(browserName)
+                || BrowserType.GOOGLECHROME.equalsIgnoreCase(browserName)
+                || BrowserType.FIREFOX.equalsIgnoreCase(browserName)
+                || BrowserType.PHANTOMJS.equalsIgnoreCase(browserName)
+                || BrowserType.EDGE.equalsIgnoreCase(browserName)
+                || BrowserType.IE.equalsIgnoreCase(browserName)
+                || BrowserType.IEXPLORE.equalsIgnoreCase(browserName);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Local hub listening at {}", getAddress());
+    }
+
+    public URL getAddress() {
+        try {
+            return new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.getAddress().getPort(), "/wd/hub");
+        } catch (IOException e) {
+            throw new WebDriverException(e);
+        }
+    }
+
+    /**
+     * Stops listening and quits all active and idle sessions.
+     */
+    public void stop() {
+        server.stop(0);
+        List<HubSession> sessionsToQuit = new ArrayList<>();
+        synchronized (this) {
+            sessionsToQuit.addAll(activeSessions.values());
+            activeSessions.clear();
+            for (Deque<HubSession> keySessions : idleSessions.values()) {
+                sessionsToQuit.addAll(keySessions);
+            }
+            idleSessions.clear();
+        }
+        for (HubSession session : sessionsToQuit) {
+            quit(session);
+        }
+        executor.shutdownNow();
+        log.info("Local hub served {} sessions (average session time = {} ms, max session time = {} ms, average queue time = {} ms, max queue depth = {})",
+                getSessions(), getAverageSessionTime(), getMaxSessionTime(), getAverageQueueTime(), getMaxQueuedRequests());
+    }
+
+    public synchronized int getActiveSessionCount() {
+        return activeSessions.size();
+    }
+
+    public synchronized int getIdleSessionCount() {
+        int count = 0;
+        for (Deque<HubSession> keySessions : idleSessions.values()) {
+            count += keySessions.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of new session requests waiting for a browser limit
+     */
+    public int getQueuedRequests() {
+        return queuedRequests.get();
+    }
+
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests.get();
+    }
+
+    /**
+     * @return the number of sessions created or reused
+     */
+    public long getSessions() {
+        return sessions.get();
+    }
+
+    /**
+     * @return the average time new session requests were queued in
+     * milliseconds
+     */
+    public long getAverageQueueTime() {
+        long sessionCount = sessions.get();
+        return sessionCount > 0 ? totalQueueTime.get() / sessionCount : 0;
+    }
+
+    /**
+     * @return the average time from a session being created or reused to
+     * being deleted in milliseconds
+     */
+    public long getAverageSessionTime() {
+        long sessionCount = sessions.get();
+        return sessionCount > 0 ? totalSessionTime.get() / sessionCount : 0;
+    }
+
+    public long getMaxSessionTime() {
+        return maxSessionTime.get();
+    }
+
+    /**
+     * @return the time of the last request in milliseconds since the epoch
+     */
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * Quits the sessions that have been idle longer than the max idle time and
+     * the active sessions that have not received a command for the session
+     * timeout.
+     */
+    public void removeExpiredSessions() {
+        List<HubSession> expired = new ArrayList<>();
+        List<HubSession> abandoned = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long timeout = sessionTimeout;
+        synchronized (this) {
+            for (Deque<HubSession> keySessions : idleSessions.values()) {
+                for (HubSession session : new ArrayList<>(keySessions)) {
+                    if (now - session.idleSince > maxIdleTime) {
+                        keySessions.remove(session);
+                        expired.add(session);
+                    }
+                }
+            }
+            if (timeout > 0) {
+                for (Iterator<HubSession> iterator = activeSessions.values().iterator(); iterator.hasNext();) {
+                    HubSession session = iterator.next();
+                    if (now - session.lastCommand > timeout) {
+                        iterator.remove();
+                        abandoned.add(session);
+                    }
+                }
+            }
+        }
+        for (HubSession session : expired) {
+            quit(session);
+        }
+        for (HubSession session : abandoned) {
+            log.warn("Local hub quitting session {} that has not received a command for {} ms, its client probably exited without deleting it",
+                    session.sessionId, now - session.lastCommand);
+            recordSessionTime(session);
+            try {
+                quit(session);
+            } finally {
+                releaseBrowser(session.browserName);
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        lastActivity = System.currentTimeMillis();
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = readAll(exchange.getRequestBody());
+
+            if (STATUS_PATH.matcher(path).matches()) {
+                respond(exchange, new Reply(200, toJson(getStatus())));
+                return;
+            }
+            Matcher sessionPath = SESSION_PATH.matcher(path);
+            if (!sessionPath.matches()) {
+                respond(exchange, error(404, ErrorCodes.UNKNOWN_COMMAND, "unknown command", "Unknown command " + method + " " + path));
+                return;
+            }
+            String sessionId = sessionPath.group(1);
+            String commandPath = sessionPath.group(2) != null ? sessionPath.group(2) : "";
+            if (sessionId == null) {
+                respond(exchange, "POST".equals(method) ? newSession(body)
+                        : error(404, ErrorCodes.UNKNOWN_COMMAND, "unknown command", "Unknown command " + method + " " + path));
+                return;
+            }
+
+            HubSession session;
+            synchronized (this) {
+                session = activeSessions.get(sessionId);
+            }
+            if (session == null) {
+                respond(exchange, error(404, ErrorCodes.NO_SUCH_SESSION, "invalid session id", "No active session with id " + sessionId));
+            } else if (commandPath.isEmpty() && "DELETE".equals(method)) {
+                releaseSession(session);
+                respond(exchange, new Reply(200, toJson(session.dialect == Dialect.OSS
+                        ? createMap("sessionId", sessionId, "status", ErrorCodes.SUCCESS, "value", null)
+                        : createMap("value", null))));
+            } else {
+                session.lastCommand = System.currentTimeMillis();
+                try {
+                    respond(exchange, send(method, new URL(session.service.getUrl() + "/session/" + sessionId + commandPath), body));
+                } finally {
+                    // Long running commands count as activity until they finish
+                    session.lastCommand = System.currentTimeMillis();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Local hub failed to handle request {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            respond(exchange, error(500, ErrorCodes.UNHANDLED_ERROR, "unknown error", String.valueOf(e)));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    protected Map<String, Object> getStatus() {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("ready", true);
+        value.put("message", "webdriverextensions local hub");
+        value.put("activeSessions", getActiveSessionCount());
+        value.put("idleSessions", getIdleSessionCount());
+        value.put("queuedRequests", getQueuedRequests());
+        value.put("maxQueuedRequests", getMaxQueuedRequests());
+        value.put("sessions", getSessions());
+        value.put("averageQueueTime", getAverageQueueTime());
+        value.put("averageSessionTime", getAverageSessionTime());
+        value.put("maxSessionTime", getMaxSessionTime());
+        return createMap("status", ErrorCodes.SUCCESS, "value", value);
+    }
+
+    private Reply newSession(byte[] body) throws IOException, InterruptedException {
+        Map<String, Object> desiredCapabilities = getDesiredCapabilities(gson.<Map<String, Object>>fromJson(new String(body, StandardCharsets.UTF_8), JSON_OBJECT_TYPE));
+        String browserName = (String) desiredCapabilities.get("browserName");
+        if (!supports(browserName)) {
+            return error(500, ErrorCodes.SESSION_NOT_CREATED, "session not created", "Browser " + browserName + " is not supported by the local hub");
+        }
+        String chromeBinary = System.getProperty(WebDriverProperties.CHROME_BINARY_PROPERTY_NAME);
+        if (chromeBinary != null && (BrowserType.CHROME.equalsIgnoreCase(browserName) || BrowserType.GOOGLECHROME.equalsIgnoreCase(browserName))) {
+            body = addChromeBinary(body, chromeBinary);
+            desiredCapabilities = getDesiredCapabilities(gson.<Map<String, Object>>fromJson(new String(body, StandardCharsets.UTF_8), JSON_OBJECT_TYPE));
+        }
+        // Sessions are reused for requests with exactly the same desired capabilities
+        Object key = gson.toJson(desiredCapabilities);
+
+        // Quit abandoned sessions first so that their browser limits can be acquired
+        removeExpiredSessions();
+        long queueTime = acquireBrowser(browserName);
+        if (queueTime < 0) {
+            return error(500, ErrorCodes.SESSION_NOT_CREATED, "session not created", "Timed out after " + queueTimeout
+                    + " ms waiting for a " + browserName + " session to be deleted, all sessions allowed by the browser limit are active");
+        }
+        HubSession session;
+        try {
+            session = takeIdleSession(key);
+            if (session == null) {
+                DriverService service = startService(browserName, desiredCapabilities);
+                Reply reply;
+                try {
+                    reply = send("POST", new URL(service.getUrl() + "/session"), body);
+                } catch (IOException | RuntimeException e) {
+                    service.stop();
+                    throw e;
+                }
+                session = createSession(key, browserName, service, reply);
+                if (session == null) {
+                    service.stop();
+                    releaseBrowser(browserName);
+                    return reply;
+                }
+                log.debug("Local hub created session {} for {}", session.sessionId, key);
+            } else {
+                log.debug("Local hub reused session {} for {}", session.sessionId, key);
+            }
+        } catch (IOException | RuntimeException e) {
+            releaseBrowser(browserName);
+            throw e;
+        }
+        sessions.incrementAndGet();
+        totalQueueTime.addAndGet(queueTime);
+        synchronized (this) {
+            session.uses++;
+            session.leasedAt = System.nanoTime();
+            session.lastCommand = System.currentTimeMillis();
+            activeSessions.put(session.sessionId, session);
+        }
+        return new Reply(200, session.newSessionResponse);
+    }
+
+    /**
+     * Waits until a session may be started for the browser, at most for the
+     * queue timeout.
+     *
+     * @return the time waited in milliseconds or -1 if the queue timeout
+     * expired
+     */
+    private long acquireBrowser(String browserName) throws InterruptedException {
+        Semaphore browserLimit = browserLimits.get(browserName.toLowerCase());
+        // Unlike tryAcquire() a timed tryAcquire does not take a permit ahead of queued requests
+        if (browserLimit == null || browserLimit.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int queued = queuedRequests.incrementAndGet();
+        updateMax(maxQueuedRequests, queued);
+        try {
+            long timeout = queueTimeout;
+            if (timeout > 0) {
+                if (!browserLimit.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    return -1;
+                }
+            } else {
+                browserLimit.acquire();
+            }
+        } finally {
+            queuedRequests.decrementAndGet();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private void releaseBrowser(String browserName) {
+        Semaphore browserLimit = browserLimits.get(browserName.toLowerCase());
+        if (browserLimit != null) {
+            browserLimit.release();
+        }
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getDesiredCapabilities(Map<String, Object> newSessionRequest) {
+        if (newSessionRequest == null) {
+            return Collections.emptyMap();
+        }
+        if (newSessionRequest.get("desiredCapabilities") instanceof Map) {
+            return (Map<String, Object>) newSessionRequest.get("desiredCapabilities");
+        }
+        Map<String, Object> desiredCapabilities = new LinkedHashMap<>();
+        if (newSessionRequest.get("capabilities") instanceof Map) {
+            Map<String, Object> capabilities = (Map<String, Object>) newSessionRequest.get("capabilities");
+            if (capabilities.get("alwaysMatch") instanceof Map) {
+                desiredCapabilities.putAll((Map<String, Object>) capabilities.get("alwaysMatch"));
+            }
+            if (capabilities.get("firstMatch") instanceof List && !((List) capabilities.get("firstMatch")).isEmpty()) {
+                desiredCapabilities.putAll((Map<String, Object>) ((List) capabilities.get("firstMatch")).get(0));
+            }
+        }
+        return desiredCapabilities;
+    }
+
+    /**
+     * Adds the Chrome binary to the Chrome options of a new session request
+     * that does not set a binary, like the runner does when it starts Chrome
+     * itself.
+     *
+     * @return the new session request with the binary
+     */
+    static byte[] addChromeBinary(byte[] body, String chromeBinary) {
+        JsonElement request = new JsonParser().parse(new String(body, StandardCharsets.UTF_8));
+        if (!request.isJsonObject()) {
+            return body;
+        }
+        boolean added = addChromeBinary(request.getAsJsonObject().get("desiredCapabilities"), chromeBinary);
+        JsonElement capabilities = request.getAsJsonObject().get("capabilities");
+        if (capabilities != null && capabilities.isJsonObject()) {
+            added |= addChromeBinary(capabilities.getAsJsonObject().get("alwaysMatch"), chromeBinary);
+        }
+        // Only rewritten when needed since the request is otherwise forwarded as is
+        return added ? request.toString().getBytes(StandardCharsets.UTF_8) : body;
+    }
+
+    private static boolean addChromeBinary(JsonElement capabilities, String chromeBinary) {
+        if (capabilities == null || !capabilities.isJsonObject()) {
+            return false;
+        }
+        String optionsName = capabilities.getAsJsonObject().has("goog:chromeOptions") ? "goog:chromeOptions" : ChromeOptions.CAPABILITY;
+        JsonElement options = capabilities.getAsJsonObject().get(optionsName);
+        if (options == null) {
+            options = new JsonObject();
+            capabilities.getAsJsonObject().add(optionsName, options);
+        }
+        if (!options.isJsonObject() || options.getAsJsonObject().has("binary")) {
+            return false;
+        }
+        options.getAsJsonObject().addProperty("binary", chromeBinary);
+        return true;
+    }
+
+    private HubSession takeIdleSession(Object key) {
+        while (true) {
+            HubSession session;
+            synchronized (this) {
+                Deque<HubSession> keySessions = idleSessions.get(key);
+                session = keySessions != null ? keySessions.pollFirst() : null;
+            }
+            if (session == null) {
+                return null;
+            }
+            try {
+                execute(session, DriverCommand.GET_CURRENT_URL, Collections.<String, Object>emptyMap());
+                return session;
+            } catch (Exception e) {
+                log.debug("Local hub discarding broken idle session {}", session.sessionId, e);
+                quit(session);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HubSession createSession(Object key, String browserName, DriverService service, Reply reply) {
+        if (reply.status != 200) {
+            return null;
+        }
+        Map<String, Object> response = gson.<Map<String, Object>>fromJson(reply.getBodyString(), JSON_OBJECT_TYPE);
+        if (response.containsKey("status")) {
+            // The JSON wire protocol response has a status
+            if (!(response.get("status") instanceof Number) || ((Number) response.get("status")).intValue() != ErrorCodes.SUCCESS) {
+                return null;
+            }
+            return new HubSession(key, browserName, service, (String) response.get("sessionId"), Dialect.OSS, reply.body);
+        }
+        Map<String, Object> value = (Map<String, Object>) response.get("value");
+        return new HubSession(key, browserName, service, (String) value.get("sessionId"), Dialect.W3C, reply.body);
+    }
+
+    /**
+     * Starts the driver service the hub forwards the commands of a new
+     * session to.
+     */
+    protected DriverService startService(String browserName, Map<String, Object> desiredCapabilities) throws IOException {
+        DriverService service;
+        if (BrowserType.CHROME.equalsIgnoreCase(browserName) || BrowserType.GOOGLECHROME.equalsIgnoreCase(browserName)) {
+            service = ChromeDriverService.createDefaultService();
+        } else if (BrowserType.FIREFOX.equalsIgnoreCase(browserName)) {
+            service = GeckoDriverService.createDefaultService();
+        } else if (BrowserType.PHANTOMJS.equalsIgnoreCase(browserName)) {
+            service = PhantomJSDriverService.createDefaultService(new org.openqa.selenium.remote.DesiredCapabilities(desiredCapabilities));
+        } else if (BrowserType.EDGE.equalsIgnoreCase(browserName)) {
+            service = EdgeDriverService.createDefaultService();
+        } else {
+            service = InternetExplorerDriverService.createDefaultService();
+        }
+        service.start();
+        return service;
+    }
+
+    private void releaseSession(HubSession session) {
+        synchronized (this) {
+            if (activeSessions.remove(session.sessionId) == null) {
+                return; // Already quit after the session timeout
+            }
+        }
+        recordSessionTime(session);
+        try {
+            if ((maxUses > 0 && session.uses >= maxUses) || !reset(session)) {
+                quit(session);
+                return;
+            }
+            synchronized (this) {
+                session.idleSince = System.currentTimeMillis();
+                Deque<HubSession> keySessions = idleSessions.get(session.key);
+                if (keySessions == null) {
+                    keySessions = new ArrayDeque<>();
+                    idleSessions.put(session.key, keySessions);
+                }
+                keySessions.addFirst(session);
+            }
+        } finally {
+            // Let the next queued request have the browser, possibly reusing this session
+            releaseBrowser(session.browserName);
+        }
+    }
+
+    private void recordSessionTime(HubSession session) {
+        long sessionTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - session.leasedAt);
+        totalSessionTime.addAndGet(sessionTime);
+        updateMax(maxSessionTime, sessionTime);
+    }
+
+    private boolean reset(HubSession session) {
+        try {
+            Object windowHandles = execute(session, DriverCommand.GET_WINDOW_HANDLES, Collections.<String, Object>emptyMap());
+            if (windowHandles instanceof List && ((List) windowHandles).size() > 1) {
+                Object currentWindowHandle = execute(session, DriverCommand.GET_CURRENT_WINDOW_HANDLE, Collections.<String, Object>emptyMap());
+                for (Object windowHandle : (List) windowHandles) {
+                    if (!windowHandle.equals(currentWindowHandle)) {
+                        execute(session, DriverCommand.SWITCH_TO_WINDOW, createMap("name", windowHandle));
+                        execute(session, DriverCommand.CLOSE, Collections.<String, Object>emptyMap());
+                    }
+                }
+                execute(session, DriverCommand.SWITCH_TO_WINDOW, createMap("name", currentWindowHandle));
+            }
+            execute(session, DriverCommand.DELETE_ALL_COOKIES, Collections.<String, Object>emptyMap());
+            execute(session, DriverCommand.EXECUTE_SCRIPT, createMap("script", SessionReset.CLEAR_STORAGE_SCRIPT, "args", Collections.emptyList()));
+            execute(session, DriverCommand.GET, createMap("url", "about:blank"));
+            execute(session, DriverCommand.SET_TIMEOUT, createMap("type", "implicit", "ms", 0));
+            return true;
+        } catch (Exception e) {
+            log.warn("Local hub failed to reset session {}, quitting it instead of reusing it", session.sessionId, e);
+            return false;
+        }
+    }
+
+    private static Object execute(HubSession session, String commandName, Map<String, ?> parameters) throws IOException {
+        HttpRequest request = session.dialect.getCommandCodec().encode(new Command(new SessionId(session.sessionId), commandName, parameters));
+        Reply reply = send(request.getMethod().name(), new URL(session.service.getUrl() + request.getUri()), request.getContent());
+        HttpResponse httpResponse = new HttpResponse();
+        httpResponse.setStatus(reply.status);
+        httpResponse.setHeader("Content-Type", "application/json; charset=utf-8");
+        httpResponse.setContent(reply.body);
+        Response response = session.dialect.getResponseCodec().decode(httpResponse);
+        if (response.getStatus() != null && response.getStatus() != ErrorCodes.SUCCESS) {
+            throw new WebDriverException("Command " + commandName + " failed: " + response.getValue());
+        }
+        return response.getValue();
+    }
+
+    private void quit(HubSession session) {
+        try {
+            send("DELETE", new URL(session.service.getUrl() + "/session/" + session.sessionId), new byte[0]);
+        } catch (Exception e) {
+            log.debug("Local hub failed to quit session {}", session.sessionId, e);
+        } finally {
+            session.service.stop();
+        }
+    }
+
+    private static Reply send(String method, URL url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        if ("POST".equals(method)) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body != null && body.length > 0 ? body : "{}".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        try {
+            return new Reply(status, in != null ? readAll(in) : new byte[0]);
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, Reply reply) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        if (reply.body.length == 0) {
+            exchange.sendResponseHeaders(reply.status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(reply.status, reply.body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(reply.body);
+        }
+    }
+
+    private static Reply error(int httpStatus, int status, String error, String message) {
+        // Both a JSON wire status and a W3C error so that any client can decode it
+        Map<String, Object> value = createMap("error", error, "message", message);
+        return new Reply(httpStatus, toJson(createMap("status", status, "value", value)));
+    }
+
+    static Map<String, Object> createMap(Object... keysAndValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    static byte[] toJson(Object value) {
+        return gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.runners.model.RunnerScheduler;
+
+/**
+ * Runs the children of a runner on a fixed number of worker threads.
+ *
+ * <p>Every child gets its driver in the thread it runs in so the thread local
+ * driver in WebDriverExtensionsContext is never shared between tests. The
+ * JUnit RunNotifier is thread safe and fires the events of a test in the
+ * thread that runs it, so the started, failure and finished events of each
+ * test are always fired in order.</p>
+ */
+public class ParallelScheduler implements RunnerScheduler {
+
+    private final ExecutorService executor;
+
+    public ParallelScheduler(int threads, final String name) {
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, name + "-" + threadNumber.getAndIncrement());
+            }
+        });
+    }
+
+    @Override
+    public void schedule(Runnable childStatement) {
+        executor.execute(childStatement);
+    }
+
+    @Override
+    public void finished() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
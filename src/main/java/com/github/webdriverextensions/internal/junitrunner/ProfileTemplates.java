@@ -0,0 +1,442 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.BrowserType;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.PROFILE_TEMPLATES_DIRECTORY_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.PROFILE_TEMPLATES_PROPERTY_NAME;
+
+/**
+ * Starts Chrome and Firefox with a copy of a prepared profile instead of
+ * letting every browser create and initialise a new profile.
+ *
+ * <p>The template profiles are generated once per machine, in the directory
+ * set by the {@code webdriverextensions.profiletemplates.directory} property
+ * (defaults to {@code ~/.webdriverextensions/profile-templates}), and are
+ * reused by later test runs. A generated template disables the first run
+ * pages, the default browser check, telemetry, updates and safe browsing. A
+ * profile directory warmed by a real browser can be put in place of a
+ * generated template, e.g. to start with filled caches.</p>
+ *
+ * <p>Every browser gets a clone of the template in the temp directory. The
+ * clone is a reflink copy where the file system supports it, so the files are
+ * shared until the browser writes to them, and a plain copy otherwise. The
+ * template is never hard linked since the browsers update their databases in
+ * place, which would change the template. Clones are deleted in the background
+ * when the driver has been quit and those left when the JVM exits are deleted
+ * by a shutdown hook.</p>
+ *
+ * <p>The templates are enabled by setting the
+ * {@code webdriverextensions.profiletemplates} property to {@code true}.</p>
+ */
+public class ProfileTemplates {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ProfileTemplates.class);
+
+    // Files that tell a browser that another browser is using the profile
+    private static final Set<String> LOCK_FILES = new HashSet<>(Arrays.asList(
+            "lock", ".parentlock", "parent.lock", "SingletonLock", "SingletonCookie", "SingletonSocket"));
+    private static final long DELETE_RETRY_DELAY = 1000; // In milliseconds
+
+    private static ProfileTemplates instance; // Guarded by ProfileTemplates.class
+
+    private final Path directory;
+    private final Map<WebDriver, Path> clones = new IdentityHashMap<>(); // Guarded by clones
+    private final Set<Path> pendingDeletes = Collections.synchronizedSet(new HashSet<Path>());
+    private final ExecutorService cleaner;
+    private final AtomicLong cloneCount = new AtomicLong();
+    private final AtomicLong totalCloneTime = new AtomicLong();
+    private volatile boolean reflinkCopy = true;
+
+    ProfileTemplates(Path directory) {
+        this.directory = directory;
+        this.cleaner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "webdriverextensions-profilecleanup-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.isTrue(PROFILE_TEMPLATES_PROPERTY_NAME);
+    }
+
+    public static boolean supports(String browserName) {
+        return isChrome(browserName) || BrowserType.FIREFOX.equalsIgnoreCase(browserName);
+    }
+
+    public static synchronized ProfileTemplates getInstance() {
+        if (instance == null) {
+            String directory = System.getProperty(PROFILE_TEMPLATES_DIRECTORY_PROPERTY_NAME);
+            instance = new ProfileTemplates(directory != null
+                    ? Paths.get(directory)
+                    : Paths.get(System.getProperty("user.home"), ".webdriverextensions", "profile-templates"));
+            DriverShutdown.register();
+        }
+        return instance;
+    }
+
+    /**
+     * Deletes the remaining profile clones if the templates have been used,
+     * called when the JVM shuts down after the drivers have been quit.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * @return the template profile directory of the browser, the template is
+     * generated if it does not exist
+     */
+    public Path getTemplate(String browserName) {
+        Path template = directory.resolve(isChrome(browserName) ? "chrome" : "firefox");
+        if (Files.isDirectory(template)) {
+            return template;
+        }
+        try {
+            Files.createDirectories(directory);
+            // Lock so that JVMs starting at the same time do not generate the template at once
+            try (FileChannel channel = new RandomAccessFile(directory.resolve(template.getFileName() + ".lock").toFile(), "rw").getChannel()) {
+                FileLock lock = channel.lock();
+                try {
+                    if (!Files.isDirectory(template)) {
+                        Path generated = Files.createTempDirectory(directory, template.getFileName() + ".");
+                        if (isChrome(browserName)) {
+                            writeChromeTemplate(generated);
+                        } else {
+                            writeFirefoxTemplate(generated);
+                        }
+                        Files.move(generated, template, StandardCopyOption.ATOMIC_MOVE);
+                        log.info("Generated {} profile template in {}", browserName, template);
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+            return template;
+        } catch (IOException e) {
+            throw new WebDriverExtensionException("Failed to generate " + browserName + " profile template in " + directory, e);
+        }
+    }
+
+    /**
+     * Clones the template profile of the browser into a new temp directory.
+     * The clone is deleted when the driver it is registered to is quit.
+     *
+     * @return the directory of the cloned profile
+     */
+    public Path createClone(String browserName) {
+        Path template = getTemplate(browserName);
+        long start = System.nanoTime();
+        Path clone;
+        try {
+            clone = Files.createTempDirectory("webdriverextensions-" + template.getFileName() + "-profile");
+        } catch (IOException e) {
+            throw new WebDriverExtensionException("Failed to create " + browserName + " profile directory", e);
+        }
+        try {
+            if (!reflinkCopy || !copyWithReflinks(template, clone)) {
+                copy(template, clone);
+            }
+            deleteLockFiles(clone);
+        } catch (IOException | RuntimeException e) {
+            deleteLater(clone);
+            throw new WebDriverExtensionException("Failed to clone " + browserName + " profile template " + template, e);
+        }
+        cloneCount.incrementAndGet();
+        totalCloneTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return clone;
+    }
+
+    /**
+     * @return the capabilities that start the browser with the profile in the
+     * directory
+     */
+    public static Map<String, Object> getCapabilities(String browserName, Path profile) {
+        Map<String, Object> options = new LinkedHashMap<>();
+        List<Object> args = new ArrayList<>();
+        Map<String, Object> capabilities = new LinkedHashMap<>();
+        if (isChrome(browserName)) {
+            args.add("--user-data-dir=" + profile.toAbsolutePath());
+            options.put("args", args);
+            capabilities.put("chromeOptions", options);
+        } else {
+            Collections.<Object>addAll(args, "-profile", profile.toAbsolutePath().toString());
+            options.put("args", args);
+            capabilities.put("moz:firefoxOptions", options);
+        }
+        return capabilities;
+    }
+
+    public void register(WebDriver driver, Path clone) {
+        synchronized (clones) {
+            clones.put(driver, clone);
+        }
+    }
+
+    /**
+     * Deletes the profile clone of the driver in the background, if it has
+     * one. Should be called when the driver has been quit.
+     */
+    public static void released(WebDriver driver) {
+        ProfileTemplates profileTemplates;
+        synchronized (ProfileTemplates.class) {
+            profileTemplates = instance;
+        }
+        if (profileTemplates != null) {
+            Path clone;
+            synchronized (profileTemplates.clones) {
+                clone = profileTemplates.clones.remove(driver);
+            }
+            if (clone != null) {
+                profileTemplates.deleteLater(clone);
+            }
+        }
+    }
+
+    /**
+     * Deletes the profile clone in the background, e.g. when the browser
+     * failed to start. The clone is deleted at once if the templates have
+     * been shut down.
+     */
+    public void deleteLater(final Path clone) {
+        pendingDeletes.add(clone);
+        try {
+            cleaner.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deleteWithRetry(clone);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            deleteWithRetry(clone);
+        }
+    }
+
+    private void deleteWithRetry(Path clone) {
+        try {
+            delete(clone);
+        } catch (IOException e) {
+            // The browser may still be writing to the profile when it exits
+            try {
+                Thread.sleep(DELETE_RETRY_DELAY);
+                delete(clone);
+            } catch (IOException retryException) {
+                log.warn("Failed to delete profile " + clone, retryException);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            pendingDeletes.remove(clone);
+        }
+    }
+
+    void shutdown() {
+        cleaner.shutdown();
+        try {
+            cleaner.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Path> remaining = new ArrayList<>();
+        synchronized (clones) {
+            remaining.addAll(clones.values());
+            clones.clear();
+        }
+        synchronized (pendingDeletes) {
+            remaining.addAll(pendingDeletes);
+        }
+        for (Path clone : remaining) {
+            try {
+                delete(clone);
+            } catch (IOException e) {
+                log.warn("Failed to delete profile {}", clone, e);
+            }
+        }
+        if (cloneCount.get() > 0) {
+            log.info("Cloned {} browser profiles (average time = {} ms)", cloneCount.get(), getAverageCloneTime());
+        }
+    }
+
+    public long getClones() {
+        return cloneCount.get();
+    }
+
+    public long getAverageCloneTime() {
+        long count = cloneCount.get();
+        return count > 0 ? totalCloneTime.get() / count : 0;
+    }
+
+    private boolean copyWithReflinks(Path template, Path clone) {
+        String os = System.getProperty("os.name").toLowerCase();
+        List<String> command = new ArrayList<>();
+        if (os.contains("linux")) {
+            Collections.addAll(command, "cp", "-R", "--reflink=auto");
+        } else if (os.contains("mac")) {
+            // Clones the files on APFS and copies them on other file systems
+            Collections.addAll(command, "cp", "-cR");
+        } else {
+            reflinkCopy = false;
+            return false;
+        }
+        command.add(template.toAbsolutePath() + "/.");
+        command.add(clone.toAbsolutePath().toString());
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(new File("/dev/null"))
+                    .start();
+            if (process.waitFor() == 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            log.debug("Failed to copy profile with cp", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverExtensionException("Interrupted while cloning profile " + template, e);
+        }
+        log.info("Failed to copy profile with reflinks, copying profiles file by file instead");
+        reflinkCopy = false;
+        emptyDirectory(clone);
+        return false;
+    }
+
+    static void copy(final Path source, final Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(directory).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (!LOCK_FILES.contains(file.getFileName().toString())) {
+                    Files.copy(file, target.resolve(source.relativize(file).toString()),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.deleteIfExists(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void emptyDirectory(Path directory) {
+        // A failed copy may have copied some of the files
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (Path child : children) {
+                delete(child);
+            }
+        } catch (IOException e) {
+            throw new WebDriverExtensionException("Failed to empty profile directory " + directory, e);
+        }
+    }
+
+    private static void deleteLockFiles(Path profile) throws IOException {
+        for (String lockFile : LOCK_FILES) {
+            Files.deleteIfExists(profile.resolve(lockFile));
+            Files.deleteIfExists(profile.resolve("Default").resolve(lockFile));
+        }
+    }
+
+    private static void writeChromeTemplate(Path profile) throws IOException {
+        Files.write(profile.resolve("First Run"), new byte[0]);
+        Files.write(profile.resolve("Local State"),
+                "{\"browser\":{\"enabled_labs_experiments\":[]},\"user_experience_metrics\":{\"reporting_enabled\":false}}"
+                        .getBytes(StandardCharsets.UTF_8));
+        Path defaultProfile = Files.createDirectories(profile.resolve("Default"));
+        Files.write(defaultProfile.resolve("Preferences"), ("{"
+                + "\"browser\":{\"check_default_browser\":false,\"has_seen_welcome_page\":true},"
+                + "\"distribution\":{\"skip_first_run_ui\":true,\"suppress_first_run_default_browser_prompt\":true},"
+                + "\"safebrowsing\":{\"enabled\":false},"
+                + "\"signin\":{\"allowed\":false}"
+                + "}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeFirefoxTemplate(Path profile) throws IOException {
+        List<String> prefs = Arrays.asList(
+                "user_pref(\"app.update.auto\", false);",
+                "user_pref(\"app.update.enabled\", false);",
+                "user_pref(\"browser.aboutwelcome.enabled\", false);",
+                "user_pref(\"browser.newtabpage.enabled\", false);",
+                "user_pref(\"browser.safebrowsing.downloads.remote.enabled\", false);",
+                "user_pref(\"browser.safebrowsing.malware.enabled\", false);",
+                "user_pref(\"browser.safebrowsing.phishing.enabled\", false);",
+                "user_pref(\"browser.shell.checkDefaultBrowser\", false);",
+                "user_pref(\"browser.startup.homepage_override.mstone\", \"ignore\");",
+                "user_pref(\"browser.startup.page\", 0);",
+                "user_pref(\"datareporting.healthreport.uploadEnabled\", false);",
+                "user_pref(\"datareporting.policy.dataSubmissionEnabled\", false);",
+                "user_pref(\"extensions.update.enabled\", false);",
+                "user_pref(\"network.captive-portal-service.enabled\", false);",
+                "user_pref(\"startup.homepage_welcome_url\", \"about:blank\");",
+                "user_pref(\"startup.homepage_welcome_url.additional\", \"\");",
+                "user_pref(\"toolkit.telemetry.enabled\", false);",
+                "user_pref(\"toolkit.telemetry.reportingpolicy.firstRun\", false);");
+        Files.write(profile.resolve("user.js"), prefs, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isChrome(String browserName) {
+        return BrowserType.CHROME.equalsIgnoreCase(browserName) || BrowserType.GOOGLECHROME.equalsIgnoreCase(browserName);
+    }
+}
@@ -0,0 +1,430 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.utils.StringUtils;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openqa.selenium.WebDriver;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.REMOTE_ADDRESS_SELECTION_PROPERTY_NAME;
+
+/**
+ * The endpoints of a remote address, e.g. several Selenium Grids given as a
+ * comma separated list of URLs, and which of them new drivers are created at.
+ *
+ * <p>The endpoints are tried in the order given by the selection set with the
+ * {@code webdriverextensions.remoteaddress.selection} property:</p>
+ * <ul>
+ * <li>{@code roundrobin} (default) takes turns between the endpoints</li>
+ * <li>{@code leastsessions} prefers the endpoint with the fewest sessions
+ * created by this JVM that have not been quit</li>
+ * <li>{@code latencyweighted} picks an endpoint at random, weighted by how
+ * fast it has created drivers</li>
+ * </ul>
+ *
+ * <p>When there is more than one endpoint their status endpoints are checked
+ * at most every ten seconds and endpoints that are down, or recently failed to
+ * create a driver, are tried last. The number of sessions, failures and the
+ * driver creation time of each endpoint are logged when the JVM shuts
+ * down.</p>
+ */
+public class RemoteEndpoints {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(RemoteEndpoints.class);
+
+    private static final long HEALTH_CHECK_INTERVAL = 10000; // In milliseconds
+    private static final int HEALTH_CHECK_TIMEOUT = 2000; // In milliseconds
+
+    private static final Map<String, RemoteEndpoints> instances = new HashMap<>(); // Guarded by RemoteEndpoints.class
+    private static boolean shutdownHookAdded = false; // Guarded by RemoteEndpoints.class
+
+    public enum Selection {
+        ROUND_ROBIN,
+        LEAST_SESSIONS,
+        LATENCY_WEIGHTED;
+
+        static Selection fromString(String selection) {
+            if (StringUtils.isBlank(selection)) {
+                return ROUND_ROBIN;
+            }
+            String normalized = selection.replaceAll("[-_\\s]", "").toLowerCase();
+            for (Selection value : values()) {
+                if (value.name().replace("_", "").toLowerCase().equals(normalized)) {
+                    return value;
+                }
+            }
+            log.warn("Ignoring unknown remote address selection {} in property " + REMOTE_ADDRESS_SELECTION_PROPERTY_NAME
+                    + ", expected roundrobin, leastsessions or latencyweighted", StringUtils.quote(selection));
+            return ROUND_ROBIN;
+        }
+    }
+
+    public static class Endpoint {
+
+        private final URL url;
+        private final AtomicInteger outstandingSessions = new AtomicInteger();
+        private final AtomicLong sessions = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalCreationTime = new AtomicLong();
+        private volatile boolean healthy = true;
+        private volatile long lastHealthCheck = 0;
+
+        Endpoint(URL url) {
+            this.url = url;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        /**
+         * @return the number of drivers created at the endpoint that have not
+         * been quit
+         */
+        public int getOutstandingSessions() {
+            return outstandingSessions.get();
+        }
+
+        public long getSessions() {
+            return sessions.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * @return the average time it took to create a driver in milliseconds
+         * or -1 if no driver has been created
+         */
+        public long getAverageCreationTime() {
+            long sessionCount = sessions.get();
+            return sessionCount > 0 ? totalCreationTime.get() / sessionCount : -1;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        @Override
+        public String toString() {
+            return url.toString();
+        }
+    }
+
+    private final List<Endpoint> endpoints;
+    private final Selection selection;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final Map<WebDriver, Endpoint> leasedDrivers = new IdentityHashMap<>(); // Guarded by this
+
+    public RemoteEndpoints(List<URL> urls, Selection selection) {
+        List<Endpoint> endpointList = new ArrayList<>();
+        for (URL url : urls) {
+            endpointList.add(new Endpoint(url));
+        }
+        this.endpoints = Collections.unmodifiableList(endpointList);
+        this.selection = selection;
+    }
+
+    /**
+     * @param addresses a comma separated list of URLs
+     * @return the endpoints of the addresses, shared by all runners using the
+     * same addresses
+     */
+    public static synchronized RemoteEndpoints forAddresses(String addresses) throws MalformedURLException {
+        RemoteEndpoints remoteEndpoints = instances.get(addresses);
+        if (remoteEndpoints == null) {
+            remoteEndpoints = new RemoteEndpoints(parseAddresses(addresses),
+                    Selection.fromString(System.getProperty(REMOTE_ADDRESS_SELECTION_PROPERTY_NAME)));
+            instances.put(addresses, remoteEndpoints);
+            addShutdownHook();
+        }
+        return remoteEndpoints;
+    }
+
+    static List<URL> parseAddresses(String addresses) throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (String address : addresses.split(",")) {
+            if (!StringUtils.isBlank(address)) {
+                urls.add(new URL(address.trim()));
+            }
+        }
+        if (urls.isEmpty()) {
+            // Keep the error of an empty address the same as before multiple addresses were supported
+            urls.add(new URL(addresses));
+        }
+        return urls;
+    }
+
+    private static void addShutdownHook() {
+        if (shutdownHookAdded) {
+            return;
+        }
+        shutdownHookAdded = true;
+        Runtime.getRuntime().addShutdownHook(new Thread("webdriverextensions-remoteendpoints-shutdown") {
+            @Override
+            public void run() {
+                synchronized (RemoteEndpoints.class) {
+                    for (RemoteEndpoints remoteEndpoints : instances.values()) {
+                        if (remoteEndpoints.endpoints.size() > 1) {
+                            remoteEndpoints.logMetrics();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return the endpoint a new driver should be created at first
+     */
+    public Endpoint select() {
+        return getCandidates().get(0);
+    }
+
+    /**
+     * @return all endpoints in the order new drivers should be tried to be
+     * created at them, healthy endpoints first
+     */
+    public List<Endpoint> getCandidates() {
+        if (endpoints.size() == 1) {
+            return endpoints;
+        }
+        List<Endpoint> healthy = new ArrayList<>();
+        List<Endpoint> unhealthy = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (checkHealth(endpoint)) {
+                healthy.add(endpoint);
+            } else {
+                unhealthy.add(endpoint);
+            }
+        }
+        List<Endpoint> candidates = order(healthy);
+        // Unhealthy endpoints are still tried as a last resort
+        candidates.addAll(unhealthy);
+        return candidates;
+    }
+
+    /**
+     * @return the endpoints in the order a driver for the browser should be
+     * taken or created at them, the endpoint with an idle pooled or
+     * pre-warmed driver for the browser first since taking it creates no new
+     * session
+     */
+    public List<Endpoint> getCandidates(Object browser) {
+        Endpoint readyEndpoint = getReadyEndpoint(browser);
+        List<Endpoint> candidates = new ArrayList<>();
+        if (readyEndpoint != null) {
+            candidates.add(readyEndpoint);
+        }
+        for (Endpoint endpoint : getCandidates()) {
+            if (endpoint != readyEndpoint) {
+                candidates.add(endpoint);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Finds an endpoint with an idle pooled or pre-warmed driver for the
+     * browser without taking a turn of the selection.
+     *
+     * @return the endpoint or null if there is none
+     */
+    public Endpoint getReadyEndpoint(Object browser) {
+        for (Endpoint endpoint : endpoints) {
+            if (DriverPrewarmer.isReady(Arrays.asList(browser, endpoint.getUrl()))) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a factory creating drivers at the endpoint with the factory,
+     * recording each session created and how long it took to create it
+     */
+    public DriverPool.DriverFactory recording(final Endpoint endpoint, final DriverPool.DriverFactory factory) {
+        return new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() throws Exception {
+                long start = System.nanoTime();
+                WebDriver driver;
+                try {
+                    driver = factory.create();
+                } catch (Exception e) {
+                    failed(endpoint);
+                    throw e;
+                }
+                leased(endpoint, driver, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return driver;
+            }
+        };
+    }
+
+    private List<Endpoint> order(List<Endpoint> candidates) {
+        List<Endpoint> ordered = new ArrayList<>(candidates);
+        if (ordered.isEmpty()) {
+            return ordered;
+        }
+        Collections.rotate(ordered, -Math.floorMod(nextIndex.getAndIncrement(), ordered.size()));
+        switch (selection) {
+            case LEAST_SESSIONS:
+                // Stable sort so that endpoints with equally many sessions take turns
+                Collections.sort(ordered, new Comparator<Endpoint>() {
+                    @Override
+                    public int compare(Endpoint endpoint1, Endpoint endpoint2) {
+                        return Integer.compare(endpoint1.getOutstandingSessions(), endpoint2.getOutstandingSessions());
+                    }
+                });
+                break;
+            case LATENCY_WEIGHTED:
+                Endpoint picked = pickByLatency(ordered);
+                ordered.remove(picked);
+                ordered.add(0, picked);
+                break;
+            default:
+                break;
+        }
+        return ordered;
+    }
+
+    private static Endpoint pickByLatency(List<Endpoint> candidates) {
+        // Endpoints without any created driver are weighted as the fastest one so that they get tried
+        long fastest = Long.MAX_VALUE;
+        for (Endpoint endpoint : candidates) {
+            long creationTime = endpoint.getAverageCreationTime();
+            if (creationTime >= 0) {
+                fastest = Math.min(fastest, creationTime);
+            }
+        }
+        double[] weights = new double[candidates.size()];
+        double totalWeight = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            long creationTime = candidates.get(i).getAverageCreationTime();
+            if (creationTime < 0) {
+                creationTime = fastest != Long.MAX_VALUE ? fastest : 0;
+            }
+            weights[i] = 1.0 / (creationTime + 1);
+            totalWeight += weights[i];
+        }
+        double random = ThreadLocalRandom.current().nextDouble(totalWeight);
+        for (int i = 0; i < candidates.size(); i++) {
+            random -= weights[i];
+            if (random < 0) {
+                return candidates.get(i);
+            }
+        }
+        return candidates.get(candidates.size() - 1);
+    }
+
+    private static boolean checkHealth(Endpoint endpoint) {
+        long now = System.currentTimeMillis();
+        if (now - endpoint.lastHealthCheck < HEALTH_CHECK_INTERVAL) {
+            return endpoint.healthy;
+        }
+        endpoint.lastHealthCheck = now;
+        boolean healthy = isUp(endpoint.url);
+        if (healthy != endpoint.healthy) {
+            log.info("Remote address {} is {}", endpoint, healthy ? "up" : "down");
+        }
+        endpoint.healthy = healthy;
+        return healthy;
+    }
+
+    private static boolean isUp(URL url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url.toString().replaceAll("/$", "") + "/status").openConnection();
+            connection.setConnectTimeout(HEALTH_CHECK_TIMEOUT);
+            connection.setReadTimeout(HEALTH_CHECK_TIMEOUT);
+            try {
+                return connection.getResponseCode() == 200;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records that a new session was created at the endpoint. It counts as
+     * an outstanding session of the endpoint, also while it is idle in the
+     * driver pool or pre-warmed, until {@link #released(WebDriver)} is called
+     * when the driver is quit.
+     *
+     * @param creationTime the time it took to create the driver in
+     * milliseconds
+     */
+    public void leased(Endpoint endpoint, WebDriver driver, long creationTime) {
+        endpoint.sessions.incrementAndGet();
+        endpoint.totalCreationTime.addAndGet(creationTime);
+        endpoint.outstandingSessions.incrementAndGet();
+        synchronized (this) {
+            leasedDrivers.put(driver, endpoint);
+        }
+    }
+
+    /**
+     * Records that creating a driver at the endpoint failed, the endpoint is
+     * then tried last until its next health check.
+     */
+    public void failed(Endpoint endpoint) {
+        endpoint.failures.incrementAndGet();
+        if (endpoints.size() > 1) {
+            endpoint.healthy = false;
+            endpoint.lastHealthCheck = System.currentTimeMillis();
+        }
+    }
+
+    public void released(WebDriver driver) {
+        Endpoint endpoint;
+        synchronized (this) {
+            endpoint = leasedDrivers.remove(driver);
+        }
+        if (endpoint != null) {
+            endpoint.outstandingSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases the driver from the endpoints of all remote addresses it was
+     * created at, called when the driver is quit.
+     */
+    static void releasedEverywhere(WebDriver driver) {
+        List<RemoteEndpoints> remoteEndpoints;
+        synchronized (RemoteEndpoints.class) {
+            if (instances.isEmpty()) {
+                return;
+            }
+            remoteEndpoints = new ArrayList<>(instances.values());
+        }
+        for (RemoteEndpoints endpoints : remoteEndpoints) {
+            endpoints.released(driver);
+        }
+    }
+
+    private void logMetrics() {
+        for (Endpoint endpoint : endpoints) {
+            log.info("Remote address {} created {} drivers (failures = {}, average creation time = {} ms)",
+                    endpoint, endpoint.getSessions(), endpoint.getFailures(), Math.max(endpoint.getAverageCreationTime(), 0));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.WebDriver;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.KEEP_ALIVE_INTERVAL_PROPERTY_NAME;
+
+/**
+ * Keeps drivers that are waiting to be used alive by periodically sending a
+ * lightweight command to them, so that e.g. a Selenium Grid does not time out
+ * sessions that are pooled or pre-warmed.
+ *
+ * <p>The interval is configured in seconds with the
+ * {@code webdriverextensions.keepaliveinterval} property (default 30). Set it
+ * to 0 to disable the pings.</p>
+ */
+public class SessionKeepAlive {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SessionKeepAlive.class);
+
+    public static final long DEFAULT_KEEP_ALIVE_INTERVAL = 30; // In seconds
+
+    private static final Map<WebDriver, Object> drivers = new IdentityHashMap<>(); // Guarded by drivers
+    private static ScheduledExecutorService scheduler; // Guarded by drivers
+
+    private SessionKeepAlive() {}
+
+    public static void register(WebDriver driver) {
+        long interval = PropertyUtils.getLong(KEEP_ALIVE_INTERVAL_PROPERTY_NAME, DEFAULT_KEEP_ALIVE_INTERVAL);
+        if (interval <= 0) {
+            return;
+        }
+        synchronized (drivers) {
+            drivers.put(driver, new Object());
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "webdriverextensions-keepalive");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                scheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        pingAll();
+                    }
+                }, interval, interval, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Stops pinging the driver. Waits for a ping in progress to finish so that
+     * the driver is never used by the caller and the pinger at the same time.
+     */
+    public static void unregister(WebDriver driver) {
+        Object lock;
+        synchronized (drivers) {
+            lock = drivers.remove(driver);
+        }
+        if (lock != null) {
+            synchronized (lock) {
+                // Wait for ping in progress
+            }
+        }
+    }
+
+    private static void pingAll() {
+        List<Map.Entry<WebDriver, Object>> entries;
+        synchronized (drivers) {
+            entries = new ArrayList<>(drivers.entrySet());
+        }
+        for (Map.Entry<WebDriver, Object> entry : entries) {
+            synchronized (entry.getValue()) {
+                synchronized (drivers) {
+                    if (drivers.get(entry.getKey()) != entry.getValue()) {
+                        continue; // Unregistered since the snapshot was taken
+                    }
+                }
+                try {
+                    entry.getKey().getWindowHandle();
+                } catch (Exception e) {
+                    log.debug("Keep alive ping failed", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Resets a driver session so that it can be reused by another test without
+ * restarting the browser.
+ *
+ * <p>The reset deletes the cookies, clears the local storage, the session
+ * storage and the IndexedDB databases, closes all windows but the current one,
+ * navigates to about:blank and resets the implicitly wait. For a session with
+ * a single window this costs four round trips to the driver (three if the
+ * implicitly wait is untouched). Note that cookies and storage can only be
+ * cleared for the origin of the pages open when the reset is made, and that
+ * IndexedDB databases are deleted asynchronously by the browser.</p>
+ */
+public class SessionReset {
+
+    static final String CLEAR_STORAGE_SCRIPT
+            = "try { window.localStorage.clear(); } catch (e) {}"
+            + "try { window.sessionStorage.clear(); } catch (e) {}"
+            + "try {"
+            + "  if (window.indexedDB && window.indexedDB.databases) {"
+            + "    window.indexedDB.databases().then(function (databases) {"
+            + "      for (var i = 0; i < databases.length; i++) {"
+            + "        window.indexedDB.deleteDatabase(databases[i].name);"
+            + "      }"
+            + "    });"
+            + "  }"
+            + "} catch (e) {}";
+
+    private SessionReset() {}
+
+    /**
+     * Resets the session of the driver.
+     *
+     * @param driver the driver to reset
+     * @param resetImplicitlyWait true if the implicitly wait should be reset
+     * to zero, e.g. when it has been changed by the &#064;ImplicitlyWait
+     * annotation
+     * @return the time the reset took in milliseconds
+     * @throws org.openqa.selenium.WebDriverException if the reset fails, in
+     * which case the driver should not be reused
+     */
+    public static long reset(WebDriver driver, boolean resetImplicitlyWait) {
+        long start = System.nanoTime();
+
+        Set<String> windowHandles = driver.getWindowHandles();
+        if (windowHandles.size() > 1) {
+            String windowHandleToKeep = getWindowHandleToKeep(driver, windowHandles);
+            // Clear each window before closing it since cookies and storage are per origin
+            for (String windowHandle : windowHandles) {
+                if (!windowHandle.equals(windowHandleToKeep)) {
+                    driver.switchTo().window(windowHandle);
+                    clearCookiesAndStorage(driver);
+                    driver.close();
+                }
+            }
+            driver.switchTo().window(windowHandleToKeep);
+        }
+        clearCookiesAndStorage(driver);
+        driver.get("about:blank");
+
+        if (resetImplicitlyWait) {
+            driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
+        }
+
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static String getWindowHandleToKeep(WebDriver driver, Set<String> windowHandles) {
+        try {
+            return driver.getWindowHandle();
+        } catch (NoSuchWindowException e) {
+            // The current window has been closed so keep any of the others
+            return windowHandles.iterator().next();
+        }
+    }
+
+    private static void clearCookiesAndStorage(WebDriver driver) {
+        driver.manage().deleteAllCookies();
+        ((JavascriptExecutor) driver).executeScript(CLEAR_STORAGE_SCRIPT);
+    }
+}
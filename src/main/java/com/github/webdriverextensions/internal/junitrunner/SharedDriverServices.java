@@ -0,0 +1,131 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.remote.service.DriverService;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.SHARED_DRIVER_SERVICES_PROPERTY_NAME;
+
+/**
+ * Keeps one chromedriver process per driver binary running for the whole JVM
+ * and lets all Chrome sessions use it, instead of starting a new chromedriver
+ * process for every driver.
+ *
+ * <p>A shared service is not stopped when a driver using it is quit. If the
+ * process has died it is restarted the next time a driver is created, and all
+ * shared services are stopped when the JVM shuts down, after the pooled,
+ * pre-warmed and asynchronously quit drivers have been quit.</p>
+ *
+ * <p>Shared driver services are enabled by setting the
+ * {@code webdriverextensions.shareddriverservices} property to {@code true}.</p>
+ */
+public class SharedDriverServices {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SharedDriverServices.class);
+
+    // By the webdriver.chrome.driver property the service was started for, written while holding SharedDriverServices.class
+    private static final ConcurrentMap<String, SharedChromeDriverService> chromeDriverServices = new ConcurrentHashMap<>();
+
+    private SharedDriverServices() {}
+
+    private static class SharedChromeDriverService extends ChromeDriverService {
+
+        private final File executable;
+
+        private SharedChromeDriverService(File executable, int port, ImmutableList<String> args, ImmutableMap<String, String> environment) throws IOException {
+            super(executable, port, args, environment);
+            this.executable = executable;
+        }
+
+        @Override
+        public void stop() {
+            // Called when a driver using the service is quit, the service is stopped at shutdown instead
+        }
+
+        private void stopService() {
+            super.stop();
+        }
+    }
+
+    private static class SharedChromeDriverServiceBuilder extends ChromeDriverService.Builder {
+
+        @Override
+        protected ChromeDriverService createDriverService(File executable, int port, ImmutableList<String> args, ImmutableMap<String, String> environment) {
+            try {
+                return new SharedChromeDriverService(executable, port, args, environment);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.isTrue(SHARED_DRIVER_SERVICES_PROPERTY_NAME);
+    }
+
+    /**
+     * @return a running chromedriver service for the chromedriver binary
+     * currently set by the webdriver.chrome.driver property
+     */
+    public static ChromeDriverService getChromeDriverService() throws IOException {
+        String key = String.valueOf(System.getProperty(ChromeDriverService.CHROME_DRIVER_EXE_PROPERTY));
+        // Only starting a service needs the lock, getting a running service is done by every Chrome test
+        SharedChromeDriverService runningService = chromeDriverServices.get(key);
+        if (runningService != null && runningService.isRunning()) {
+            return runningService;
+        }
+        return startChromeDriverService(key);
+    }
+
+    private static synchronized ChromeDriverService startChromeDriverService(String key) throws IOException {
+        SharedChromeDriverService runningService = chromeDriverServices.get(key);
+        if (runningService != null && runningService.isRunning()) {
+            return runningService;
+        }
+        if (runningService != null) {
+            log.warn("Restarting {} since it is no longer running", runningService.executable);
+            runningService.stopService();
+        }
+        SharedChromeDriverService service = (SharedChromeDriverService) new SharedChromeDriverServiceBuilder().usingAnyFreePort().build();
+        service.start();
+        chromeDriverServices.put(key, service);
+        log.info("Started shared driver service {} at {}", service.executable, service.getUrl());
+        DriverShutdown.register();
+        return service;
+    }
+
+    /**
+     * @return true if the service is shared by all Chrome sessions, so that
+     * stopping it would kill the drivers of other tests too
+     */
+    public static boolean isShared(DriverService service) {
+        return service instanceof SharedChromeDriverService;
+    }
+
+    /**
+     * Stops all shared services, called when the JVM shuts down after the
+     * drivers using them have been quit.
+     */
+    public static void stopAll() {
+        List<SharedChromeDriverService> services;
+        synchronized (SharedDriverServices.class) {
+            services = new ArrayList<>(chromeDriverServices.values());
+            chromeDriverServices.clear();
+        }
+        for (SharedChromeDriverService service : services) {
+            try {
+                service.stopService();
+            } catch (Exception e) {
+                log.warn("Failed to stop driver service {}", service.executable, e);
+            }
+        }
+    }
+}
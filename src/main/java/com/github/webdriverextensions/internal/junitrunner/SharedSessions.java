@@ -0,0 +1,288 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.apache.commons.lang3.ClassUtils;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Lets several tests running at the same time share one driver, each test in
+ * a window of its own.
+ *
+ * <p>The tests get a proxy of the shared driver that runs each command after
+ * switching the driver to the window of the test, holding a lock per driver so
+ * that commands of different tests do not interleave. Elements and other
+ * objects returned by the driver are proxied the same way. Quitting or closing
+ * the proxy does nothing, instead the window is released for the next test
+ * when the test is finished. The driver itself is returned when the last test
+ * using it is finished.</p>
+ */
+public class SharedSessions {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SharedSessions.class);
+
+    private static final Map<Object, List<SharedSessions>> sessions = new HashMap<>(); // Guarded by SharedSessions.class
+
+    private final Object key;
+    private final CountDownLatch created = new CountDownLatch(1);
+    private volatile WebDriver driver;
+    private volatile Exception creationFailure;
+    private int tabs; // Guarded by SharedSessions.class
+    private final Object commandLock = new Object();
+    private final Deque<String> freeWindowHandles = new ArrayDeque<>(); // Guarded by commandLock
+    private String currentWindowHandle; // Guarded by commandLock, null if unknown
+
+    private SharedSessions(Object key) {
+        this.key = key;
+    }
+
+    private static class WindowInvocationHandler implements InvocationHandler {
+
+        private final SharedSessions session;
+        private final String windowHandle;
+        private final Object target;
+
+        private WindowInvocationHandler(SharedSessions session, String windowHandle, Object target) {
+            this.session = session;
+            this.windowHandle = windowHandle;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return target.equals(unwrap(args[0]));
+                }
+                return method.invoke(target, args);
+            }
+            if (target instanceof WebDriver && ("quit".equals(method.getName()) || "close".equals(method.getName()))
+                    && method.getParameterTypes().length == 0) {
+                // The window and driver are released by the runner when the test is finished
+                return null;
+            }
+            Object result;
+            synchronized (session.commandLock) {
+                session.switchTo(windowHandle);
+                try {
+                    result = method.invoke(target, unwrapAll(args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                } finally {
+                    if (method.getDeclaringClass() == WebDriver.TargetLocator.class) {
+                        // The test switched window or frame so the current window is no longer known
+                        session.currentWindowHandle = null;
+                    }
+                }
+            }
+            return wrap(result, method.getReturnType());
+        }
+
+        private Object wrap(Object result, Class<?> returnType) {
+            if (result == null) {
+                return null;
+            }
+            if (result instanceof List) {
+                List<Object> wrapped = new ArrayList<>();
+                for (Object element : (List<?>) result) {
+                    wrapped.add(element instanceof WebElement ? session.createProxy(windowHandle, element) : element);
+                }
+                return wrapped;
+            }
+            if (result instanceof WebElement || (returnType.isInterface() && returnType.getName().startsWith("org.openqa.selenium."))) {
+                return session.createProxy(windowHandle, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Leases a window in a shared driver, creating a new driver if all shared
+     * drivers for the key already have the max number of tabs.
+     *
+     * @return a proxy of the shared driver that runs all commands in the
+     * leased window
+     */
+    public static WebDriver lease(Object key, int maxTabs, DriverPool.DriverFactory driverFactory) throws Exception {
+        SharedSessions session = null;
+        boolean create = false;
+        synchronized (SharedSessions.class) {
+            List<SharedSessions> keySessions = sessions.get(key);
+            if (keySessions == null) {
+                keySessions = new ArrayList<>();
+                sessions.put(key, keySessions);
+            }
+            for (SharedSessions keySession : keySessions) {
+                if (keySession.tabs < maxTabs) {
+                    session = keySession;
+                    break;
+                }
+            }
+            if (session == null) {
+                // Added before the driver is created so that tests starting at the same time share it
+                session = new SharedSessions(key);
+                keySessions.add(session);
+                create = true;
+            }
+            session.tabs++;
+        }
+        if (create) {
+            session.create(driverFactory);
+        }
+        try {
+            session.created.await();
+            if (session.creationFailure != null) {
+                throw session.creationFailure;
+            }
+            return (WebDriver) session.createProxy(session.openWindow(), session.driver);
+        } catch (Exception e) {
+            session.releaseTab();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the window of a driver returned by
+     * {@link #lease(Object, int, DriverPool.DriverFactory)}.
+     *
+     * @return the shared driver if this was the last test using it, it should
+     * then be quit or returned to the driver pool, else null
+     */
+    public static WebDriver release(WebDriver sharedDriver) {
+        WindowInvocationHandler handler = (WindowInvocationHandler) Proxy.getInvocationHandler(sharedDriver);
+        SharedSessions session = handler.session;
+        session.closeWindow(handler.windowHandle);
+        return session.releaseTab() ? session.driver : null;
+    }
+
+    public static boolean isShared(WebDriver driver) {
+        return driver != null && Proxy.isProxyClass(driver.getClass())
+                && Proxy.getInvocationHandler(driver) instanceof WindowInvocationHandler;
+    }
+
+    private void create(DriverPool.DriverFactory driverFactory) {
+        try {
+            WebDriver createdDriver = driverFactory.create();
+            try {
+                // Windows can only be opened from a loaded page
+                createdDriver.get("about:blank");
+                synchronized (commandLock) {
+                    currentWindowHandle = createdDriver.getWindowHandle();
+                    freeWindowHandles.add(currentWindowHandle);
+                }
+            } catch (RuntimeException e) {
+                DriverQuitter.getInstance().quit(createdDriver);
+                throw e;
+            }
+            driver = createdDriver;
+        } catch (Exception e) {
+            creationFailure = e;
+            synchronized (SharedSessions.class) {
+                // Let the next test create a new driver instead
+                sessions.get(key).remove(this);
+            }
+        } finally {
+            created.countDown();
+        }
+    }
+
+    /**
+     * @return true if it was the last tab
+     */
+    private boolean releaseTab() {
+        synchronized (SharedSessions.class) {
+            tabs--;
+            if (tabs > 0 || driver == null) {
+                return false;
+            }
+            sessions.get(key).remove(this);
+            return true;
+        }
+    }
+
+    private String openWindow() {
+        synchronized (commandLock) {
+            String freeWindowHandle = freeWindowHandles.poll();
+            if (freeWindowHandle != null) {
+                return freeWindowHandle;
+            }
+            Set<String> windowHandles = driver.getWindowHandles();
+            ((JavascriptExecutor) driver).executeScript("window.open('about:blank', '_blank')");
+            Set<String> newWindowHandles = new HashSet<>(driver.getWindowHandles());
+            newWindowHandles.removeAll(windowHandles);
+            if (newWindowHandles.isEmpty()) {
+                throw new WebDriverExtensionException("Failed to open a new window for a test sharing the driver, make sure pop-ups are not blocked");
+            }
+            return newWindowHandles.iterator().next();
+        }
+    }
+
+    private void closeWindow(String windowHandle) {
+        synchronized (commandLock) {
+            try {
+                switchTo(windowHandle);
+                // Stop whatever the page is doing and keep the window for the next test
+                driver.get("about:blank");
+                freeWindowHandles.add(windowHandle);
+            } catch (Exception e) {
+                log.warn("Failed to release window of a test sharing the driver", e);
+                currentWindowHandle = null;
+            }
+        }
+    }
+
+    private void switchTo(String windowHandle) {
+        // Guarded by commandLock
+        if (!windowHandle.equals(currentWindowHandle)) {
+            driver.switchTo().window(windowHandle);
+            currentWindowHandle = windowHandle;
+        }
+    }
+
+    private Object createProxy(String windowHandle, Object target) {
+        List<Class<?>> interfaces = new ArrayList<>();
+        for (Class<?> implementedInterface : ClassUtils.getAllInterfaces(target.getClass())) {
+            if (Modifier.isPublic(implementedInterface.getModifiers())) {
+                interfaces.add(implementedInterface);
+            }
+        }
+        return Proxy.newProxyInstance(target.getClass().getClassLoader(), interfaces.toArray(new Class<?>[interfaces.size()]),
+                new WindowInvocationHandler(this, windowHandle, target));
+    }
+
+    private static Object unwrap(Object object) {
+        if (object != null && Proxy.isProxyClass(object.getClass())
+                && Proxy.getInvocationHandler(object) instanceof WindowInvocationHandler) {
+            return ((WindowInvocationHandler) Proxy.getInvocationHandler(object)).target;
+        }
+        return object;
+    }
+
+    private static Object[] unwrapAll(Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        Object[] unwrapped = (Object[]) Array.newInstance(args.getClass().getComponentType(), args.length);
+        for (int i = 0; i < args.length; i++) {
+            // Script arguments are passed as an array
+            unwrapped[i] = args[i] instanceof Object[] ? unwrapAll((Object[]) args[i]) : unwrap(args[i]);
+        }
+        return unwrapped;
+    }
+}
@@ -3,22 +3,29 @@ package com.github.webdriverextensions.internal.junitrunner;
 import com.github.webdriverextensions.Bot;
 import static com.github.webdriverextensions.internal.utils.StringUtils.quote;
 import static com.github.webdriverextensions.internal.utils.WebDriverUtils.getScreenshotFilePath;
+import org.junit.runner.Description;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
 import org.slf4j.Logger;
 
+@RunListener.ThreadSafe
 public class TakeScreenshotOnFailureRunListener extends RunListener {
 
     private final Logger log;
     private final String fileName;
+    private final Description description;
 
-    public TakeScreenshotOnFailureRunListener(Logger log, String fileName) {
+    public TakeScreenshotOnFailureRunListener(Logger log, String fileName, Description description) {
         this.log = log;
         this.fileName = fileName;
+        this.description = description;
     }
 
     @Override
     public void testFailure(Failure failure) throws Exception {
+        if (!description.equals(failure.getDescription())) {
+            return; // Failure of another test running in parallel
+        }
         String filePath = getScreenshotFilePath(fileName);
         log.trace("Saving test failure screenshot to " + quote(filePath));
         Bot.takeScreenshot(fileName);
@@ -0,0 +1,155 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.SHARD_INDEX_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.SHARD_STRATEGY_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.SHARD_TOTAL_PROPERTY_NAME;
+
+/**
+ * Splits the tests into a number of disjoint shards so that e.g. several CI
+ * nodes can each run a slice of the tests without any coordination.
+ *
+ * <p>Sharding is enabled by setting the {@code webdriverextensions.shard.total}
+ * property to the number of shards and the {@code webdriverextensions.shard.index}
+ * property to the shard to run (0 to total - 1). By default a test is
+ * assigned to a shard by a stable hash of its class, method and browser.
+ * Setting the {@code webdriverextensions.shard.strategy} property to
+ * {@code timings} instead balances the tests of each class over the shards by
+ * their recorded {@link TestTimings}, rotating the shards by class so that the
+ * slowest test of every class does not end up in the same shard. All nodes
+ * must then use the same timings file, otherwise shards may overlap.</p>
+ */
+public class TestSharding {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TestSharding.class);
+
+    public static final String HASH_STRATEGY = "hash";
+    public static final String TIMINGS_STRATEGY = "timings";
+
+    private final int index;
+    private final int total;
+    private final TestTimings timings;
+
+    /**
+     * @param timings the timings to balance the shards by or null to assign
+     * tests by hash
+     */
+    public TestSharding(int index, int total, TestTimings timings) {
+        if (total < 1 || index < 0 || index >= total) {
+            throw new WebDriverExtensionException("Invalid shard index " + index + " of total " + total
+                    + ", the index must be between 0 and total - 1");
+        }
+        this.index = index;
+        this.total = total;
+        this.timings = timings;
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.getInt(SHARD_TOTAL_PROPERTY_NAME, 1) > 1;
+    }
+
+    /**
+     * @return the sharding configured by the properties or null if sharding
+     * is not enabled
+     */
+    public static TestSharding fromProperties() {
+        if (!isEnabled()) {
+            return null;
+        }
+        String strategy = System.getProperty(SHARD_STRATEGY_PROPERTY_NAME, HASH_STRATEGY).trim();
+        if (!HASH_STRATEGY.equalsIgnoreCase(strategy) && !TIMINGS_STRATEGY.equalsIgnoreCase(strategy)) {
+            throw new WebDriverExtensionException("Invalid shard strategy " + strategy + " in property "
+                    + SHARD_STRATEGY_PROPERTY_NAME + ", expected " + HASH_STRATEGY + " or " + TIMINGS_STRATEGY);
+        }
+        return new TestSharding(
+                PropertyUtils.getInt(SHARD_INDEX_PROPERTY_NAME, -1),
+                PropertyUtils.getInt(SHARD_TOTAL_PROPERTY_NAME, 1),
+                TIMINGS_STRATEGY.equalsIgnoreCase(strategy) ? TestTimings.getInstance() : null);
+    }
+
+    /**
+     * Selects the tests of a class that belong to this shard.
+     *
+     * @param className the name of the test class
+     * @param tests the tests of the class
+     * @param testKeys the keys of the tests identifying them across runs, in
+     * the same order as the tests
+     * @return the tests of this shard in the same order as they were given
+     */
+    public <T> List<T> select(String className, List<T> tests, List<String> testKeys) {
+        boolean[] selected = timings != null ? selectByTimings(className, testKeys) : selectByHash(testKeys);
+        List<T> result = new ArrayList<>();
+        for (int i = 0; i < tests.size(); i++) {
+            if (selected[i]) {
+                result.add(tests.get(i));
+            }
+        }
+        log.debug("Running {} of {} tests in {} in shard {} of {}", result.size(), tests.size(), className, index, total);
+        return result;
+    }
+
+    private boolean[] selectByHash(List<String> testKeys) {
+        boolean[] selected = new boolean[testKeys.size()];
+        for (int i = 0; i < testKeys.size(); i++) {
+            selected[i] = shardOf(hash(testKeys.get(i))) == index;
+        }
+        return selected;
+    }
+
+    /**
+     * Assigns the tests longest first to the shard with the least expected
+     * time so far, i.e. greedy LPT bin packing.
+     */
+    private boolean[] selectByTimings(String className, final List<String> testKeys) {
+        long averageDuration = timings.getAverageDuration();
+        final long[] durations = new long[testKeys.size()];
+        Integer[] order = new Integer[testKeys.size()];
+        for (int i = 0; i < testKeys.size(); i++) {
+            Long duration = timings.getDuration(testKeys.get(i));
+            // At least 1 ms so that tests without any timings are spread evenly
+            durations[i] = Math.max(duration != null ? duration : averageDuration, 1);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer test1, Integer test2) {
+                int result = Long.compare(durations[test2], durations[test1]);
+                return result != 0 ? result : testKeys.get(test1).compareTo(testKeys.get(test2));
+            }
+        });
+
+        long rotation = hash(className);
+        long[] shardDurations = new long[total];
+        boolean[] selected = new boolean[testKeys.size()];
+        for (int test : order) {
+            int shard = 0;
+            for (int i = 1; i < total; i++) {
+                if (shardDurations[i] < shardDurations[shard]) {
+                    shard = i;
+                }
+            }
+            shardDurations[shard] += durations[test];
+            selected[test] = shardOf(shard + rotation) == index;
+        }
+        return selected;
+    }
+
+    private int shardOf(long value) {
+        return (int) (value % total);
+    }
+
+    private static long hash(String value) {
+        // Unlike String.hashCode() the CRC is well spread also for similar strings
+        CRC32 crc = new CRC32();
+        crc.update(value.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
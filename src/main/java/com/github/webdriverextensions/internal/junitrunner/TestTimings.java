@@ -0,0 +1,153 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.utils.PropertyUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.TIMINGS_FILE_PROPERTY_NAME;
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.TIMINGS_PROPERTY_NAME;
+
+/**
+ * Records how long tests take in an append-only file so that later runs can
+ * run the slowest tests first.
+ *
+ * <p>Each line of the file holds a test key and a duration in milliseconds
+ * separated by a tab. The expected duration of a test is the average of its
+ * last recorded durations. Lines are appended with a single write so that
+ * several threads and forked JVMs can record to the same file.</p>
+ *
+ * <p>The expected durations are those of the file when it is loaded. Timings
+ * recorded afterwards are only appended to the file for later runs, so that
+ * e.g. the shards computed from the timings stay the same on all nodes no
+ * matter which tests a node has already run.</p>
+ *
+ * <p>Timings are enabled by setting the {@code webdriverextensions.timings}
+ * property to {@code true}. The file defaults to
+ * {@code webdriverextensions-timings.txt} in the working directory and can be
+ * changed with the {@code webdriverextensions.timings.file} property.</p>
+ */
+public class TestTimings {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TestTimings.class);
+
+    public static final String DEFAULT_TIMINGS_FILE = "webdriverextensions-timings.txt";
+    private static final int DURATIONS_TO_AVERAGE = 5;
+
+    private static TestTimings instance;
+
+    private final Path file;
+    private final Map<String, Long> durations; // Expected durations when loaded, never changed
+    private final long averageDuration;
+
+    public TestTimings(Path file) {
+        this.file = file;
+        Map<String, Deque<Long>> loadedDurations = load();
+        Map<String, Long> expectedDurations = new HashMap<>();
+        long sum = 0;
+        for (Map.Entry<String, Deque<Long>> testDurations : loadedDurations.entrySet()) {
+            long duration = average(testDurations.getValue());
+            expectedDurations.put(testDurations.getKey(), duration);
+            sum += duration;
+        }
+        this.durations = Collections.unmodifiableMap(expectedDurations);
+        this.averageDuration = expectedDurations.isEmpty() ? 0 : sum / expectedDurations.size();
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtils.isTrue(TIMINGS_PROPERTY_NAME);
+    }
+
+    public static synchronized TestTimings getInstance() {
+        if (instance == null) {
+            instance = new TestTimings(Paths.get(System.getProperty(TIMINGS_FILE_PROPERTY_NAME, DEFAULT_TIMINGS_FILE)));
+        }
+        return instance;
+    }
+
+    private Map<String, Deque<Long>> load() {
+        Map<String, Deque<Long>> loadedDurations = new HashMap<>();
+        if (!Files.exists(file)) {
+            return loadedDurations;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("Failed to read test timings from {}", file, e);
+            return loadedDurations;
+        }
+        for (String line : lines) {
+            int separator = line.lastIndexOf('\t');
+            if (separator <= 0) {
+                continue;
+            }
+            long duration = NumberUtils.toLong(line.substring(separator + 1).trim(), -1);
+            if (duration >= 0) {
+                addDuration(loadedDurations, line.substring(0, separator), duration);
+            }
+        }
+        return loadedDurations;
+    }
+
+    private static void addDuration(Map<String, Deque<Long>> loadedDurations, String testKey, long duration) {
+        Deque<Long> testDurations = loadedDurations.get(testKey);
+        if (testDurations == null) {
+            testDurations = new ArrayDeque<>();
+            loadedDurations.put(testKey, testDurations);
+        }
+        testDurations.addLast(duration);
+        if (testDurations.size() > DURATIONS_TO_AVERAGE) {
+            testDurations.removeFirst();
+        }
+    }
+
+    private static long average(Deque<Long> testDurations) {
+        long sum = 0;
+        for (long duration : testDurations) {
+            sum += duration;
+        }
+        return sum / testDurations.size();
+    }
+
+    /**
+     * @return the expected duration of the test in milliseconds or null if
+     * the test had no recorded timings when the file was loaded
+     */
+    public Long getDuration(String testKey) {
+        return durations.get(testKey);
+    }
+
+    /**
+     * @return the average expected duration of all tests with recorded
+     * timings when the file was loaded or 0 if there were none
+     */
+    public long getAverageDuration() {
+        return averageDuration;
+    }
+
+    /**
+     * Appends the duration of a test to the file. The expected durations of
+     * this instance are not changed.
+     */
+    public void record(String testKey, long duration) {
+        byte[] line = (testKey.replace('\t', ' ').replace('\n', ' ') + "\t" + duration + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            synchronized (this) {
+                Files.write(file, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to record test timing to {}", file, e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.github.webdriverextensions.internal.utils;
 
 import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 
 public class PropertyUtils {
 
@@ -14,6 +15,14 @@ public class PropertyUtils {
         return System.getProperty(key) != null;
     }
 
+    public static int getInt(String key, int defaultValue) {
+        return NumberUtils.toInt(StringUtils.trim(System.getProperty(key)), defaultValue);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        return NumberUtils.toLong(StringUtils.trim(System.getProperty(key)), defaultValue);
+    }
+
     public static void setPropertyIfNotExists(String key, String value) {
         if (value == null || StringUtils.isBlank(value)) {
             return;
@@ -42,4 +42,8 @@ public class StringUtils {
     public static boolean isBlank(String string) {
         return org.apache.commons.lang3.StringUtils.isBlank(string);
     }
+
+    public static String trim(String string) {
+        return org.apache.commons.lang3.StringUtils.trim(string);
+    }
 }
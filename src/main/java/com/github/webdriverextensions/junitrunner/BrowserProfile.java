@@ -0,0 +1,151 @@
+package com.github.webdriverextensions.junitrunner;
+
+import com.github.webdriverextensions.internal.utils.StringUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.BROWSER_PROFILE_PROPERTY_NAME;
+
+/**
+ * Presets of desired capabilities that make browsers start and load pages
+ * faster, set with the {@code profile} parameter of the browser annotations
+ * e.g. {@code @Chrome(profile = BrowserProfile.FAST_HEADLESS)} or for all
+ * browsers with the {@code webdriverextensions.browserprofile} property.
+ *
+ * <p>The preset capabilities are merged with the desired capabilities of the
+ * annotation. Nested options, e.g. {@code chromeOptions}, are merged key by
+ * key, lists of arguments are concatenated and values given by the annotation
+ * take precedence over the preset.</p>
+ */
+public enum BrowserProfile {
+
+    /**
+     * No preset, or the profile set by the
+     * {@code webdriverextensions.browserprofile} property when used in an
+     * annotation.
+     */
+    DEFAULT,
+    /**
+     * Runs the browser headless. Chrome additionally keeps its shared memory
+     * in /tmp instead of /dev/shm, which is too small in many containers.
+     * HtmlUnit and PhantomJS are always headless.
+     */
+    HEADLESS,
+    /**
+     * Like HEADLESS, and additionally does not load images, disables
+     * extensions and lets page loads return when the DOM is ready instead of
+     * waiting for all resources to load.
+     */
+    FAST_HEADLESS;
+
+    /**
+     * @return the profile to use for a browser annotated with the profile,
+     * i.e. the profile set by the {@code webdriverextensions.browserprofile}
+     * property if the annotated profile is DEFAULT
+     */
+    public static BrowserProfile resolve(BrowserProfile annotatedProfile) {
+        if (annotatedProfile != null && annotatedProfile != DEFAULT) {
+            return annotatedProfile;
+        }
+        String profile = System.getProperty(BROWSER_PROFILE_PROPERTY_NAME);
+        if (StringUtils.isBlank(profile)) {
+            return DEFAULT;
+        }
+        try {
+            return valueOf(profile.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown browser profile " + StringUtils.quote(profile) + " in property "
+                    + BROWSER_PROFILE_PROPERTY_NAME + ", expected one of " + Arrays.toString(values()), e);
+        }
+    }
+
+    /**
+     * @return the preset capabilities of the profile for the browser
+     */
+    public Map<String, Object> getCapabilities(String browserName) {
+        Map<String, Object> capabilities = new LinkedHashMap<>();
+        if (this == DEFAULT) {
+            return capabilities;
+        }
+        boolean fast = this == FAST_HEADLESS;
+        if (fast) {
+            capabilities.put("pageLoadStrategy", "eager");
+        }
+        if (BrowserType.CHROME.equalsIgnoreCase(browserName) || BrowserType.GOOGLECHROME.equalsIgnoreCase(browserName)) {
+            Map<String, Object> chromeOptions = new LinkedHashMap<>();
+            List<Object> args = new ArrayList<>();
+            Collections.<Object>addAll(args, "--headless", "--disable-gpu", "--disable-dev-shm-usage");
+            if (fast) {
+                Collections.<Object>addAll(args, "--disable-extensions", "--blink-settings=imagesEnabled=false");
+                chromeOptions.put("prefs", map("profile.managed_default_content_settings.images", 2));
+            }
+            chromeOptions.put("args", args);
+            capabilities.put("chromeOptions", chromeOptions);
+        } else if (BrowserType.FIREFOX.equalsIgnoreCase(browserName)) {
+            Map<String, Object> firefoxOptions = new LinkedHashMap<>();
+            firefoxOptions.put("args", new ArrayList<Object>(Collections.singletonList("-headless")));
+            if (fast) {
+                firefoxOptions.put("prefs", map("permissions.default.image", 2, "extensions.enabledScopes", 0));
+            }
+            capabilities.put("moz:firefoxOptions", firefoxOptions);
+        } else if (BrowserType.PHANTOMJS.equalsIgnoreCase(browserName)) {
+            if (fast) {
+                capabilities.put("phantomjs.page.settings.loadImages", false);
+            }
+        }
+        return capabilities;
+    }
+
+    /**
+     * @return the desired capabilities merged with the preset capabilities of
+     * the profile for the browser
+     */
+    public Capabilities applyTo(String browserName, Capabilities desiredCapabilities) {
+        Map<String, Object> presetCapabilities = getCapabilities(browserName);
+        if (presetCapabilities.isEmpty()) {
+            return desiredCapabilities;
+        }
+        Map<String, Object> merged = desiredCapabilities != null
+                ? merge(presetCapabilities, desiredCapabilities.asMap())
+                : presetCapabilities;
+        return new DesiredCapabilities(merged);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> merge(Map<String, ?> preset, Map<String, ?> capabilities) {
+        Map<String, Object> merged = new LinkedHashMap<>(preset);
+        for (Map.Entry<String, ?> capability : capabilities.entrySet()) {
+            Object presetValue = merged.get(capability.getKey());
+            Object value = capability.getValue();
+            if (presetValue instanceof Map && value instanceof Map) {
+                merged.put(capability.getKey(), merge((Map<String, ?>) presetValue, (Map<String, ?>) value));
+            } else if (presetValue instanceof List && value instanceof List) {
+                List<Object> mergedList = new ArrayList<>((List<?>) presetValue);
+                for (Object element : (List<?>) value) {
+                    if (!mergedList.contains(element)) {
+                        mergedList.add(element);
+                    }
+                }
+                merged.put(capability.getKey(), mergedList);
+            } else {
+                merged.put(capability.getKey(), value);
+            }
+        }
+        return merged;
+    }
+
+    private static Map<String, Object> map(Object... keysAndValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.webdriverextensions.junitrunner;
 
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.PARALLEL_THREADS_PROPERTY_NAME;
 import static com.github.webdriverextensions.internal.utils.StringUtils.quote;
 import static com.github.webdriverextensions.internal.utils.WebDriverUtils.addCapabilities;
 import static com.github.webdriverextensions.internal.utils.WebDriverUtils.convertToJsonString;
@@ -15,16 +16,27 @@ import static org.openqa.selenium.remote.CapabilityType.PLATFORM;
 import static org.openqa.selenium.remote.CapabilityType.VERSION;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
@@ -42,6 +54,7 @@ import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
 import org.junit.runners.model.TestClass;
 import org.openqa.selenium.Capabilities;
 import org.openqa.selenium.HasCapabilities;
@@ -58,16 +71,38 @@ import org.openqa.selenium.remote.BrowserType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.safari.SafariDriver;
-import org.openqa.selenium.support.PageFactory;
 
+import com.github.webdriverextensions.SessionSnapshots;
 import com.github.webdriverextensions.WebDriverExtensionFieldDecorator;
 import com.github.webdriverextensions.WebDriverExtensionsContext;
 import com.github.webdriverextensions.WebDriverProperties;
+import com.github.webdriverextensions.WebPage;
+import com.github.webdriverextensions.WebRepository;
+import com.github.webdriverextensions.WebSite;
+import com.github.webdriverextensions.annotations.SessionSnapshot;
+import com.github.webdriverextensions.internal.ReflectionUtils;
 import com.github.webdriverextensions.internal.WebDriverExtensionException;
 import com.github.webdriverextensions.internal.junitrunner.AnnotationUtils;
+import com.github.webdriverextensions.internal.junitrunner.BrowserSessionLimiter;
+import com.github.webdriverextensions.internal.junitrunner.DriverBroker;
+import com.github.webdriverextensions.internal.junitrunner.DriverCircuitBreaker;
+import com.github.webdriverextensions.internal.junitrunner.DriverLaunchGate;
 import com.github.webdriverextensions.internal.junitrunner.DriverPathLoader;
+import com.github.webdriverextensions.internal.junitrunner.DriverPool;
+import com.github.webdriverextensions.internal.junitrunner.DriverPrewarmer;
+import com.github.webdriverextensions.internal.junitrunner.DriverQuitter;
+import com.github.webdriverextensions.internal.junitrunner.HardTimeoutWatchdog;
+import com.github.webdriverextensions.internal.junitrunner.LocalHub;
+import com.github.webdriverextensions.internal.junitrunner.ProfileTemplates;
+import com.github.webdriverextensions.internal.junitrunner.ParallelScheduler;
+import com.github.webdriverextensions.internal.junitrunner.RemoteEndpoints;
 import com.github.webdriverextensions.internal.junitrunner.ScreenshotsPathLoader;
+import com.github.webdriverextensions.internal.junitrunner.SessionReset;
+import com.github.webdriverextensions.internal.junitrunner.SharedDriverServices;
+import com.github.webdriverextensions.internal.junitrunner.SharedSessions;
 import com.github.webdriverextensions.internal.junitrunner.TakeScreenshotOnFailureRunListener;
+import com.github.webdriverextensions.internal.junitrunner.TestSharding;
+import com.github.webdriverextensions.internal.junitrunner.TestTimings;
 import com.github.webdriverextensions.internal.utils.InstanceUtils;
 import com.github.webdriverextensions.internal.utils.OsUtils;
 import com.github.webdriverextensions.internal.utils.PropertyUtils;
@@ -77,6 +112,7 @@ import com.github.webdriverextensions.junitrunner.annotations.Chrome;
 import com.github.webdriverextensions.junitrunner.annotations.DriverPaths;
 import com.github.webdriverextensions.junitrunner.annotations.Edge;
 import com.github.webdriverextensions.junitrunner.annotations.Firefox;
+import com.github.webdriverextensions.junitrunner.annotations.HardTimeout;
 import com.github.webdriverextensions.junitrunner.annotations.HtmlUnit;
 import com.github.webdriverextensions.junitrunner.annotations.IPad;
 import com.github.webdriverextensions.junitrunner.annotations.IPhone;
@@ -94,8 +130,10 @@ import com.github.webdriverextensions.junitrunner.annotations.IgnorePhantomJS;
 import com.github.webdriverextensions.junitrunner.annotations.IgnoreSafari;
 import com.github.webdriverextensions.junitrunner.annotations.InternetExplorer;
 import com.github.webdriverextensions.junitrunner.annotations.Opera;
+import com.github.webdriverextensions.junitrunner.annotations.Parallel;
 import com.github.webdriverextensions.junitrunner.annotations.PhantomJS;
 import com.github.webdriverextensions.junitrunner.annotations.RemoteAddress;
+import com.github.webdriverextensions.junitrunner.annotations.SharedSession;
 import com.github.webdriverextensions.junitrunner.annotations.Safari;
 import com.github.webdriverextensions.junitrunner.annotations.ScreenshotsPath;
 import com.google.gson.Gson;
@@ -152,8 +190,14 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
         IgnoreBrowser.class
     });
 
+    private static final Gson gson = new Gson();
+
     private final Object childrenLock = new Object();
+    private volatile TestClassContext testClassContext = null; // Guarded by childrenLock
     private volatile Collection<FrameworkMethod> filteredTestAnnotatedMethods = null; // Guarded by childrenLock
+    private volatile List<FrameworkMethod> children = null; // Guarded by childrenLock
+    private final int parallelThreads;
+    private final Map<FrameworkMethod, Object> prewarmedKeys = new IdentityHashMap<>(); // The keys of the drivers pre-warmed for upcoming tests, guarded by prewarmedKeys
 
     protected Collection<FrameworkMethod> getFilteredTestAnnotatedMethods() {
         if (filteredTestAnnotatedMethods == null) {
@@ -166,6 +210,17 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
         return filteredTestAnnotatedMethods;
     }
 
+    private TestClassContext getTestClassContext() {
+        if (testClassContext == null) {
+            synchronized (childrenLock) {
+                if (testClassContext == null) {
+                    testClassContext = new TestClassContext();
+                }
+            }
+        }
+        return testClassContext;
+    }
+
     protected static List<String> getDisabledBrowsers() {
         String disabledBrowsersString = System.getProperty(WebDriverProperties.DISABLED_BROWSERS_PROPERTY_NAME, "");
         List<String> disabledBrowsersList = parseDisabledBrowserString(disabledBrowsersString);
@@ -187,6 +242,18 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
         super(klass);
         DriverPathLoader.loadDriverPaths(getTestClass().getJavaClass().getAnnotation(DriverPaths.class));
         ScreenshotsPathLoader.loadScreenshotsPath(getTestClass().getJavaClass().getAnnotation(ScreenshotsPath.class));
+        parallelThreads = getParallelThreads();
+        if (parallelThreads > 1) {
+            setScheduler(new ParallelScheduler(parallelThreads, getTestClass().getJavaClass().getSimpleName()));
+        }
+    }
+
+    private int getParallelThreads() {
+        if (PropertyUtils.propertyExists(PARALLEL_THREADS_PROPERTY_NAME)) {
+            return PropertyUtils.getInt(PARALLEL_THREADS_PROPERTY_NAME, 1);
+        }
+        Parallel parallel = getTestClass().getJavaClass().getAnnotation(Parallel.class);
+        return parallel != null ? parallel.threads() : 1;
     }
 
     /**
@@ -200,13 +267,30 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
         validatePublicVoidNoArgMethods(After.class, false, errors);
         validatePublicVoidNoArgMethods(Before.class, false, errors);
         validateTestMethods(errors);
+        validateSharedSessionMethods(errors);
+    }
+
+    /**
+     * Rejects &#064;ImplicitlyWait on tests sharing a browser, since the
+     * implicit wait applies to all windows of the browser and would change
+     * the implicit wait of the other tests sharing it.
+     */
+    private void validateSharedSessionMethods(List<Throwable> errors) {
+        for (FrameworkMethod method : getTestClass().getAnnotatedMethods(Test.class)) {
+            boolean sharedSession = method.getAnnotation(SharedSession.class) != null
+                    || getTestClass().getJavaClass().getAnnotation(SharedSession.class) != null;
+            if (sharedSession && hasImplicitlyWaitAnnotation(getTestClass(), method)) {
+                errors.add(new Exception("Method " + method.getName()
+                        + " cannot use @ImplicitlyWait since it shares a browser with other tests by @SharedSession"));
+            }
+        }
     }
 
     @Override
     protected List<FrameworkMethod> computeTestMethods() {
         List<FrameworkMethod> testMethods = new ArrayList<>();
         for (FrameworkMethod testAnnotatedMethod : getFilteredTestAnnotatedMethods()) {
-            TestMethodContext testMethodContext = new TestMethodContext().addBrowsersFromClassAnnotations(getTestClass()).addBrowsersFromMethodAnnotations(testAnnotatedMethod);
+            TestMethodContext testMethodContext = getTestClassContext().getTestMethodContext(testAnnotatedMethod);
             if (!testMethodContext.getBrowsers().isEmpty()) {
                 for (BrowserConfiguration browser : testMethodContext.getBrowsers()) {
                     testMethods.add(new WebDriverFrameworkMethod(browser, testAnnotatedMethod));
@@ -219,12 +303,113 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
         return testMethods;
     }
 
+    @Override
+    protected List<FrameworkMethod> getChildren() {
+        // Cache the children so that the runner can look ahead at the tests
+        // about to run, e.g. to pre-warm their drivers
+        if (children == null) {
+            synchronized (childrenLock) {
+                if (children == null) {
+                    children = Collections.unmodifiableList(orderByTimings(selectShard(computeTestMethods())));
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Removes the test methods not belonging to the shard to run when the
+     * tests are sharded by the webdriverextensions.shard.* properties.
+     */
+    private List<FrameworkMethod> selectShard(List<FrameworkMethod> testMethods) {
+        TestSharding sharding = TestSharding.fromProperties();
+        if (sharding == null) {
+            return testMethods;
+        }
+        List<String> testKeys = new ArrayList<>(testMethods.size());
+        for (FrameworkMethod testMethod : testMethods) {
+            testKeys.add(getTestKey(testMethod));
+        }
+        return sharding.select(getTestClass().getName(), testMethods, testKeys);
+    }
+
+    /**
+     * Orders the test methods longest first by their recorded timings, grouped
+     * by browser configuration so that pooled drivers can be reused. Tests
+     * without timings are expected to take the average time of the others.
+     * The order is left as is within and between groups where the expected
+     * times are equal, e.g. when there are no timings at all.
+     */
+    private List<FrameworkMethod> orderByTimings(List<FrameworkMethod> testMethods) {
+        if (!TestTimings.isEnabled()) {
+            return testMethods;
+        }
+        TestTimings timings = TestTimings.getInstance();
+        long averageDuration = timings.getAverageDuration();
+        final Map<FrameworkMethod, Long> expectedDurations = new IdentityHashMap<>();
+        Map<BrowserConfiguration, List<FrameworkMethod>> browserGroups = new LinkedHashMap<>();
+        for (FrameworkMethod testMethod : testMethods) {
+            Long duration = timings.getDuration(getTestKey(testMethod));
+            expectedDurations.put(testMethod, duration != null ? duration : averageDuration);
+            BrowserConfiguration browser = testMethod instanceof WebDriverFrameworkMethod ? ((WebDriverFrameworkMethod) testMethod).getBrowser() : null;
+            List<FrameworkMethod> browserGroup = browserGroups.get(browser);
+            if (browserGroup == null) {
+                browserGroup = new ArrayList<>();
+                browserGroups.put(browser, browserGroup);
+            }
+            browserGroup.add(testMethod);
+        }
+
+        final Comparator<FrameworkMethod> longestFirst = new Comparator<FrameworkMethod>() {
+            @Override
+            public int compare(FrameworkMethod testMethod1, FrameworkMethod testMethod2) {
+                return Long.compare(expectedDurations.get(testMethod2), expectedDurations.get(testMethod1));
+            }
+        };
+        List<List<FrameworkMethod>> sortedBrowserGroups = new ArrayList<>(browserGroups.values());
+        for (List<FrameworkMethod> browserGroup : sortedBrowserGroups) {
+            Collections.sort(browserGroup, longestFirst);
+        }
+        Collections.sort(sortedBrowserGroups, new Comparator<List<FrameworkMethod>>() {
+            @Override
+            public int compare(List<FrameworkMethod> browserGroup1, List<FrameworkMethod> browserGroup2) {
+                return longestFirst.compare(browserGroup1.get(0), browserGroup2.get(0));
+            }
+        });
+
+        List<FrameworkMethod> orderedTestMethods = new ArrayList<>(testMethods.size());
+        for (List<FrameworkMethod> browserGroup : sortedBrowserGroups) {
+            orderedTestMethods.addAll(browserGroup);
+        }
+        return orderedTestMethods;
+    }
+
+    private String getTestKey(FrameworkMethod method) {
+        return getTestClass().getName() + "#" + method.getName();
+    }
+
+    private void recordTiming(FrameworkMethod method, long start) {
+        if (TestTimings.isEnabled()) {
+            TestTimings.getInstance().record(getTestKey(method), System.currentTimeMillis() - start);
+        }
+    }
+
     @Override
     public Description getDescription() {
         Description description = Description.createSuiteDescription(getName(),
                 getRunnerAnnotations());
+        Set<Method> shardMethods = null;
+        if (TestSharding.isEnabled()) {
+            // Only describe the methods with tests in the shard to run
+            shardMethods = new HashSet<>();
+            for (FrameworkMethod child : getChildren()) {
+                shardMethods.add(child.getMethod());
+            }
+        }
         for (FrameworkMethod child : getFilteredTestAnnotatedMethods()) {
-            description.addChild(describeChild(child));
+            if (shardMethods == null || shardMethods.contains(child.getMethod())) {
+                description.addChild(describeChild(child));
+            }
         }
         return description;
     }
@@ -242,7 +427,7 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
     protected Object createTest() throws Exception {
         Object test = super.createTest();
         try {
-            PageFactory.initElements(new WebDriverExtensionFieldDecorator(WebDriverExtensionsContext.getDriver()), test);
+            new WebDriverExtensionFieldDecorator(WebDriverExtensionsContext.getDriver()).initElements(test);
         } catch (WebDriverExtensionException e) {
             // Swallow "WebDriverExtensionsContext is not set" exceptions to allow running normal JUnit tests
         }
@@ -252,7 +437,7 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
     @Override
     protected void runChild(final FrameworkMethod method, RunNotifier notifier) {
         if (method instanceof WebDriverFrameworkMethod) {
-            TestMethodContext testMethodContext = new TestMethodContext().addBrowsersFromClassAnnotations(getTestClass()).addBrowsersFromMethodAnnotations(method);
+            TestMethodContext testMethodContext = getTestClassContext().getTestMethodContext(method);
             BrowserConfiguration browser = ((WebDriverFrameworkMethod) method).getBrowser();
             Description description = describeChild(method);
 
@@ -260,8 +445,8 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
             String className = getTestClass().getJavaClass().getSimpleName();
             String methodName = method.getName();
             String testName = String.format("%s.%s", className, methodName);
-            boolean hasRemoteAddress = PropertyUtils.propertyExists("webdriverextensions.remoteaddress")
-                    || (getTestClass().getJavaClass().getAnnotation(RemoteAddress.class)) != null;
+            boolean hasRemoteAddress = getTestClassContext().remoteAddress != null;
+            discardUnclaimedDrivers(method, browser);
 
             if (method.getAnnotation(Ignore.class) != null) {
                 log.info("Skipping test {} since Test is annotated to be ignored with @Ignore annotation", testName);
@@ -287,85 +472,447 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
                 log.info("Skipping test {} since current platform is not " + browser.platform, testName);
                 notifier.fireTestIgnored(description);
             } else {
-                WebDriver driver;
                 try {
-                    if (hasRemoteAddress) {
-                        String remoteAddress;
-                        if (PropertyUtils.propertyExists("webdriverextensions.remoteaddress")) {
-                            remoteAddress = System.getProperty("webdriverextensions.remoteaddress");
-                        } else {
-                            remoteAddress = getTestClass().getJavaClass().getAnnotation(RemoteAddress.class).value();
-                        }
-                        driver = browser.createDriver(new URL(remoteAddress));
-                        WebDriverExtensionsContext.setDriver(driver);
-                    } else {
-                        try {
-                            driver = browser.createDriver();
-                            BrowserConfiguration driverBrowser = new BrowserConfiguration(driver);
-                            if (testMethodContext.isBrowserIgnored(driverBrowser)) {
-                                driver.quit();
-                                WebDriverExtensionsContext.removeDriver();
-                                log.info("Skipping test {} since Test is annotated to ignore browser {}", testName,
-                                        testMethodContext.ignoreBrowsers.toString());
-                                notifier.fireTestIgnored(description);
-                                return;
-                            }
-                            WebDriverExtensionsContext.setDriver(driver);
-                        } catch (BrowserNotSupported ex) {
-                            log.info("Skipping test {} since browser {} is not supported to run locally", testName, quote(browser.getBrowserName()));
-                            notifier.fireTestIgnored(description);
-                            return;
-                        }
-                    }
+                    BrowserSessionLimiter.acquire(browser.getBrowserName());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    notifier.fireTestFailure(new Failure(description, ex));
+                    return;
+                }
+                try {
+                    runChildWithDriver(method, browser, testMethodContext, hasRemoteAddress, description, notifier);
+                } finally {
+                    BrowserSessionLimiter.release(browser.getBrowserName());
+                }
+            }
+        } else {
+            // Not a Selenium Grid Annotated test, treat as normal test
+            long start = System.currentTimeMillis();
+            super.runChild(method, notifier);
+            if (!isIgnored(method)) {
+                recordTiming(method, start);
+            }
+        }
+    }
 
-                    if (hasImplicitlyWaitAnnotation(getTestClass(), method)) {
-                        Long implicitlyWaitAnnotationValue = getValueFromImplicitlyWaitAnnotation(getTestClass(), method);
-                        TimeUnit implicitlyWaitAnnotationUnit = getUnitFromImplicitlyWaitAnnotation(getTestClass(), method);
-                        driver.manage().timeouts().implicitlyWait(implicitlyWaitAnnotationValue, implicitlyWaitAnnotationUnit);
-                    }
+    private void runChildWithDriver(FrameworkMethod method, BrowserConfiguration browser, TestMethodContext testMethodContext, boolean hasRemoteAddress, Description description, RunNotifier notifier) {
+        String className = getTestClass().getJavaClass().getSimpleName();
+        String methodName = method.getName();
+        String testName = String.format("%s.%s", className, methodName);
 
-                    log.info("Running test {}", testName);
-                    log.trace("{} threadId = {}", testName, Thread.currentThread().getId());
-                    log.trace("Desired Capabilities");
-                    log.trace("browserName = " + browser.getBrowserName());
-                    log.trace("version = " + browser.getVersion());
-                    log.trace("platform = " + browser.getPlatform());
-                    log.trace("desiredCapabilities = " + convertToJsonString(browser.getDesiredCapabilities()));
-                    log.trace("Capabilities");
-                    Capabilities capabilities = ((HasCapabilities) driver).getCapabilities();
-                    log.trace("browserName = " + capabilities.getBrowserName());
-                    log.trace("version = " + capabilities.getVersion());
-                    log.trace("platform = " + capabilities.getCapability(PLATFORM));
-                    log.trace("capabilities = " + convertToJsonString(removeCapabilities(capabilities, BROWSER_NAME, VERSION, PLATFORM)));
-                } catch (Exception ex) {
-                    notifier.fireTestFailure(new Failure(description, ex));
+        WebDriver driver = null;
+        try {
+            if (hasRemoteAddress) {
+                if (LocalHub.isEnabled()) {
+                    // The remote address may point to the local hub on a fixed port
+                    LocalHub.getInstance();
+                }
+                driver = createTestDriver(browser, testMethodContext, true);
+                WebDriverExtensionsContext.setDriver(driver);
+            } else {
+                try {
+                    driver = createTestDriver(browser, testMethodContext, false);
+                    BrowserConfiguration driverBrowser = new BrowserConfiguration(driver);
+                    if (testMethodContext.isBrowserIgnored(driverBrowser)) {
+                        quitDriver(driver, false);
+                        WebDriverExtensionsContext.removeDriver();
+                        log.info("Skipping test {} since Test is annotated to ignore browser {}", testName,
+                                testMethodContext.ignoreBrowsers.toString());
+                        notifier.fireTestIgnored(description);
+                        return;
+                    }
+                    WebDriverExtensionsContext.setDriver(driver);
+                } catch (BrowserNotSupported ex) {
+                    log.info("Skipping test {} since browser {} is not supported to run locally", testName, quote(browser.getBrowserName()));
+                    notifier.fireTestIgnored(description);
                     return;
                 }
+            }
+
+            if (testMethodContext.hasImplicitlyWait) {
+                driver.manage().timeouts().implicitlyWait(testMethodContext.implicitlyWaitValue, testMethodContext.implicitlyWaitUnit);
+            }
+
+            for (SessionSnapshot sessionSnapshot : getTestClassContext().sessionSnapshots) {
+                if (sessionSnapshot.login() == SessionSnapshots.Login.class) {
+                    SessionSnapshots.restore(sessionSnapshot.value(), driver);
+                } else {
+                    SessionSnapshots.restoreOrLogin(sessionSnapshot.value(), sessionSnapshot.login(), driver);
+                }
+            }
+
+            prewarmNextDriver(method, browser);
+
+            log.info("Running test {}", testName);
+            if (log.isTraceEnabled()) {
+                log.trace("{} threadId = {}", testName, Thread.currentThread().getId());
+                log.trace("Desired Capabilities");
+                log.trace("browserName = " + browser.getBrowserName());
+                log.trace("version = " + browser.getVersion());
+                log.trace("platform = " + browser.getPlatform());
+                log.trace("desiredCapabilities = " + convertToJsonString(browser.getDesiredCapabilities()));
+                log.trace("Capabilities");
+                Capabilities capabilities = ((HasCapabilities) driver).getCapabilities();
+                log.trace("browserName = " + capabilities.getBrowserName());
+                log.trace("version = " + capabilities.getVersion());
+                log.trace("platform = " + capabilities.getCapability(PLATFORM));
+                log.trace("capabilities = " + convertToJsonString(removeCapabilities(capabilities, BROWSER_NAME, VERSION, PLATFORM)));
+            }
+        } catch (Exception ex) {
+            if (driver != null) {
+                discardDriver(driver);
+                WebDriverExtensionsContext.removeDriver();
+            }
+            notifier.fireTestFailure(new Failure(description, ex));
+            return;
+        }
+
+        if (getTestClassContext().hasScreenshotsPath) {
+            DriverPathLoader.loadDriverPaths(getTestClass().getJavaClass().getAnnotation(DriverPaths.class));
+        }
+
+        boolean hasTakeScreenshotOnFailureAnnotation = getTestClassContext().hasTakeScreenshotOnFailure;
+        TakeScreenshotOnFailureRunListener screenshotRunListener = null;
+
+        if (hasTakeScreenshotOnFailureAnnotation) {
+            String fileName = className + "." + methodName + "-" + getCurrentDateAndTime();
+            screenshotRunListener = new TakeScreenshotOnFailureRunListener(log, fileName, description);
+            notifier.addListener(screenshotRunListener);
+        }
 
-                if (hasScreenshotPathAnnotation(getTestClass())) {
-                    DriverPathLoader.loadDriverPaths(getTestClass().getJavaClass().getAnnotation(DriverPaths.class));
+        Statement statement = methodBlock(method);
+        HardTimeoutWatchdog.Deadline deadline = null;
+        if (testMethodContext.hardTimeout > 0) {
+            // A shared browser is used by other tests too so only the test is interrupted
+            deadline = HardTimeoutWatchdog.getInstance().start(testName, SharedSessions.isShared(driver) ? null : driver, testMethodContext.hardTimeout);
+            statement = failOnExpiredDeadline(statement, deadline);
+        }
+        long start = System.currentTimeMillis();
+        runLeaf(statement, description, notifier);
+        recordTiming(method, start);
+        if (deadline != null && deadline.isExpired()) {
+            // The driver has been quit or killed, make sure its pool slot is freed
+            discardDriver(driver);
+        } else {
+            quitDriver(driver, testMethodContext.hasImplicitlyWait);
+        }
+
+        if (hasTakeScreenshotOnFailureAnnotation)
+            notifier.removeListener(screenshotRunListener);
+
+        WebDriverExtensionsContext.removeDriver();
+    }
+
+    private static Statement failOnExpiredDeadline(final Statement statement, final HardTimeoutWatchdog.Deadline deadline) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                Throwable failure = null;
+                try {
+                    statement.evaluate();
+                } catch (Throwable t) {
+                    failure = t;
                 }
+                if (deadline.finish()) {
+                    // Report the timeout instead of the failure of the command the driver was killed in
+                    throw deadline.createFailure(failure);
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        };
+    }
 
-                boolean hasTakeScreenshotOnFailureAnnotation = hasTakeScreenshotOnFailureAnnotation(getTestClass());
-                TakeScreenshotOnFailureRunListener screenshotRunListener = null;
+    private WebDriver createTestDriver(final BrowserConfiguration browser, TestMethodContext testMethodContext, final boolean hasRemoteAddress) throws Exception {
+        DriverPool.DriverFactory driverFactory = new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() throws Exception {
+                return hasRemoteAddress ? createRemoteDriver(browser) : createDriver(browser, getLocalHubAddress(browser));
+            }
+        };
+        if (testMethodContext.sharedSessionTabs <= 0) {
+            return driverFactory.create();
+        }
+        // Only tests with the same browser configuration and remote address share a driver
+        return SharedSessions.lease(Arrays.asList(browser, getTestClassContext().remoteAddress), testMethodContext.sharedSessionTabs, driverFactory);
+    }
 
-                if (hasTakeScreenshotOnFailureAnnotation) {
-                    String fileName = className + "." + methodName + "-" + getCurrentDateAndTime();
-                    screenshotRunListener = new TakeScreenshotOnFailureRunListener(log, fileName);
-                    notifier.addListener(screenshotRunListener);
+    private RemoteEndpoints getRemoteEndpoints() throws MalformedURLException {
+        String remoteAddress = getTestClassContext().remoteAddress;
+        return remoteAddress != null ? RemoteEndpoints.forAddresses(remoteAddress) : null;
+    }
+
+    /**
+     * Creates a driver at one of the endpoints of the remote address, failing
+     * over to the next endpoint if the driver cannot be created. A pooled or
+     * pre-warmed session is used at whichever endpoint it was created at.
+     */
+    private WebDriver createRemoteDriver(final BrowserConfiguration browser) throws Exception {
+        RemoteEndpoints remoteEndpoints = getRemoteEndpoints();
+        Exception lastException = null;
+        for (final RemoteEndpoints.Endpoint endpoint : remoteEndpoints.getCandidates(browser)) {
+            try {
+                return createDriver(browser, endpoint.getUrl(), remoteEndpoints.recording(endpoint, new DriverPool.DriverFactory() {
+                    @Override
+                    public WebDriver create() throws Exception {
+                        return startDriver(browser, endpoint.getUrl());
+                    }
+                }));
+            } catch (Exception e) {
+                if (remoteEndpoints.getEndpoints().size() > 1) {
+                    log.warn("Failed to create driver at remote address {}", endpoint, e);
                 }
+                lastException = e;
+            }
+        }
+        throw lastException;
+    }
 
-                runLeaf(methodBlock(method), description, notifier);
-                driver.quit();
+    private static URL getLocalHubAddress(BrowserConfiguration browser) {
+        // Null when the browser should be started directly by this runner
+        if (!LocalHub.supports(browser.getBrowserName())) {
+            return null;
+        }
+        if (LocalHub.isEnabled()) {
+            return LocalHub.getInstance().getAddress();
+        }
+        return DriverBroker.isEnabled() ? DriverBroker.getAddress() : null;
+    }
 
-                if (hasTakeScreenshotOnFailureAnnotation)
-                    notifier.removeListener(screenshotRunListener);
+    private static Object getDriverKey(BrowserConfiguration browser, URL remoteAddress) {
+        // Drivers are pooled and pre-warmed per browser configuration and remote address (null when running locally)
+        return Arrays.asList(browser, remoteAddress);
+    }
 
-                WebDriverExtensionsContext.removeDriver();
+    private WebDriver createDriver(final BrowserConfiguration browser, final URL remoteAddress) throws Exception {
+        return createDriver(browser, remoteAddress, new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() throws Exception {
+                return startDriver(browser, remoteAddress);
             }
+        });
+    }
+
+    /**
+     * Leases a pooled driver, takes a pre-warmed driver or starts a new one
+     * with the factory, in that order.
+     */
+    private WebDriver createDriver(BrowserConfiguration browser, URL remoteAddress, final DriverPool.DriverFactory startFactory) throws Exception {
+        final Object key = getDriverKey(browser, remoteAddress);
+        DriverPool.DriverFactory driverFactory = new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() throws Exception {
+                WebDriver driver = DriverPrewarmer.isEnabled() ? DriverPrewarmer.getInstance().take(key) : null;
+                return driver != null ? driver : startFactory.create();
+            }
+        };
+        if (!DriverPool.isEnabled()) {
+            return driverFactory.create();
+        }
+        return DriverPool.getInstance().lease(key, driverFactory);
+    }
+
+    private static WebDriver startDriver(BrowserConfiguration browser, URL remoteAddress) throws Exception {
+        if (!DriverCircuitBreaker.isEnabled()) {
+            return launchDriver(browser, remoteAddress);
+        }
+        DriverCircuitBreaker circuitBreaker = DriverCircuitBreaker.getInstance();
+        Object key = getDriverKey(browser, remoteAddress);
+        circuitBreaker.beforeCreate(key);
+        WebDriver driver;
+        try {
+            driver = launchDriver(browser, remoteAddress);
+        } catch (BrowserNotSupported e) {
+            // Not a broken browser, it just does not run locally
+            circuitBreaker.afterSuccess(key);
+            throw e;
+        } catch (Exception | Error e) {
+            circuitBreaker.afterFailure(key, e);
+            throw e;
+        }
+        circuitBreaker.afterSuccess(key);
+        return driver;
+    }
+
+    private static WebDriver launchDriver(BrowserConfiguration browser, URL remoteAddress) throws Exception {
+        if (!DriverLaunchGate.isEnabled()) {
+            return remoteAddress != null ? browser.createDriver(remoteAddress) : browser.createDriver();
+        }
+        DriverLaunchGate launchGate = DriverLaunchGate.getInstance();
+        launchGate.acquire();
+        try {
+            return remoteAddress != null ? browser.createDriver(remoteAddress) : browser.createDriver();
+        } finally {
+            launchGate.release();
+        }
+    }
+
+    /**
+     * Starts the driver of the test that will run after the current one in the
+     * background, so that it is ready when the test starts. With parallel
+     * threads the test after the ones already running is pre-warmed.
+     */
+    private void prewarmNextDriver(FrameworkMethod method, BrowserConfiguration browser) throws MalformedURLException {
+        if (!DriverPrewarmer.isEnabled()) {
+            return;
+        }
+        List<FrameworkMethod> testMethods = getChildren();
+        int index = indexOfChild(method);
+        int nextIndex = index + Math.max(parallelThreads, 1);
+        if (index < 0 || nextIndex >= testMethods.size()) {
+            return;
+        }
+        FrameworkMethod nextMethod = testMethods.get(nextIndex);
+        if (!(nextMethod instanceof WebDriverFrameworkMethod) || nextMethod.getAnnotation(Ignore.class) != null) {
+            return;
+        }
+        final BrowserConfiguration nextBrowser = ((WebDriverFrameworkMethod) nextMethod).getBrowser();
+        TestMethodContext nextTestMethodContext = getTestClassContext().getTestMethodContext(nextMethod);
+        RemoteEndpoints remoteEndpoints = getRemoteEndpoints();
+        if (nextTestMethodContext.isBrowserIgnored(nextBrowser)
+                || (remoteEndpoints == null && !OsUtils.isCurrentPlatform(nextBrowser.platform))) {
+            return;
+        }
+        if (DriverPool.isEnabled() && nextBrowser.equals(browser)) {
+            return; // The next test will reuse the driver of this test
+        }
+        if (remoteEndpoints != null) {
+            if (remoteEndpoints.getReadyEndpoint(nextBrowser) != null) {
+                return; // The next test will take the driver wherever it was created
+            }
+            // The next test takes the pre-warmed driver at the endpoint it was
+            // created at, so the endpoint is only selected once
+            final RemoteEndpoints.Endpoint endpoint = remoteEndpoints.select();
+            Object nextKey = getDriverKey(nextBrowser, endpoint.getUrl());
+            prewarmed(nextMethod, nextKey);
+            DriverPrewarmer.getInstance().prewarm(nextKey, remoteEndpoints.recording(endpoint, new DriverPool.DriverFactory() {
+                @Override
+                public WebDriver create() throws Exception {
+                    return startDriver(nextBrowser, endpoint.getUrl());
+                }
+            }));
+            return;
+        }
+        final URL localHubAddress = getLocalHubAddress(nextBrowser);
+        Object nextKey = getDriverKey(nextBrowser, localHubAddress);
+        if (DriverPrewarmer.isReady(nextKey)) {
+            return;
+        }
+        prewarmed(nextMethod, nextKey);
+        DriverPrewarmer.getInstance().prewarm(nextKey, new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() throws Exception {
+                return startDriver(nextBrowser, localHubAddress);
+            }
+        });
+    }
+
+    private void prewarmed(FrameworkMethod method, Object key) {
+        synchronized (prewarmedKeys) {
+            prewarmedKeys.put(method, key);
+        }
+    }
+
+    /**
+     * Quits the drivers pre-warmed for the tests before this one that never
+     * took them, e.g. since they were skipped or failed before creating their
+     * driver. A driver with the same browser configuration as this test is
+     * left for this test to take. Drivers that are not discarded here are quit
+     * by the pre-warmer when they have been idle too long.
+     */
+    private void discardUnclaimedDrivers(FrameworkMethod method, BrowserConfiguration browser) {
+        if (!DriverPrewarmer.isEnabled()) {
+            return;
+        }
+        List<Object> unclaimedKeys = new ArrayList<>();
+        synchronized (prewarmedKeys) {
+            if (prewarmedKeys.isEmpty()) {
+                return;
+            }
+            prewarmedKeys.remove(method);
+            // The tests are started in order, also when running in parallel
+            int index = indexOfChild(method);
+            Iterator<Map.Entry<FrameworkMethod, Object>> entries = prewarmedKeys.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<FrameworkMethod, Object> entry = entries.next();
+                if (indexOfChild(entry.getKey()) < index) {
+                    entries.remove();
+                    if (!((WebDriverFrameworkMethod) entry.getKey()).getBrowser().equals(browser)) {
+                        unclaimedKeys.add(entry.getValue());
+                    }
+                }
+            }
+        }
+        for (Object unclaimedKey : unclaimedKeys) {
+            DriverPrewarmer.getInstance().discard(unclaimedKey);
+        }
+    }
+
+    private int indexOfChild(FrameworkMethod method) {
+        List<FrameworkMethod> testMethods = getChildren();
+        for (int i = 0; i < testMethods.size(); i++) {
+            if (testMethods.get(i) == method) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void quitDriver(WebDriver driver, boolean implicitlyWaitChanged) {
+        if (SharedSessions.isShared(driver)) {
+            WebDriver sharedDriver = SharedSessions.release(driver);
+            if (sharedDriver != null) {
+                quitDriver(sharedDriver, implicitlyWaitChanged);
+            }
+            return;
+        }
+        if (DriverPool.isEnabled() && DriverPool.getInstance().isLeased(driver)) {
+            long resetTime;
+            try {
+                resetTime = SessionReset.reset(driver, implicitlyWaitChanged);
+            } catch (Exception e) {
+                log.warn("Failed to reset driver session, quitting driver instead of reusing it", e);
+                discardDriver(driver);
+                return;
+            }
+            log.info("Reset driver session in {} ms", resetTime);
+            DriverPool.getInstance().release(driver);
         } else {
-            // Not a Selenium Grid Annotated test, treat as normal test
-            super.runChild(method, notifier);
+            DriverQuitter.getInstance().quit(driver);
+        }
+    }
+
+    private void discardDriver(WebDriver driver) {
+        try {
+            // Other tests may still be using a shared driver so only its window is discarded
+            DriverQuitter.getInstance().discard(driver);
+        } catch (Exception e) {
+            log.warn("Failed to quit driver", e);
+        }
+    }
+
+    /**
+     * @return the session snapshots of the page types of the fields of the
+     * test class, and of the fields of its site and repository fields
+     */
+    private static List<SessionSnapshot> findSessionSnapshots(Class<?> testClass) {
+        Map<String, SessionSnapshot> sessionSnapshots = new LinkedHashMap<>();
+        for (Field field : ReflectionUtils.getDeclaredFields(testClass)) {
+            addSessionSnapshot(field.getType(), sessionSnapshots);
+            if (WebSite.class.isAssignableFrom(field.getType()) || WebRepository.class.isAssignableFrom(field.getType())) {
+                for (Field pageField : ReflectionUtils.getDeclaredFields(field.getType())) {
+                    addSessionSnapshot(pageField.getType(), sessionSnapshots);
+                }
+            }
+        }
+        return new ArrayList<>(sessionSnapshots.values());
+    }
+
+    private static void addSessionSnapshot(Class<?> type, Map<String, SessionSnapshot> sessionSnapshots) {
+        SessionSnapshot sessionSnapshot = type.getAnnotation(SessionSnapshot.class);
+        if (sessionSnapshot != null && WebPage.class.isAssignableFrom(type) && !sessionSnapshots.containsKey(sessionSnapshot.value())) {
+            sessionSnapshots.put(sessionSnapshot.value(), sessionSnapshot);
         }
     }
 
@@ -375,10 +922,65 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
                 testName(method), method.getAnnotations());
     }
 
+    /**
+     * The annotation settings of the test class, analysed once per runner and
+     * not modified after that. Reading them from here avoids parsing the
+     * annotations and desired capabilities again for every test.
+     */
+    private class TestClassContext {
+
+        final Map<Method, TestMethodContext> testMethodContexts = new HashMap<>();
+        final TestMethodContext classContext;
+        final String remoteAddress; // Null if not running remotely
+        final boolean hasTakeScreenshotOnFailure;
+        final boolean hasScreenshotsPath;
+        final List<SessionSnapshot> sessionSnapshots;
+
+        TestClassContext() {
+            classContext = new TestMethodContext().addBrowsersFromClassAnnotations(getTestClass());
+            for (FrameworkMethod testAnnotatedMethod : getTestClass().getAnnotatedMethods(Test.class)) {
+                testMethodContexts.put(testAnnotatedMethod.getMethod(), createTestMethodContext(testAnnotatedMethod));
+            }
+            if (PropertyUtils.propertyExists("webdriverextensions.remoteaddress")) {
+                remoteAddress = System.getProperty("webdriverextensions.remoteaddress");
+            } else {
+                RemoteAddress remoteAddressAnnotation = getTestClass().getJavaClass().getAnnotation(RemoteAddress.class);
+                remoteAddress = remoteAddressAnnotation != null ? remoteAddressAnnotation.value() : null;
+            }
+            hasTakeScreenshotOnFailure = hasTakeScreenshotOnFailureAnnotation(getTestClass());
+            hasScreenshotsPath = hasScreenshotPathAnnotation(getTestClass());
+            sessionSnapshots = findSessionSnapshots(getTestClass().getJavaClass());
+        }
+
+        TestMethodContext getTestMethodContext(FrameworkMethod method) {
+            TestMethodContext testMethodContext = testMethodContexts.get(method.getMethod());
+            // Methods added by overriding getTestAnnotatedMethods() are not cached
+            return testMethodContext != null ? testMethodContext : createTestMethodContext(method);
+        }
+
+        private TestMethodContext createTestMethodContext(FrameworkMethod method) {
+            return new TestMethodContext(classContext).addBrowsersFromMethodAnnotations(method).addImplicitlyWaitFromAnnotations(getTestClass(), method)
+                    .addSharedSessionFromAnnotations(getTestClass(), method).addHardTimeoutFromAnnotations(getTestClass(), method);
+        }
+    }
+
     private class TestMethodContext {
 
         List<BrowserConfiguration> browsers = new ArrayList<>();
         List<BrowserConfiguration> ignoreBrowsers = new ArrayList<>();
+        boolean hasImplicitlyWait;
+        long implicitlyWaitValue;
+        TimeUnit implicitlyWaitUnit;
+        int sharedSessionTabs; // 0 if not sharing a driver
+        long hardTimeout; // In milliseconds, 0 if no deadline
+
+        TestMethodContext() {
+        }
+
+        TestMethodContext(TestMethodContext classContext) {
+            browsers.addAll(classContext.browsers);
+            ignoreBrowsers.addAll(classContext.ignoreBrowsers);
+        }
 
         public List<BrowserConfiguration> getBrowsers() {
             return browsers;
@@ -398,6 +1000,35 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
             return this;
         }
 
+        public TestMethodContext addImplicitlyWaitFromAnnotations(TestClass clazz, FrameworkMethod method) {
+            hasImplicitlyWait = hasImplicitlyWaitAnnotation(clazz, method);
+            if (hasImplicitlyWait) {
+                implicitlyWaitValue = getValueFromImplicitlyWaitAnnotation(clazz, method);
+                implicitlyWaitUnit = getUnitFromImplicitlyWaitAnnotation(clazz, method);
+            }
+            return this;
+        }
+
+        public TestMethodContext addSharedSessionFromAnnotations(TestClass clazz, FrameworkMethod method) {
+            SharedSession sharedSession = method.getAnnotation(SharedSession.class);
+            if (sharedSession == null) {
+                sharedSession = clazz.getJavaClass().getAnnotation(SharedSession.class);
+            }
+            sharedSessionTabs = sharedSession != null ? Math.max(sharedSession.tabs(), 1) : 0;
+            return this;
+        }
+
+        public TestMethodContext addHardTimeoutFromAnnotations(TestClass clazz, FrameworkMethod method) {
+            HardTimeout hardTimeoutAnnotation = method.getAnnotation(HardTimeout.class);
+            if (hardTimeoutAnnotation == null) {
+                hardTimeoutAnnotation = clazz.getJavaClass().getAnnotation(HardTimeout.class);
+            }
+            hardTimeout = hardTimeoutAnnotation != null
+                    ? hardTimeoutAnnotation.unit().toMillis(hardTimeoutAnnotation.value())
+                    : HardTimeoutWatchdog.getDefaultTimeout();
+            return this;
+        }
+
         public boolean isBrowserIgnored(BrowserConfiguration browser) {
             if (disabledBrowsers.contains(browser.getBrowserName())) {
                 return true;
@@ -491,6 +1122,7 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
                 }
             }
             filteredTestAnnotatedMethods = Collections.unmodifiableCollection(children);
+            this.children = null;
             if (filteredTestAnnotatedMethods.isEmpty()) {
                 throw new NoTestsRemainException();
             }
@@ -504,6 +1136,9 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
         private String version;
         private String platform;
         private Capabilities desiredCapabilities;
+        private Class desiredCapabilitiesClass;
+        private String desiredCapabilitiesJson;
+        private BrowserProfile profile;
 
         public BrowserConfiguration(WebDriver driver) {
             Capabilities capabilities = ((HasCapabilities) driver).getCapabilities();
@@ -564,16 +1199,22 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
                 platform = ((Platform) AnnotationUtils.getValue(annotation, "platform")).toString();
             }
 
-            Class desiredCapabilitiesClass = (Class) AnnotationUtils.getValue(annotation, "desiredCapabilitiesClass");
+            desiredCapabilitiesClass = (Class) AnnotationUtils.getValue(annotation, "desiredCapabilitiesClass");
             if (desiredCapabilitiesClass != null) {
                 desiredCapabilities = InstanceUtils.newInstance(desiredCapabilitiesClass, DesiredCapabilities.class);
             }
 
-            String desiredCapabilitiesJson = (String) AnnotationUtils.getValue(annotation, "desiredCapabilities");
+            desiredCapabilitiesJson = (String) AnnotationUtils.getValue(annotation, "desiredCapabilities");
             if (desiredCapabilitiesJson != null) {
-                Map<String, Object> desiredCapabilitiesJsonMap = new Gson().fromJson(desiredCapabilitiesJson, Map.class);
+                Map<String, Object> desiredCapabilitiesJsonMap = gson.fromJson(desiredCapabilitiesJson, Map.class);
                 desiredCapabilities = addCapabilities(desiredCapabilities, desiredCapabilitiesJsonMap);
             }
+
+            BrowserProfile annotatedProfile = (BrowserProfile) AnnotationUtils.getValue(annotation, "profile");
+            if (annotatedProfile != null) {
+                profile = BrowserProfile.resolve(annotatedProfile);
+                desiredCapabilities = profile.applyTo(browserName, desiredCapabilities);
+            }
         }
 
         public String getBrowserName() {
@@ -593,16 +1234,43 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
         }
 
         private WebDriver createDriver() throws Exception {
+            if (!ProfileTemplates.isEnabled() || !ProfileTemplates.supports(browserName)) {
+                return createDriver(desiredCapabilities);
+            }
+            // Start the browser with a clone of the template profile instead of a new profile
+            ProfileTemplates profileTemplates = ProfileTemplates.getInstance();
+            Path profile = profileTemplates.createClone(browserName);
+            Map<String, Object> profileCapabilities = ProfileTemplates.getCapabilities(browserName, profile);
+            try {
+                WebDriver driver = createDriver(new DesiredCapabilities(desiredCapabilities != null
+                        ? BrowserProfile.merge(profileCapabilities, desiredCapabilities.asMap())
+                        : profileCapabilities));
+                profileTemplates.register(driver, profile);
+                return driver;
+            } catch (Exception e) {
+                profileTemplates.deleteLater(profile);
+                throw e;
+            }
+        }
+
+        private WebDriver createDriver(Capabilities desiredCapabilities) throws Exception {
             if (BrowserType.CHROME.equalsIgnoreCase(browserName)
                     || BrowserType.GOOGLECHROME.equalsIgnoreCase(browserName)) {
+                // The configuration is shared by all tests so add the binary to a copy of the capabilities
+                Capabilities chromeCapabilities = desiredCapabilities;
                 if (System.getProperty(WebDriverProperties.CHROME_BINARY_PROPERTY_NAME) != null) {
-                    ChromeOptions chromeOptions = new ChromeOptions();
-                    chromeOptions.setBinary(System.getProperty(WebDriverProperties.CHROME_BINARY_PROPERTY_NAME));
-                    DesiredCapabilities capabilitiesToAdd = new DesiredCapabilities();
-                    capabilitiesToAdd.setCapability(ChromeOptions.CAPABILITY, chromeOptions);
-                    desiredCapabilities = addCapabilities(desiredCapabilities, capabilitiesToAdd.asMap());
+                    // Merge the binary into the options so that arguments, e.g. the profile, are kept
+                    Map<String, Object> capabilitiesToAdd = new HashMap<>();
+                    capabilitiesToAdd.put(ChromeOptions.CAPABILITY, Collections.singletonMap("binary",
+                            System.getProperty(WebDriverProperties.CHROME_BINARY_PROPERTY_NAME)));
+                    chromeCapabilities = desiredCapabilities != null
+                            ? new DesiredCapabilities(BrowserProfile.merge(desiredCapabilities.asMap(), capabilitiesToAdd))
+                            : new DesiredCapabilities(capabilitiesToAdd);
                 }
-                return new ChromeDriver(desiredCapabilities);
+                if (SharedDriverServices.isEnabled()) {
+                    return new ChromeDriver(SharedDriverServices.getChromeDriverService(), chromeCapabilities);
+                }
+                return new ChromeDriver(chromeCapabilities);
             }
 
             if (BrowserType.FIREFOX.equalsIgnoreCase(browserName)) {
@@ -669,6 +1337,35 @@ public class WebDriverRunner extends BlockJUnit4ClassRunner {
             return annotationAsString;
         }
 
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof BrowserConfiguration)) {
+                return false;
+            }
+            BrowserConfiguration other = (BrowserConfiguration) obj;
+            if (!Objects.equals(browserName, other.browserName)
+                    || !Objects.equals(version, other.version)
+                    || !Objects.equals(platform, other.platform)) {
+                return false;
+            }
+            if (annotation != null && other.annotation != null) {
+                // Compare the capabilities sources since the created capabilities may hold objects without equals
+                return Objects.equals(desiredCapabilitiesClass, other.desiredCapabilitiesClass)
+                        && Objects.equals(desiredCapabilitiesJson, other.desiredCapabilitiesJson)
+                        && profile == other.profile;
+            }
+            return annotation == null && other.annotation == null
+                    && Objects.equals(desiredCapabilities, other.desiredCapabilities);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(browserName, version, platform, desiredCapabilitiesClass, desiredCapabilitiesJson, profile);
+        }
+
         private boolean matches(BrowserConfiguration browser) {
             if (browser.isBrowserNameProvided()
                     && !browser.getBrowserName().equalsIgnoreCase(browserName)) {
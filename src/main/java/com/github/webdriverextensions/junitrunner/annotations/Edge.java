@@ -1,5 +1,6 @@
 package com.github.webdriverextensions.junitrunner.annotations;
 
+import com.github.webdriverextensions.junitrunner.BrowserProfile;
 import com.github.webdriverextensions.junitrunner.NoDesiredCapabilities;
 import org.openqa.selenium.Platform;
 
@@ -14,4 +15,5 @@ public @interface Edge {
     Platform platform() default Platform.ANY;
     String desiredCapabilities() default "";
     Class desiredCapabilitiesClass() default NoDesiredCapabilities.class;
+    BrowserProfile profile() default BrowserProfile.DEFAULT;
 }
@@ -1,5 +1,6 @@
 package com.github.webdriverextensions.junitrunner.annotations;
 
+import com.github.webdriverextensions.junitrunner.BrowserProfile;
 import com.github.webdriverextensions.junitrunner.NoDesiredCapabilities;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
@@ -13,4 +14,5 @@ public @interface Firefox {
     Platform platform() default Platform.ANY;
     String desiredCapabilities() default "";
     Class desiredCapabilitiesClass() default NoDesiredCapabilities.class;
+    BrowserProfile profile() default BrowserProfile.DEFAULT;
 }
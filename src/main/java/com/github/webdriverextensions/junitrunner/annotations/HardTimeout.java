@@ -0,0 +1,38 @@
+package com.github.webdriverextensions.junitrunner.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sets a deadline for tests, after which their driver is killed
+ *
+ * <p>Annotate a test class to set the deadline for all tests or a test method
+ * to set the deadline of a single test</p>
+ * <pre>
+ * &#064;RunWith(WebDriverRunner.class)
+ * &#064;Chrome
+ * &#064;HardTimeout(value = 5, unit = MINUTES)
+ * public class SomeTest {
+ *     ...
+ * }</pre>
+ *
+ * <p>A test that has not finished at the deadline, e.g. since a script or
+ * page load hangs, gets a screenshot taken if the browser still responds.
+ * Then its driver is quit, or its driver process is killed if quitting hangs
+ * too and the process is not shared with other tests, the test thread is
+ * interrupted and the test fails with the stack trace of where it was
+ * stuck. The time to create the driver is not included.</p>
+ *
+ * @see com.github.webdriverextensions.junitrunner.WebDriverRunner
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface HardTimeout {
+    long value();
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,35 @@
+package com.github.webdriverextensions.junitrunner.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs the tests of the test class in parallel
+ *
+ * <p>Annotate a test class to run its tests on the given number of threads</p>
+ * <pre>
+ * &#064;RunWith(WebDriverRunner.class)
+ * &#064;Chrome
+ * &#064;Firefox
+ * &#064;Parallel(threads = 8)
+ * public class SomeTest {
+ *     ...
+ * }</pre>
+ *
+ * <p>The number of threads can be overridden for all test classes by setting
+ * the {@code webdriverextensions.parallel.threads} property. The number of
+ * browsers of a certain type that may run at the same time can be limited
+ * with the {@code webdriverextensions.parallel.browserlimits} property, e.g.
+ * {@code -Dwebdriverextensions.parallel.browserlimits=chrome:6,firefox:2}.</p>
+ *
+ * @see com.github.webdriverextensions.junitrunner.WebDriverRunner
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Target(ElementType.TYPE)
+public @interface Parallel {
+    int threads();
+}
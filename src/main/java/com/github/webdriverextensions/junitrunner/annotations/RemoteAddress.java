@@ -6,6 +6,17 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Runs the tests of the test class on a remote WebDriver server, e.g. a
+ * Selenium Grid.
+ *
+ * <p>The value can be a comma separated list of addresses, in which case new
+ * drivers are spread over them as set by the
+ * {@code webdriverextensions.remoteaddress.selection} property and created at
+ * the next address if an address fails.</p>
+ *
+ * @see com.github.webdriverextensions.internal.junitrunner.RemoteEndpoints
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Inherited
 @Target(ElementType.TYPE)
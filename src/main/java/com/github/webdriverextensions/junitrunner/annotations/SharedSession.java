@@ -0,0 +1,37 @@
+package com.github.webdriverextensions.junitrunner.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs tests in windows of their own in a browser shared with other tests
+ * running at the same time, instead of starting a browser per test
+ *
+ * <p>Annotate a test class or test method of a test class run in parallel.
+ * Up to the given number of tests share one browser.</p>
+ * <pre>
+ * &#064;RunWith(WebDriverRunner.class)
+ * &#064;Chrome
+ * &#064;Parallel(threads = 8)
+ * &#064;SharedSession(tabs = 4)
+ * public class SomeTest {
+ *     ...
+ * }</pre>
+ *
+ * <p>The commands of the tests sharing a browser are run one at a time, each
+ * after switching to the window of the test. Only use it for tests that do
+ * not change state shared by the windows, i.e. cookies, storage and timeouts,
+ * and do not switch windows or frames themselves. Tests sharing a browser
+ * cannot be annotated with {@link ImplicitlyWait}.</p>
+ *
+ * @see com.github.webdriverextensions.junitrunner.WebDriverRunner
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface SharedSession {
+    int tabs() default 4;
+}
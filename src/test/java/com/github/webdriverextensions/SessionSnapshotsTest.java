@@ -0,0 +1,117 @@
+package com.github.webdriverextensions;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class SessionSnapshotsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    private HtmlUnitDriver driver;
+
+    public static class CountingLogin implements SessionSnapshots.Login {
+
+        static int logins = 0;
+
+        @Override
+        public void login(WebDriver driver) {
+            logins++;
+            ((HtmlUnitDriver) driver).executeScript("document.cookie = 'user=counting; path=/'");
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "<html><body>Page</body></html>".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/html");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/";
+        driver = new HtmlUnitDriver(true);
+    }
+
+    @After
+    public void stopServer() {
+        driver.quit();
+        server.stop(0);
+        SessionSnapshots.remove("user");
+        SessionSnapshots.remove("counting");
+        System.clearProperty("webdriverextensions.sessionsnapshots.directory");
+    }
+
+    @Test
+    public void testThatCookiesAndStorageAreRestoredIntoNewSession() {
+        driver.get(url + "login");
+        driver.executeScript("document.cookie = 'session=abc; path=/'; window.localStorage.setItem('token', 'xyz');");
+        SessionSnapshots.capture("user", driver);
+
+        HtmlUnitDriver otherDriver = new HtmlUnitDriver(true);
+        try {
+            assertThat(SessionSnapshots.restore("user", otherDriver), is(true));
+            assertThat(otherDriver.manage().getCookieNamed("session").getValue(), is("abc"));
+            assertThat((String) otherDriver.executeScript("return window.localStorage.getItem('token')"), is("xyz"));
+        } finally {
+            otherDriver.quit();
+        }
+    }
+
+    @Test
+    public void testThatMissingSnapshotIsNotRestored() {
+        assertThat(SessionSnapshots.restore("user", driver), is(false));
+        assertThat(SessionSnapshots.hasSnapshot("user", driver), is(false));
+    }
+
+    @Test
+    public void testThatLoginRunsOnceAndIsThenRestored() {
+        CountingLogin.logins = 0;
+        driver.get(url);
+        SessionSnapshots.restoreOrLogin("counting", CountingLogin.class, driver);
+        driver.manage().deleteAllCookies();
+        SessionSnapshots.restoreOrLogin("counting", CountingLogin.class, driver);
+
+        assertThat(CountingLogin.logins, is(1));
+        assertThat(driver.manage().getCookieNamed("user").getValue(), is("counting"));
+    }
+
+    @Test
+    public void testThatSnapshotIsStoredOnDisk() throws IOException {
+        Path directory = temporaryFolder.newFolder("snapshots").toPath();
+        System.setProperty("webdriverextensions.sessionsnapshots.directory", directory.toString());
+        driver.get(url);
+        driver.executeScript("document.cookie = 'session=disk; path=/'");
+        SessionSnapshots.capture("user", driver);
+        assertThat(directory.toFile().list().length, is(1));
+
+        SessionSnapshots.remove("user");
+        assertThat(directory.toFile().list().length, is(0));
+        assertThat(SessionSnapshots.hasSnapshot("user", driver), is(false));
+    }
+}
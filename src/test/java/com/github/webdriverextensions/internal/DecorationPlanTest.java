@@ -0,0 +1,154 @@
+package com.github.webdriverextensions.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assume.assumeTrue;
+import com.github.webdriverextensions.WebComponent;
+import com.github.webdriverextensions.WebDriverExtensionFieldDecorator;
+import com.github.webdriverextensions.annotations.Delegate;
+import com.github.webdriverextensions.annotations.ResetSearchContext;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.support.CacheLookup;
+import org.openqa.selenium.support.FindBy;
+import org.openqa.selenium.support.PageFactory;
+
+public class DecorationPlanTest {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DecorationPlanTest.class);
+
+    // Set to true to run the benchmarks, which only log their timings
+    private static final String BENCHMARKS_PROPERTY_NAME = "webdriverextensions.benchmarks";
+
+    private Path page;
+    private HtmlUnitDriver driver;
+
+    public static class Cell extends WebComponent {
+    }
+
+    public static class Row extends WebComponent {
+
+        @Delegate
+        @FindBy(css = ".name")
+        WebElement name;
+        @FindBy(css = ".value")
+        WebElement value;
+        @CacheLookup
+        @FindBy(css = "span")
+        List<WebElement> spans;
+        @FindBy(css = ".value")
+        Cell cell;
+        @ResetSearchContext
+        @FindBy(css = "h1")
+        WebElement title;
+        String text;
+    }
+
+    public static class Table {
+
+        @FindBy(css = "li")
+        List<Row> rows;
+        @FindBy(css = "li")
+        Row firstRow;
+    }
+
+    @Before
+    public void openPage() throws IOException {
+        page = Files.createTempFile("decoration-plan", ".html");
+        Files.write(page, ("<html><body><h1>Table</h1><ul>"
+                + "<li><span class='name'>a</span><span class='value'>1</span></li>"
+                + "<li><span class='name'>b</span><span class='value'>2</span></li>"
+                + "</ul></body></html>").getBytes(StandardCharsets.UTF_8));
+        driver = new HtmlUnitDriver(true);
+        driver.get(page.toUri().toString());
+    }
+
+    @After
+    public void closePage() throws IOException {
+        driver.quit();
+        Files.deleteIfExists(page);
+    }
+
+    @Test
+    public void testThatPlanIsCachedAndPrebuildsLocators() {
+        DecorationPlan plan = DecorationPlan.get(Row.class, null);
+        assertThat(DecorationPlan.get(Row.class, null), sameInstance(plan));
+
+        assertThat(plan.getFields().length, is(5)); // The text field and the fields of WebComponent are not decorated
+        assertThat(getFieldPlan(plan, "name").getKind(), is(DecorationPlan.Kind.WEB_ELEMENT));
+        assertThat(getFieldPlan(plan, "name").getBy(), is(By.cssSelector(".name")));
+        assertThat(getFieldPlan(plan, "spans").getKind(), is(DecorationPlan.Kind.WEB_ELEMENT_LIST));
+        assertThat(getFieldPlan(plan, "spans").isLookupCached(), is(true));
+        assertThat(getFieldPlan(plan, "cell").getKind(), is(DecorationPlan.Kind.WEB_COMPONENT));
+        assertThat(getFieldPlan(plan, "cell").getType(), is((Object) Cell.class));
+        assertThat(getFieldPlan(plan, "title").isSearchContextReset(), is(true));
+        assertThat(getFieldPlan(DecorationPlan.get(Table.class, null), "rows").getKind(), is(DecorationPlan.Kind.WEB_COMPONENT_LIST));
+    }
+
+    @Test
+    public void testThatPlanDecoratesLikePageFactory() {
+        Table decoratedWithPlan = new Table();
+        new WebDriverExtensionFieldDecorator(driver).initElements(decoratedWithPlan);
+        Table decoratedWithPageFactory = new Table();
+        PageFactory.initElements(new WebDriverExtensionFieldDecorator(driver), decoratedWithPageFactory);
+
+        for (Table table : new Table[] {decoratedWithPlan, decoratedWithPageFactory}) {
+            assertThat(table.rows.size(), is(2));
+            Row row = table.rows.get(1);
+            assertThat(row.name.getText(), is("b"));
+            assertThat(row.value.getText(), is("2"));
+            assertThat(row.spans.size(), is(2));
+            assertThat(row.cell.getText(), is("2"));
+            assertThat(row.title.getText(), is("Table"));
+            assertThat(row.text, nullValue());
+            assertThat(table.firstRow.name.getText(), is("a"));
+            assertThat(table.firstRow.getText(), is("a")); // Delegates to the @Delegate annotated name field
+        }
+    }
+
+    @Test
+    public void benchmarkPlanAgainstInspectingFieldsAgain() {
+        assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY_NAME));
+        WebElement rowElement = driver.findElement(By.cssSelector("li"));
+        WebDriverExtensionFieldDecorator decorator = new WebDriverExtensionFieldDecorator(rowElement, driver);
+        int iterations = 20000;
+        for (int i = 0; i < iterations; i++) { // Warm up
+            PageFactory.initElements(decorator, new Row());
+            decorator.initElements(new Row());
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            PageFactory.initElements(decorator, new Row());
+        }
+        long pageFactoryTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            decorator.initElements(new Row());
+        }
+        long planTime = System.nanoTime() - start;
+
+        log.info("Decorated {} rows in {} ms with PageFactory and {} ms with a decoration plan",
+                iterations, pageFactoryTime / 1000000, planTime / 1000000);
+    }
+
+    private static DecorationPlan.FieldPlan getFieldPlan(DecorationPlan plan, String fieldName) {
+        for (DecorationPlan.FieldPlan fieldPlan : plan.getFields()) {
+            if (fieldPlan.getField().getName().equals(fieldName)) {
+                return fieldPlan;
+            }
+        }
+        throw new AssertionError("No plan for field " + fieldName);
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.webdriverextensions.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import com.github.webdriverextensions.WebComponent;
+import com.github.webdriverextensions.WebDriverExtensionFieldDecorator;
+import com.github.webdriverextensions.WebPage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.support.FindBy;
+
+public class DecoratorContextTest {
+
+    private Path page;
+    private HtmlUnitDriver driver;
+
+    public static class Page extends WebPage {
+
+        @FindBy(css = "h1")
+        WebElement title;
+
+        @Override
+        public void open(Object... arguments) {
+        }
+
+        @Override
+        public void assertIsOpen(Object... arguments) throws AssertionError {
+        }
+    }
+
+    public static class Row extends WebComponent {
+
+        Page page;
+    }
+
+    public static class Table {
+
+        Page page;
+        @FindBy(css = "li")
+        List<Row> rows;
+        @FindBy(css = "li")
+        Row firstRow;
+    }
+
+    @Before
+    public void openPage() throws IOException {
+        page = Files.createTempFile("decorator-context", ".html");
+        Files.write(page, "<html><body><h1>Title</h1><ul><li>1</li><li>2</li></ul></body></html>".getBytes(StandardCharsets.UTF_8));
+        driver = new HtmlUnitDriver(true);
+        driver.get(page.toUri().toString());
+    }
+
+    @After
+    public void closePage() throws IOException {
+        driver.quit();
+        Files.deleteIfExists(page);
+    }
+
+    @Test
+    public void testThatPageObjectsAreSharedByAllNestingLevels() {
+        Table table = new Table();
+        new WebDriverExtensionFieldDecorator(driver).initElements(table);
+
+        assertThat(table.firstRow.page, sameInstance(table.page));
+        assertThat(table.rows.get(0).page, sameInstance(table.page));
+        assertThat(table.rows.get(1).page, sameInstance(table.page));
+        assertThat(table.rows.get(1).page.title.getText(), is("Title")); // Found from the root of the page, not the row
+    }
+
+    @Test
+    public void testThatDecoratorsOfContextShareItsPool() {
+        DecoratorContext context = new DecoratorContext(driver);
+        WebDriverExtensionFieldDecorator decorator = context.createDecorator(driver, null);
+        WebDriverExtensionFieldDecorator rowDecorator = context.createDecorator(driver.findElementByCssSelector("li"), null);
+
+        assertThat(decorator.getContext(), sameInstance(context));
+        assertThat(rowDecorator.getContext().getPool(), sameInstance(context.getPool()));
+        Row row = new Row();
+        rowDecorator.initElements(row);
+        Table table = new Table();
+        decorator.initElements(table);
+        assertThat(table.page, sameInstance(row.page));
+    }
+}
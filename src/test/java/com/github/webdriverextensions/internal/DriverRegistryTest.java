@@ -0,0 +1,169 @@
+package com.github.webdriverextensions.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import com.github.webdriverextensions.WebDriverExtensionsContext;
+import com.github.webdriverextensions.internal.junitrunner.DriverPool;
+import com.github.webdriverextensions.internal.junitrunner.SharedSessions;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class DriverRegistryTest {
+
+    private final AtomicInteger quits = new AtomicInteger();
+
+    private WebDriver createDriver() {
+        return (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {WebDriver.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("quit")) {
+                            quits.incrementAndGet();
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    @Test
+    public void testThatDriversOfDeadThreadsAreReaped() throws InterruptedException {
+        final DriverRegistry registry = new DriverRegistry(1, TimeUnit.HOURS);
+        final WebDriver driver = createDriver();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                registry.register(driver);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(registry.reap(), is(1));
+        assertThat(quits.get(), is(1));
+        assertThat(registry.getReapedOrphaned(), is(1L));
+        assertThat(registry.getActive(), is(0));
+    }
+
+    @Test
+    public void testThatIdleDriversAreReaped() throws InterruptedException {
+        DriverRegistry registry = new DriverRegistry(20, TimeUnit.MILLISECONDS);
+        WebDriver driver = createDriver();
+        registry.register(driver);
+        registry.register(createDriver()); // Replaces the driver without removing it
+        assertThat(registry.reap(), is(0));
+
+        Thread.sleep(50);
+        assertThat(registry.reap(), is(1));
+        assertThat(quits.get(), is(1));
+        assertThat(registry.getReapedIdle(), is(1L));
+        assertThat(registry.getRegistration(driver), nullValue());
+        assertThat(registry.getActive(), is(1));
+    }
+
+    @Test
+    public void testThatDriverUsedThroughElementsIsNotReaped() throws InterruptedException {
+        DriverRegistry registry = new DriverRegistry(20, TimeUnit.MILLISECONDS);
+        HtmlUnitDriver driver = new HtmlUnitDriver(true);
+        try {
+            registry.register(driver);
+            driver.get("about:blank");
+            ((JavascriptExecutor) driver).executeScript("document.body.innerHTML = '<input id=\"name\"><button id=\"save\">Save</button>'");
+            WebElement name = driver.findElement(By.id("name"));
+            WebElement save = driver.findElement(By.id("save"));
+            for (int i = 0; i < 5; i++) {
+                // Element commands do not go through the context
+                Thread.sleep(20);
+                name.sendKeys("a");
+                save.click();
+                assertThat(registry.reap(), is(0));
+            }
+            assertThat(name.getAttribute("value"), is("aaaaa"));
+            assertThat(registry.getReapedIdle(), is(0L));
+        } finally {
+            driver.quit();
+        }
+    }
+
+    @Test
+    public void testThatReapedSharedSessionIsQuit() throws Exception {
+        final DriverRegistry registry = new DriverRegistry(1, TimeUnit.HOURS);
+        final AtomicInteger sharedDriverQuits = new AtomicInteger();
+        DriverPool.DriverFactory driverFactory = new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() {
+                return new HtmlUnitDriver(true) {
+                    @Override
+                    public void quit() {
+                        sharedDriverQuits.incrementAndGet();
+                        super.quit();
+                    }
+                };
+            }
+        };
+        final WebDriver sharedDriver = SharedSessions.lease("reaped", 2, driverFactory);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                registry.register(sharedDriver);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(registry.reap(), is(1));
+        // The window is closed and, since no other test uses the session, the real driver quit
+        assertThat(sharedDriverQuits.get(), is(1));
+    }
+
+    @Test
+    public void testThatInheritingThreadsDoNotOwnTheDriver() throws InterruptedException {
+        final DriverRegistry registry = new DriverRegistry(1, TimeUnit.HOURS);
+        final WebDriver driver = createDriver();
+        registry.register(driver);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                registry.touch(driver);
+                registry.unregister(driver);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(registry.getRegistration(driver).getOwner(), is(Thread.currentThread()));
+        assertThat(registry.getForeignThreadUses(), is(1L));
+
+        registry.unregister(driver);
+        assertThat(registry.getRegistration(driver), nullValue());
+        registry.shutdown();
+        assertThat(registry.getLeakedAtExit(), is(0L));
+        assertThat(quits.get(), is(0));
+    }
+
+    @Test
+    public void testThatContextRegistersDrivers() {
+        System.setProperty("webdriverextensions.reaper", "true");
+        try {
+            WebDriver driver = createDriver();
+            WebDriverExtensionsContext.setDriver(driver);
+            DriverRegistry registry = DriverRegistry.getInstanceIfCreated();
+            assertThat(registry.getRegistration(driver), notNullValue());
+
+            WebDriverExtensionsContext.removeDriver();
+            assertThat(registry.getRegistration(driver), nullValue());
+        } finally {
+            System.clearProperty("webdriverextensions.reaper");
+        }
+    }
+}
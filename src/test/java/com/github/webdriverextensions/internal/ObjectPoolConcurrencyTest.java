@@ -0,0 +1,199 @@
+package com.github.webdriverextensions.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assume.assumeTrue;
+import com.github.webdriverextensions.WebComponent;
+import com.github.webdriverextensions.WebDriverExtensionFieldDecorator;
+import com.github.webdriverextensions.WebPage;
+import com.github.webdriverextensions.WebSite;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.support.FindBy;
+
+public class ObjectPoolConcurrencyTest {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ObjectPoolConcurrencyTest.class);
+
+    // Set to true to run the benchmarks, which only log their timings
+    private static final String BENCHMARKS_PROPERTY_NAME = "webdriverextensions.benchmarks";
+
+    private HtmlUnitDriver driver;
+
+    public static class Site extends WebSite {
+
+        Page page;
+
+        @Override
+        public void open(Object... arguments) {
+        }
+
+        @Override
+        public void assertIsOpen(Object... arguments) throws AssertionError {
+        }
+    }
+
+    public static class Page extends WebPage {
+
+        static final AtomicInteger created = new AtomicInteger();
+
+        Site site;
+
+        public Page() {
+            created.incrementAndGet();
+        }
+
+        @Override
+        public void open(Object... arguments) {
+        }
+
+        @Override
+        public void assertIsOpen(Object... arguments) throws AssertionError {
+        }
+    }
+
+    public static class GenericPage<T extends WebComponent> extends WebPage {
+
+        @FindBy(css = "li")
+        T component;
+
+        @Override
+        public void open(Object... arguments) {
+        }
+
+        @Override
+        public void assertIsOpen(Object... arguments) throws AssertionError {
+        }
+    }
+
+    public static class Row extends WebComponent {
+    }
+
+    public static class Cell extends WebComponent {
+    }
+
+    public static class Model {
+
+        Site site;
+        Page page;
+        GenericPage<Row> rowPage;
+        GenericPage<Row> otherRowPage;
+        GenericPage<Cell> cellPage;
+    }
+
+    @Before
+    public void createDriver() {
+        driver = new HtmlUnitDriver();
+        Page.created.set(0);
+    }
+
+    @After
+    public void quitDriver() {
+        driver.quit();
+    }
+
+    @Test
+    public void testThatCyclesGetTheObjectBeingDecorated() {
+        Model model = new Model();
+        new WebDriverExtensionFieldDecorator(driver).initElements(model);
+
+        assertThat(model.site.page, sameInstance(model.page));
+        assertThat(model.page.site, sameInstance(model.site));
+        assertThat(Page.created.get(), is(1));
+        assertThat(model.rowPage, sameInstance(model.otherRowPage));
+        assertThat((Object) model.cellPage, not(sameInstance((Object) model.rowPage)));
+        assertThat(model.cellPage.component.getClass(), is((Object) Cell.class));
+    }
+
+    @Test
+    public void testThatObjectsAreCreatedOnceByConcurrentThreads() throws Exception {
+        final DecoratorContext context = new DecoratorContext(driver);
+        final Field field = Model.class.getDeclaredField("page");
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<WebPage>> pages = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                pages.add(executor.submit(new Callable<WebPage>() {
+                    @Override
+                    public WebPage call() throws InterruptedException {
+                        start.await();
+                        return context.getPool().getPageObject(field, context.createDecorator(driver, null));
+                    }
+                }));
+            }
+            start.countDown();
+
+            for (Future<WebPage> page : pages) {
+                Page pageObject = (Page) page.get();
+                assertThat(pageObject, sameInstance((Page) pages.get(0).get()));
+                assertThat(pageObject.site.page, sameInstance(pageObject)); // Never seen before it is decorated
+            }
+            assertThat(Page.created.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testThatRepeatedLookupsReturnThePooledObjects() throws Exception {
+        DecoratorContext context = new DecoratorContext(driver);
+        WebDriverExtensionFieldDecorator decorator = context.createDecorator(driver, null);
+        Field pageField = Model.class.getDeclaredField("page");
+        Field rowPageField = Model.class.getDeclaredField("rowPage");
+        Field otherRowPageField = Model.class.getDeclaredField("otherRowPage");
+        ObjectPool pool = context.getPool();
+        WebPage page = pool.getPageObject(pageField, decorator);
+        WebPage rowPage = pool.getPageObject(rowPageField, decorator);
+
+        for (int i = 0; i < 100; i++) {
+            // Looked up with the keys precomputed for the fields
+            assertThat(pool.getPageObject(pageField, decorator), sameInstance(page));
+            assertThat(pool.getPageObject(rowPageField, decorator), sameInstance(rowPage));
+            assertThat(pool.getPageObject(otherRowPageField, decorator), sameInstance(rowPage));
+        }
+        assertThat(Page.created.get(), is(1));
+    }
+
+    @Test
+    public void benchmarkLookupCost() throws Exception {
+        assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY_NAME));
+        DecoratorContext context = new DecoratorContext(driver);
+        WebDriverExtensionFieldDecorator decorator = context.createDecorator(driver, null);
+        Field pageField = Model.class.getDeclaredField("page");
+        Field rowPageField = Model.class.getDeclaredField("rowPage");
+        ObjectPool pool = context.getPool();
+        int iterations = 1000000;
+        for (int i = 0; i < iterations; i++) { // Warm up
+            pool.getPageObject(pageField, decorator);
+            pool.getPageObject(rowPageField, decorator);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            pool.getPageObject(pageField, decorator);
+        }
+        long pageTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            pool.getPageObject(rowPageField, decorator);
+        }
+        long genericPageTime = System.nanoTime() - start;
+
+        log.info("Looked up pooled page objects in {} ns, {} ns with type arguments",
+                pageTime / iterations, genericPageTime / iterations);
+    }
+}
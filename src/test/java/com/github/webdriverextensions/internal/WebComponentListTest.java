@@ -0,0 +1,128 @@
+package com.github.webdriverextensions.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import com.github.webdriverextensions.WebComponent;
+import com.github.webdriverextensions.WebDriverExtensionFieldDecorator;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.support.FindBy;
+import org.openqa.selenium.support.PageFactory;
+
+public class WebComponentListTest {
+
+    private Path page;
+    private HtmlUnitDriver driver;
+    private Table table;
+
+    public static class Row extends WebComponent {
+
+        static int created = 0;
+
+        public Row() {
+            created++;
+        }
+    }
+
+    public static class Table {
+
+        @FindBy(css = "li")
+        List<Row> rows;
+    }
+
+    @Before
+    public void openPage() throws IOException {
+        page = Files.createTempFile("web-component-list", ".html");
+        Files.write(page, "<html><body><ul><li>1</li><li>2</li><li>3</li></ul></body></html>".getBytes(StandardCharsets.UTF_8));
+        driver = new HtmlUnitDriver(true);
+        driver.get(page.toUri().toString());
+        table = new Table();
+        PageFactory.initElements(new WebDriverExtensionFieldDecorator(driver), table);
+        Row.created = 0;
+    }
+
+    @After
+    public void closePage() throws IOException {
+        driver.quit();
+        Files.deleteIfExists(page);
+    }
+
+    @Test
+    public void testThatComponentsAreReusedWhileElementsAreUnchanged() {
+        for (int i = 0; i < table.rows.size(); i++) {
+            assertThat(table.rows.get(i).getText(), is(String.valueOf(i + 1)));
+        }
+
+        WebComponentList<Row> rows = (WebComponentList<Row>) table.rows;
+        assertThat(Row.created, is(3));
+        assertThat(rows.getRebuilds(), is(1L));
+        assertThat(rows.getReuses(), is(6L));
+        assertThat(rows.get(0), sameInstance(rows.get(0)));
+        assertThat(rows.indexOf(rows.get(2)), is(2));
+    }
+
+    @Test
+    public void testThatComponentsAreCreatedAgainWhenRowsAreAppended() {
+        Row firstRow = table.rows.get(0);
+        driver.executeScript("var li = document.createElement('li'); li.textContent = '4'; document.querySelector('ul').appendChild(li);");
+
+        assertThat(table.rows.size(), is(4));
+        assertThat(table.rows.get(3).getText(), is("4"));
+        assertThat(table.rows.get(0), not(sameInstance(firstRow)));
+        assertThat(((WebComponentList<Row>) table.rows).getRebuilds(), is(2L));
+    }
+
+    @Test
+    public void testThatComponentsAreCreatedAgainAfterNavigationOrRefresh() {
+        Row firstRow = table.rows.get(0);
+        driver.navigate().refresh();
+        Row firstRowAfterNavigation = table.rows.get(0);
+        assertThat(firstRowAfterNavigation, not(sameInstance(firstRow)));
+
+        ((WebComponentList<Row>) table.rows).refresh();
+        assertThat(table.rows.get(0), not(sameInstance(firstRowAfterNavigation)));
+        assertThat(((WebComponentList<Row>) table.rows).getRebuilds(), is(3L));
+    }
+
+    @Test
+    public void testThatComponentsAreOnlyCreatedForAccessedIndexes() {
+        driver.executeScript("var ul = document.querySelector('ul'); for (var i = 4; i <= 2000; i++) {"
+                + " var li = document.createElement('li'); li.textContent = '' + i; ul.appendChild(li); }");
+
+        assertThat(table.rows.size(), is(2000));
+        assertThat(table.rows.get(1999).getText(), is("2000"));
+        assertThat(table.rows.subList(10, 20).get(0).getText(), is("11"));
+        Iterator<Row> iterator = table.rows.iterator();
+        iterator.next();
+        assertThat(iterator.next().getText(), is("2"));
+
+        assertThat(Row.created, is(4));
+        assertThat(((WebComponentList<Row>) table.rows).getCreatedWebComponents(), is(4L));
+    }
+
+    @Test
+    public void testThatIteratorsAreNotAffectedByLaterChanges() {
+        Iterator<Row> iterator = table.rows.iterator();
+        List<Row> subList = table.rows.subList(0, 3);
+        driver.executeScript("document.querySelector('ul').removeChild(document.querySelector('li'));");
+
+        int rows = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            rows++;
+        }
+        assertThat(rows, is(3));
+        assertThat(subList.size(), is(3));
+        assertThat(table.rows.size(), is(2));
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import org.junit.Test;
+
+public class BrowserSessionLimiterTest {
+
+    @Test
+    public void testParseBrowserLimits() {
+        assertThat(BrowserSessionLimiter.parseBrowserLimits("").size(), is(0));
+
+        Map<String, Semaphore> limits = BrowserSessionLimiter.parseBrowserLimits("chrome:6, Firefox : 2");
+        assertThat(limits.size(), is(2));
+        assertThat(limits.get("chrome").availablePermits(), is(6));
+        assertThat(limits.get("firefox").availablePermits(), is(2));
+    }
+
+    @Test
+    public void testThatInvalidBrowserLimitsAreIgnored() {
+        Map<String, Semaphore> limits = BrowserSessionLimiter.parseBrowserLimits("chrome,firefox:0,safari:x,opera:1");
+        assertThat(limits.size(), is(1));
+        assertThat(limits.get("opera").availablePermits(), is(1));
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import org.junit.Test;
+
+public class DriverCircuitBreakerTest {
+
+    private static final RuntimeException CAUSE = new RuntimeException("chromedriver not found");
+
+    private static void fail(DriverCircuitBreaker circuitBreaker, Object key, int times) {
+        for (int i = 0; i < times; i++) {
+            circuitBreaker.beforeCreate(key);
+            circuitBreaker.afterFailure(key, CAUSE);
+        }
+    }
+
+    @Test
+    public void testThatCircuitOpensAfterThresholdWithLastFailureAsCause() {
+        DriverCircuitBreaker circuitBreaker = new DriverCircuitBreaker(2, 60, TimeUnit.SECONDS);
+        fail(circuitBreaker, "chrome", 2);
+
+        try {
+            circuitBreaker.beforeCreate("chrome");
+            throw new AssertionError("Expected circuit to be open");
+        } catch (WebDriverExtensionException e) {
+            assertThat(e.getCause(), is(sameInstance((Throwable) CAUSE)));
+        }
+        circuitBreaker.beforeCreate("firefox");
+    }
+
+    @Test
+    public void testThatSuccessResetsConsecutiveFailures() {
+        DriverCircuitBreaker circuitBreaker = new DriverCircuitBreaker(2, 60, TimeUnit.SECONDS);
+        fail(circuitBreaker, "chrome", 1);
+        circuitBreaker.beforeCreate("chrome");
+        circuitBreaker.afterSuccess("chrome");
+        fail(circuitBreaker, "chrome", 1);
+
+        circuitBreaker.beforeCreate("chrome");
+    }
+
+    @Test
+    public void testThatOnlyOneProbeIsLetThroughAfterRetryTime() throws Exception {
+        DriverCircuitBreaker circuitBreaker = new DriverCircuitBreaker(1, 1, TimeUnit.MILLISECONDS);
+        fail(circuitBreaker, "chrome", 1);
+        Thread.sleep(10);
+
+        circuitBreaker.beforeCreate("chrome");
+        try {
+            circuitBreaker.beforeCreate("chrome");
+            throw new AssertionError("Expected circuit to be open while probing");
+        } catch (WebDriverExtensionException e) {
+            // Expected
+        }
+        circuitBreaker.afterSuccess("chrome");
+
+        circuitBreaker.beforeCreate("chrome");
+    }
+}
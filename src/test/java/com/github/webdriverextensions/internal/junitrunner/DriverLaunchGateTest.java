@@ -0,0 +1,53 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import org.junit.Test;
+
+public class DriverLaunchGateTest {
+
+    @Test
+    public void testThatLaunchWaitsForFreePermitAndWaitTimeIsRecorded() throws Exception {
+        final DriverLaunchGate launchGate = new DriverLaunchGate(1, 0);
+        final CountDownLatch secondLaunchAcquired = new CountDownLatch(1);
+        launchGate.acquire();
+
+        Thread secondLaunch = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    launchGate.acquire();
+                    secondLaunchAcquired.countDown();
+                    launchGate.release();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        secondLaunch.start();
+        while (secondLaunch.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        assertThat(secondLaunchAcquired.await(100, TimeUnit.MILLISECONDS), is(false));
+        launchGate.release();
+        assertThat(secondLaunchAcquired.await(10, TimeUnit.SECONDS), is(true));
+        secondLaunch.join();
+
+        assertThat(launchGate.getLaunches(), is(2L));
+        assert launchGate.getMaxWaitTime() >= 100;
+    }
+
+    @Test
+    public void testThatJitterDelaysLaunchAtMostMaxJitter() throws Exception {
+        DriverLaunchGate launchGate = new DriverLaunchGate(0, 20);
+
+        long waitTime = launchGate.acquire();
+        launchGate.release();
+
+        assert waitTime <= 1000;
+        assertThat(launchGate.getLaunches(), is(1L));
+    }
+}
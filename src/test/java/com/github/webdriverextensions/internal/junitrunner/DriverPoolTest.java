@@ -0,0 +1,119 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import org.junit.Test;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class DriverPoolTest {
+
+    private static class CountingDriverFactory implements DriverPool.DriverFactory {
+
+        int created = 0;
+
+        @Override
+        public WebDriver create() {
+            created++;
+            return new QuitCountingDriver();
+        }
+    }
+
+    private static class QuitCountingDriver extends HtmlUnitDriver {
+
+        int quits = 0;
+
+        @Override
+        public void quit() {
+            quits++;
+            super.quit();
+        }
+    }
+
+    @Test
+    public void testThatReleasedDriverIsReusedForSameKey() throws Exception {
+        DriverPool pool = new DriverPool(0, 60, TimeUnit.SECONDS, 0);
+        CountingDriverFactory factory = new CountingDriverFactory();
+
+        WebDriver first = pool.lease("chrome", factory);
+        pool.release(first);
+        WebDriver second = pool.lease("chrome", factory);
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(factory.created, is(1));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testThatDriversAreNotSharedBetweenKeys() throws Exception {
+        DriverPool pool = new DriverPool(0, 60, TimeUnit.SECONDS, 0);
+        CountingDriverFactory factory = new CountingDriverFactory();
+
+        WebDriver chrome = pool.lease("chrome", factory);
+        pool.release(chrome);
+        WebDriver firefox = pool.lease("firefox", factory);
+
+        assertThat(firefox, is(not(sameInstance(chrome))));
+        assertThat(factory.created, is(2));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testThatDriverIsQuitWhenMaxUsesIsReached() throws Exception {
+        DriverPool pool = new DriverPool(0, 60, TimeUnit.SECONDS, 2);
+        CountingDriverFactory factory = new CountingDriverFactory();
+
+        QuitCountingDriver driver = (QuitCountingDriver) pool.lease("chrome", factory);
+        pool.release(driver);
+        assertThat(pool.lease("chrome", factory), is(sameInstance((WebDriver) driver)));
+        pool.release(driver);
+
+        assertThat(driver.quits, is(1));
+        assertThat(pool.lease("chrome", factory), is(not(sameInstance((WebDriver) driver))));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testThatIdleDriverIsQuitWhenMaxIdleTimeIsExceeded() throws Exception {
+        DriverPool pool = new DriverPool(0, 1, TimeUnit.MILLISECONDS, 0);
+        CountingDriverFactory factory = new CountingDriverFactory();
+
+        QuitCountingDriver driver = (QuitCountingDriver) pool.lease("chrome", factory);
+        pool.release(driver);
+        Thread.sleep(10);
+
+        assertThat(pool.lease("chrome", factory), is(not(sameInstance((WebDriver) driver))));
+        assertThat(driver.quits, is(1));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testThatInvalidatedDriverIsQuitAndNotReused() throws Exception {
+        DriverPool pool = new DriverPool(1, 60, TimeUnit.SECONDS, 0);
+        CountingDriverFactory factory = new CountingDriverFactory();
+
+        QuitCountingDriver driver = (QuitCountingDriver) pool.lease("chrome", factory);
+        pool.invalidate(driver);
+
+        assertThat(driver.quits, is(1));
+        assertThat(pool.lease("chrome", factory), is(not(sameInstance((WebDriver) driver))));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testThatShutdownQuitsIdleAndLeasedDrivers() throws Exception {
+        DriverPool pool = new DriverPool(0, 60, TimeUnit.SECONDS, 0);
+        CountingDriverFactory factory = new CountingDriverFactory();
+
+        QuitCountingDriver idle = (QuitCountingDriver) pool.lease("chrome", factory);
+        QuitCountingDriver leased = (QuitCountingDriver) pool.lease("chrome", factory);
+        pool.release(idle);
+        pool.shutdown();
+
+        assertThat(idle.quits, is(1));
+        assertThat(leased.quits, is(1));
+    }
+}
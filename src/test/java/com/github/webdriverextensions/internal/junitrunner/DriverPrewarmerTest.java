@@ -0,0 +1,112 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class DriverPrewarmerTest {
+
+    private static class QuitCountingDriver extends HtmlUnitDriver {
+
+        volatile int quits = 0;
+
+        @Override
+        public void quit() {
+            quits++;
+            super.quit();
+        }
+    }
+
+    @Test
+    public void testThatPrewarmedDriverIsTakenForSameKey() throws Exception {
+        DriverPrewarmer prewarmer = new DriverPrewarmer();
+        final WebDriver driver = new HtmlUnitDriver();
+        prewarmer.prewarm("chrome", new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() {
+                return driver;
+            }
+        });
+
+        assertThat(prewarmer.take("firefox"), is(nullValue()));
+        assertThat(prewarmer.take("chrome"), is(sameInstance(driver)));
+        assertThat(prewarmer.take("chrome"), is(nullValue()));
+        driver.quit();
+        prewarmer.shutdown();
+    }
+
+    @Test
+    public void testThatFailedPrewarmIsNotTaken() throws Exception {
+        DriverPrewarmer prewarmer = new DriverPrewarmer();
+        prewarmer.prewarm("chrome", new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() {
+                throw new IllegalStateException("Failed to start browser");
+            }
+        });
+
+        assertThat(prewarmer.take("chrome"), is(nullValue()));
+        prewarmer.shutdown();
+    }
+
+    @Test
+    public void testThatShutdownQuitsDriversNotTaken() throws Exception {
+        DriverPrewarmer prewarmer = new DriverPrewarmer();
+        final QuitCountingDriver driver = new QuitCountingDriver();
+        prewarmer.prewarm("chrome", new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() {
+                return driver;
+            }
+        });
+
+        prewarmer.shutdown();
+
+        assertThat(driver.quits, is(1));
+    }
+
+    @Test
+    public void testThatDiscardedDriverIsQuit() throws Exception {
+        DriverPrewarmer prewarmer = new DriverPrewarmer();
+        final QuitCountingDriver driver = new QuitCountingDriver();
+        prewarmer.prewarm("chrome", new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() {
+                return driver;
+            }
+        });
+
+        prewarmer.discard("firefox");
+        prewarmer.discard("chrome");
+        prewarmer.shutdown();
+
+        assertThat(prewarmer.take("chrome"), is(nullValue()));
+        assertThat(driver.quits, is(1));
+    }
+
+    @Test
+    public void testThatIdleDriverIsQuit() throws Exception {
+        DriverPrewarmer prewarmer = new DriverPrewarmer(100, TimeUnit.MILLISECONDS);
+        final QuitCountingDriver driver = new QuitCountingDriver();
+        prewarmer.prewarm("chrome", new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() {
+                return driver;
+            }
+        });
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (driver.quits == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(driver.quits, is(1));
+        assertThat(prewarmer.isPrewarmed("chrome"), is(false));
+        prewarmer.shutdown();
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.ASYNC_QUIT_PROPERTY_NAME;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class DriverQuitterTest {
+
+    private static class SlowQuittingDriver extends HtmlUnitDriver {
+
+        volatile boolean quit = false;
+
+        @Override
+        public void quit() {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.quit();
+            quit = true;
+        }
+    }
+
+    @After
+    public void clearProperty() {
+        System.clearProperty(ASYNC_QUIT_PROPERTY_NAME);
+    }
+
+    @Test
+    public void testThatDriverIsQuitSynchronouslyByDefault() {
+        DriverQuitter quitter = new DriverQuitter();
+        SlowQuittingDriver driver = new SlowQuittingDriver();
+
+        quitter.quit(driver);
+
+        assertThat(driver.quit, is(true));
+        assertThat(quitter.getQuits(), is(1L));
+        assert quitter.getMaxQuitTime() >= 100;
+    }
+
+    @Test
+    public void testThatPendingAsynchronousQuitsAreDrainedOnShutdown() {
+        System.setProperty(ASYNC_QUIT_PROPERTY_NAME, "true");
+        DriverQuitter quitter = new DriverQuitter();
+        SlowQuittingDriver driver = new SlowQuittingDriver();
+
+        quitter.quit(driver);
+        assertThat(driver.quit, is(false));
+
+        assertThat(quitter.shutdown(10, TimeUnit.SECONDS), is(true));
+        assertThat(driver.quit, is(true));
+        assertThat(quitter.getPendingQuits(), is(0));
+    }
+
+    @Test
+    public void testThatFailedQuitIsCounted() {
+        DriverQuitter quitter = new DriverQuitter();
+        try {
+            quitter.quit(new HtmlUnitDriver() {
+                @Override
+                public void quit() {
+                    throw new WebDriverException("Session not found");
+                }
+            });
+        } catch (WebDriverException e) {
+            // Expected
+        }
+
+        assertThat(quitter.getFailures(), is(1L));
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertNotNull;
+import com.github.webdriverextensions.junitrunner.WebDriverRunner;
+import com.github.webdriverextensions.junitrunner.annotations.HardTimeout;
+import com.github.webdriverextensions.junitrunner.annotations.HtmlUnit;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class HardTimeoutWatchdogTest {
+
+    @Test
+    public void testThatFinishedTestsAreNotInterrupted() throws InterruptedException {
+        HardTimeoutWatchdog.Deadline deadline = HardTimeoutWatchdog.getInstance().start("FinishedTest.test", null, 50);
+        assertThat(deadline.finish(), is(false));
+
+        Thread.sleep(100);
+        assertThat(deadline.isExpired(), is(false));
+        assertThat(Thread.currentThread().isInterrupted(), is(false));
+    }
+
+    @Test
+    public void testThatExpiredDeadlineQuitsDriverAndInterruptsTest() {
+        long quits = DriverQuitter.getInstance().getQuits();
+        HtmlUnitDriver driver = new HtmlUnitDriver();
+        HardTimeoutWatchdog.Deadline deadline = HardTimeoutWatchdog.getInstance().start("HangingTest.test", driver, 50);
+        InterruptedException interruption = null;
+        try {
+            Thread.sleep(10000);
+        } catch (InterruptedException e) {
+            interruption = e;
+        }
+
+        assertNotNull(interruption);
+        assertThat(deadline.finish(), is(true));
+        assertThat(Thread.currentThread().isInterrupted(), is(false));
+        String message = deadline.createFailure(interruption).getMessage();
+        assertThat(message, containsString("HangingTest.test did not finish within its hard timeout of 50 ms"));
+        assertThat(message, containsString("the driver was quit"));
+        assertThat(DriverQuitter.getInstance().getQuits(), is(quits + 1)); // Quit like any other driver
+    }
+
+    @Test
+    public void testThatRunnerFailsTestsThatHang() {
+        long start = System.currentTimeMillis();
+        Result result = JUnitCore.runClasses(HangingTest.class);
+        assert System.currentTimeMillis() - start < 5000;
+        assertThat(result.getRunCount(), is(2));
+        assertThat(result.getFailureCount(), is(1));
+        assertThat(result.getFailures().get(0).getMessage(), containsString("did not finish within its hard timeout of 200 ms"));
+    }
+
+    @RunWith(WebDriverRunner.class)
+    @HtmlUnit
+    @HardTimeout(value = 200, unit = TimeUnit.MILLISECONDS)
+    public static class HangingTest {
+
+        @Test
+        public void hangingTest() throws InterruptedException {
+            Thread.sleep(10000);
+        }
+
+        @Test
+        public void finishingTest() {
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import com.github.webdriverextensions.WebDriverProperties;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.remote.service.DriverService;
+
+public class LocalHubTest {
+
+    private LocalHub hub;
+
+    @Before
+    public void startHub() throws IOException {
+        hub = new LocalHub(0, 60, TimeUnit.SECONDS, 0);
+        hub.start();
+    }
+
+    @After
+    public void stopHub() {
+        hub.stop();
+    }
+
+    @Test
+    public void testThatStatusIsReady() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(hub.getAddress() + "/status").openConnection();
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(read(connection.getInputStream()), containsString("\"ready\":true"));
+        assertThat(DriverBroker.isRunning(hub.getAddress()), is(true));
+    }
+
+    @Test
+    public void testThatUnsupportedBrowserIsNotCreated() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(hub.getAddress() + "/session").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write("{\"desiredCapabilities\":{\"browserName\":\"htmlunit\"}}".getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(connection.getResponseCode(), is(500));
+        assertThat(read(connection.getErrorStream()), containsString("session not created"));
+        assertThat(hub.getActiveSessionCount(), is(0));
+    }
+
+    @Test
+    public void testThatUnknownSessionIsRejected() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(hub.getAddress() + "/session/unknown/url").openConnection();
+        assertThat(connection.getResponseCode(), is(404));
+        assertThat(read(connection.getErrorStream()), containsString("invalid session id"));
+    }
+
+    @Test
+    public void testThatStatusReportsQueueAndSessionMetrics() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(hub.getAddress() + "/status").openConnection();
+        String status = read(connection.getInputStream());
+        assertThat(status, containsString("\"queuedRequests\":0"));
+        assertThat(status, containsString("\"averageSessionTime\":0"));
+        assertThat(hub.getSessions(), is(0L));
+    }
+
+    @Test
+    public void testThatBrowserLimitsAreParsedFromProperty() {
+        System.setProperty("webdriverextensions.localhub.browserlimits", "chrome:2");
+        try {
+            assertThat(LocalHub.getBrowserLimitsFromProperties().get("chrome").availablePermits(), is(2));
+        } finally {
+            System.clearProperty("webdriverextensions.localhub.browserlimits");
+        }
+    }
+
+    @Test
+    public void testThatSupportedBrowsersAreDrivenByServices() {
+        assertThat(LocalHub.supports("chrome"), is(true));
+        assertThat(LocalHub.supports("firefox"), is(true));
+        assertThat(LocalHub.supports("htmlunit"), is(false));
+    }
+
+    @Test
+    public void testThatAbandonedSessionIsQuitAndReleasesBrowserLimit() throws Exception {
+        Semaphore chromeLimit = new Semaphore(1, true);
+        FakeHub fakeHub = new FakeHub(Collections.singletonMap("chrome", chromeLimit));
+        fakeHub.setSessionTimeout(200, TimeUnit.MILLISECONDS);
+        fakeHub.start();
+        try {
+            assertThat(newSession(fakeHub.getAddress()), is(200));
+            assertThat(fakeHub.getActiveSessionCount(), is(1));
+            assertThat(chromeLimit.availablePermits(), is(0));
+
+            Thread.sleep(400); // The client never deletes its session
+            fakeHub.removeExpiredSessions();
+            assertThat(fakeHub.getActiveSessionCount(), is(0));
+            assertThat(fakeHub.getIdleSessionCount(), is(0));
+            assertThat(fakeHub.services.get(0).deletedSessions.get(), is(1));
+            assertThat(fakeHub.services.get(0).stopped, is(true));
+            assertThat(chromeLimit.availablePermits(), is(1));
+        } finally {
+            fakeHub.stop();
+        }
+    }
+
+    @Test
+    public void testThatQueuedRequestFailsAfterQueueTimeout() throws Exception {
+        Semaphore chromeLimit = new Semaphore(1, true);
+        FakeHub fakeHub = new FakeHub(Collections.singletonMap("chrome", chromeLimit));
+        fakeHub.setQueueTimeout(200, TimeUnit.MILLISECONDS);
+        fakeHub.start();
+        try {
+            assertThat(newSession(fakeHub.getAddress()), is(200));
+
+            HttpURLConnection connection = openNewSession(fakeHub.getAddress());
+            assertThat(connection.getResponseCode(), is(500));
+            assertThat(read(connection.getErrorStream()), containsString("session not created"));
+            assertThat(fakeHub.getQueuedRequests(), is(0));
+            assertThat(fakeHub.getMaxQueuedRequests(), is(1));
+            assertThat(fakeHub.getActiveSessionCount(), is(1));
+            assertThat(chromeLimit.availablePermits(), is(0));
+        } finally {
+            fakeHub.stop();
+        }
+    }
+
+    @Test
+    public void testThatNewRequestDoesNotTakeBrowserLimitAheadOfQueuedRequest() throws Exception {
+        final Semaphore chromeLimit = new Semaphore(1, true);
+        FakeHub fakeHub = new FakeHub(Collections.singletonMap("chrome", chromeLimit));
+        fakeHub.setQueueTimeout(200, TimeUnit.MILLISECONDS);
+        fakeHub.start();
+        Thread queuedRequest = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    chromeLimit.acquire(2); // Stays first in line while one permit is available
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        queuedRequest.start();
+        try {
+            while (!chromeLimit.hasQueuedThreads()) {
+                Thread.sleep(10);
+            }
+
+            assertThat(newSession(fakeHub.getAddress()), is(500));
+            assertThat(chromeLimit.availablePermits(), is(1));
+            chromeLimit.release();
+            queuedRequest.join(5000);
+            assertThat(queuedRequest.isAlive(), is(false));
+        } finally {
+            queuedRequest.interrupt();
+            fakeHub.stop();
+        }
+    }
+
+    @Test
+    public void testThatSessionReceivingCommandsDoesNotTimeOut() throws Exception {
+        FakeHub fakeHub = new FakeHub(Collections.<String, Semaphore>emptyMap());
+        fakeHub.setSessionTimeout(300, TimeUnit.MILLISECONDS);
+        fakeHub.start();
+        try {
+            assertThat(newSession(fakeHub.getAddress()), is(200));
+            for (int i = 0; i < 8; i++) {
+                Thread.sleep(100);
+                HttpURLConnection connection = (HttpURLConnection) new URL(fakeHub.getAddress() + "/session/" + FakeDriverService.SESSION_ID + "/url").openConnection();
+                assertThat(connection.getResponseCode(), is(200));
+                fakeHub.removeExpiredSessions();
+            }
+            assertThat(fakeHub.getActiveSessionCount(), is(1));
+            assertThat(fakeHub.services.get(0).deletedSessions.get(), is(0));
+        } finally {
+            fakeHub.stop();
+        }
+    }
+
+    @Test
+    public void testThatChromeIsStartedWithChromeBinaryProperty() throws Exception {
+        FakeHub fakeHub = new FakeHub(Collections.<String, Semaphore>emptyMap());
+        fakeHub.start();
+        System.setProperty(WebDriverProperties.CHROME_BINARY_PROPERTY_NAME, "/opt/chrome/chrome");
+        try {
+            assertThat(newSession(fakeHub.getAddress()), is(200));
+            assertThat(fakeHub.services.get(0).newSessionRequest, containsString("\"binary\":\"/opt/chrome/chrome\""));
+        } finally {
+            System.clearProperty(WebDriverProperties.CHROME_BINARY_PROPERTY_NAME);
+            fakeHub.stop();
+        }
+    }
+
+    @Test
+    public void testThatChromeBinaryOfRequestIsKept() {
+        byte[] request = "{\"desiredCapabilities\":{\"browserName\":\"chrome\",\"chromeOptions\":{\"binary\":\"/usr/bin/chromium\"}}}".getBytes(StandardCharsets.UTF_8);
+        assertThat(LocalHub.addChromeBinary(request, "/opt/chrome/chrome"), sameInstance(request));
+        String w3cRequest = new String(LocalHub.addChromeBinary(
+                "{\"capabilities\":{\"alwaysMatch\":{\"browserName\":\"chrome\",\"goog:chromeOptions\":{\"args\":[\"headless\"]}}}}".getBytes(StandardCharsets.UTF_8),
+                "/opt/chrome/chrome"), StandardCharsets.UTF_8);
+        assertThat(w3cRequest, containsString("\"goog:chromeOptions\":{\"args\":[\"headless\"],\"binary\":\"/opt/chrome/chrome\"}"));
+    }
+
+    @Test
+    public void testThatBrokerIsStartedWithBrowserProperties() {
+        System.setProperty(WebDriverProperties.CHROME_BINARY_PROPERTY_NAME, "/opt/chrome/chrome");
+        try {
+            assertThat(DriverBroker.getForwardedProperties(), hasItem("-D" + WebDriverProperties.CHROME_BINARY_PROPERTY_NAME + "=/opt/chrome/chrome"));
+        } finally {
+            System.clearProperty(WebDriverProperties.CHROME_BINARY_PROPERTY_NAME);
+        }
+    }
+
+    private static int newSession(URL hubAddress) throws IOException {
+        return openNewSession(hubAddress).getResponseCode();
+    }
+
+    private static HttpURLConnection openNewSession(URL hubAddress) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(hubAddress + "/session").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write("{\"desiredCapabilities\":{\"browserName\":\"chrome\"}}".getBytes(StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+
+    /**
+     * A hub whose sessions are served by fake driver services.
+     */
+    private static class FakeHub extends LocalHub {
+
+        private final List<FakeDriverService> services = new CopyOnWriteArrayList<>();
+
+        private FakeHub(Map<String, Semaphore> browserLimits) throws IOException {
+            super(0, 60, TimeUnit.SECONDS, 0, browserLimits);
+        }
+
+        @Override
+        protected DriverService startService(String browserName, Map<String, Object> desiredCapabilities) throws IOException {
+            FakeDriverService service = FakeDriverService.create();
+            services.add(service);
+            return service;
+        }
+    }
+
+    /**
+     * A driver service that answers all commands of its single session with
+     * success, like chromedriver speaking the JSON wire protocol.
+     */
+    private static class FakeDriverService extends DriverService {
+
+        private static final String SESSION_ID = "fake-session";
+
+        private final HttpServer server;
+        private final AtomicInteger deletedSessions = new AtomicInteger();
+        private volatile String newSessionRequest;
+        private volatile boolean stopped;
+
+        private FakeDriverService(HttpServer server) throws IOException {
+            super(new File("fakedriver"), server.getAddress().getPort(), ImmutableList.<String>of(), ImmutableMap.<String, String>of());
+            this.server = server;
+        }
+
+        private static FakeDriverService create() throws IOException {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            final FakeDriverService service = new FakeDriverService(server);
+            server.createContext("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    String body = read(exchange.getRequestBody());
+                    String path = exchange.getRequestURI().getPath();
+                    if ("POST".equals(exchange.getRequestMethod()) && path.equals("/session")) {
+                        service.newSessionRequest = body;
+                    } else if ("DELETE".equals(exchange.getRequestMethod()) && path.equals("/session/" + SESSION_ID)) {
+                        service.deletedSessions.incrementAndGet();
+                    }
+                    byte[] response = ("{\"sessionId\":\"" + SESSION_ID + "\",\"status\":0,\"value\":{}}").getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                    exchange.sendResponseHeaders(200, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                }
+            });
+            server.start();
+            return service;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+            server.stop(0);
+        }
+    }
+
+    private static String read(InputStream in) {
+        try (Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A")) {
+            return scanner.hasNext() ? scanner.next() : "";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileTemplatesTest {
+
+    private Path directory;
+    private ProfileTemplates profileTemplates;
+
+    @Before
+    public void createProfileTemplates() throws IOException {
+        directory = Files.createTempDirectory("profile-templates-test");
+        profileTemplates = new ProfileTemplates(directory);
+    }
+
+    @After
+    public void deleteProfileTemplates() throws IOException {
+        profileTemplates.shutdown();
+        ProfileTemplates.delete(directory);
+    }
+
+    @Test
+    public void testThatTemplatesAreGeneratedOnce() throws IOException {
+        Path template = profileTemplates.getTemplate("firefox");
+        String userJs = new String(Files.readAllBytes(template.resolve("user.js")), StandardCharsets.UTF_8);
+        assertThat(userJs, containsString("browser.shell.checkDefaultBrowser"));
+
+        Files.write(template.resolve("cache"), new byte[] {1});
+        assertThat(profileTemplates.getTemplate("firefox"), is(template));
+        assert Files.exists(template.resolve("cache"));
+
+        Path chromeTemplate = profileTemplates.getTemplate("chrome");
+        assert Files.exists(chromeTemplate.resolve("First Run"));
+        assert Files.exists(chromeTemplate.resolve("Default").resolve("Preferences"));
+    }
+
+    @Test
+    public void testThatClonesCopyTheTemplateWithoutLockFiles() throws IOException {
+        Path template = profileTemplates.getTemplate("chrome");
+        Files.write(template.resolve("SingletonLock"), new byte[0]);
+
+        Path clone = profileTemplates.createClone("chrome");
+        try {
+            assert Files.exists(clone.resolve("Default").resolve("Preferences"));
+            assert !Files.exists(clone.resolve("SingletonLock"));
+            assertThat(profileTemplates.getClones(), is(1L));
+
+            // Writing to the clone must not change the template
+            Files.write(clone.resolve("Default").resolve("Preferences"), new byte[0]);
+            assert Files.size(template.resolve("Default").resolve("Preferences")) > 0;
+        } finally {
+            ProfileTemplates.delete(clone);
+        }
+    }
+
+    @Test
+    public void testThatClonesAreDeletedInBackground() throws InterruptedException {
+        Path clone = profileTemplates.createClone("firefox");
+        profileTemplates.deleteLater(clone);
+        for (int i = 0; i < 100 && Files.exists(clone); i++) {
+            Thread.sleep(50);
+        }
+        assert !Files.exists(clone);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatCapabilitiesStartTheBrowserWithTheProfile() {
+        Path profile = directory.resolve("profile");
+        Map<String, Object> chromeOptions = (Map<String, Object>) ProfileTemplates.getCapabilities("chrome", profile).get("chromeOptions");
+        assertThat(((List<Object>) chromeOptions.get("args")).get(0), is((Object) ("--user-data-dir=" + profile.toAbsolutePath())));
+        Map<String, Object> firefoxOptions = (Map<String, Object>) ProfileTemplates.getCapabilities("firefox", profile).get("moz:firefoxOptions");
+        assertThat(((List<Object>) firefoxOptions.get("args")).get(1), is((Object) profile.toAbsolutePath().toString()));
+    }
+}
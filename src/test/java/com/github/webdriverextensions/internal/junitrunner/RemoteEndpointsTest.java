@@ -0,0 +1,156 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import static com.github.webdriverextensions.WebDriverExtensionsProperties.PREWARM_PROPERTY_NAME;
+
+public class RemoteEndpointsTest {
+
+    private LocalHub hub1;
+    private LocalHub hub2;
+    private HtmlUnitDriver driver;
+
+    @Before
+    public void startHubs() throws IOException {
+        // Two hubs so that both endpoints pass the health check
+        hub1 = new LocalHub(0, 60, TimeUnit.SECONDS, 0);
+        hub1.start();
+        hub2 = new LocalHub(0, 60, TimeUnit.SECONDS, 0);
+        hub2.start();
+        driver = new HtmlUnitDriver();
+    }
+
+    @After
+    public void stopHubs() {
+        driver.quit();
+        hub1.stop();
+        hub2.stop();
+    }
+
+    @Test
+    public void testThatAddressesAreCommaSeparated() throws Exception {
+        assertThat(RemoteEndpoints.parseAddresses("http://a:4444/wd/hub, http://b:4444/wd/hub"),
+                is(Arrays.asList(new URL("http://a:4444/wd/hub"), new URL("http://b:4444/wd/hub"))));
+    }
+
+    @Test
+    public void testThatRoundRobinTakesTurns() {
+        RemoteEndpoints remoteEndpoints = new RemoteEndpoints(Arrays.asList(hub1.getAddress(), hub2.getAddress()), RemoteEndpoints.Selection.ROUND_ROBIN);
+        RemoteEndpoints.Endpoint first = remoteEndpoints.select();
+        RemoteEndpoints.Endpoint second = remoteEndpoints.select();
+        assertThat(second, not(sameInstance(first)));
+        assertThat(remoteEndpoints.select(), sameInstance(first));
+    }
+
+    @Test
+    public void testThatLeastSessionsPrefersEndpointWithFewestSessions() {
+        RemoteEndpoints remoteEndpoints = new RemoteEndpoints(Arrays.asList(hub1.getAddress(), hub2.getAddress()), RemoteEndpoints.Selection.LEAST_SESSIONS);
+        RemoteEndpoints.Endpoint busy = remoteEndpoints.getEndpoints().get(0);
+        remoteEndpoints.leased(busy, driver, 100);
+        for (int i = 0; i < 4; i++) {
+            assertThat(remoteEndpoints.select(), sameInstance(remoteEndpoints.getEndpoints().get(1)));
+        }
+        remoteEndpoints.released(driver);
+        assertThat(busy.getOutstandingSessions(), is(0));
+        assertThat(busy.getSessions(), is(1L));
+        assertThat(busy.getAverageCreationTime(), is(100L));
+    }
+
+    @Test
+    public void testThatFailedEndpointIsTriedLast() {
+        RemoteEndpoints remoteEndpoints = new RemoteEndpoints(Arrays.asList(hub1.getAddress(), hub2.getAddress()), RemoteEndpoints.Selection.ROUND_ROBIN);
+        RemoteEndpoints.Endpoint failing = remoteEndpoints.getEndpoints().get(0);
+        remoteEndpoints.failed(failing);
+        for (int i = 0; i < 4; i++) {
+            assertThat(remoteEndpoints.getCandidates().get(1), sameInstance(failing));
+        }
+        assertThat(failing.getFailures(), is(1L));
+    }
+
+    @Test
+    public void testThatEndpointThatIsDownIsTriedLast() throws Exception {
+        hub1.stop();
+        RemoteEndpoints remoteEndpoints = new RemoteEndpoints(Arrays.asList(hub1.getAddress(), hub2.getAddress()), RemoteEndpoints.Selection.LATENCY_WEIGHTED);
+        for (int i = 0; i < 4; i++) {
+            assertThat(remoteEndpoints.select().getUrl(), is(hub2.getAddress()));
+        }
+        assertThat(remoteEndpoints.getEndpoints().get(0).isHealthy(), is(false));
+    }
+
+    @Test
+    public void testThatPrewarmedDriverIsTakenAtTheEndpointItWasCreatedAt() throws Exception {
+        System.setProperty(PREWARM_PROPERTY_NAME, "true");
+        try {
+            RemoteEndpoints remoteEndpoints = RemoteEndpoints.forAddresses(hub1.getAddress() + "," + hub2.getAddress());
+            DriverPool.DriverFactory htmlUnitFactory = new DriverPool.DriverFactory() {
+                @Override
+                public WebDriver create() {
+                    return new HtmlUnitDriver();
+                }
+            };
+            RemoteEndpoints.Endpoint endpoint = remoteEndpoints.select();
+            DriverPrewarmer.getInstance().prewarm(Arrays.asList("htmlunit", endpoint.getUrl()), remoteEndpoints.recording(endpoint, htmlUnitFactory));
+
+            // The next turn of the round robin is the other endpoint
+            assertThat(remoteEndpoints.getReadyEndpoint("htmlunit"), sameInstance(endpoint));
+            assertThat(remoteEndpoints.getCandidates("htmlunit").get(0), sameInstance(endpoint));
+            WebDriver prewarmedDriver = DriverPrewarmer.getInstance().take(Arrays.asList("htmlunit", endpoint.getUrl()));
+            assertThat(prewarmedDriver, notNullValue());
+            assertThat(endpoint.getSessions(), is(1L));
+            assertThat(endpoint.getOutstandingSessions(), is(1));
+
+            DriverQuitter.getInstance().quit(prewarmedDriver);
+            assertThat(endpoint.getOutstandingSessions(), is(0));
+            assertThat(endpoint.getSessions(), is(1L));
+            for (RemoteEndpoints.Endpoint otherEndpoint : remoteEndpoints.getEndpoints()) {
+                if (otherEndpoint != endpoint) {
+                    assertThat(otherEndpoint.getSessions(), is(0L));
+                }
+            }
+        } finally {
+            System.clearProperty(PREWARM_PROPERTY_NAME);
+        }
+    }
+
+    @Test
+    public void testThatOnlyCreatedSessionsAreRecorded() throws Exception {
+        RemoteEndpoints remoteEndpoints = new RemoteEndpoints(Arrays.asList(hub1.getAddress(), hub2.getAddress()), RemoteEndpoints.Selection.ROUND_ROBIN);
+        RemoteEndpoints.Endpoint endpoint = remoteEndpoints.getEndpoints().get(1);
+        DriverPool.DriverFactory failingFactory = new DriverPool.DriverFactory() {
+            @Override
+            public WebDriver create() {
+                throw new WebDriverException("Session not created");
+            }
+        };
+        try {
+            remoteEndpoints.recording(endpoint, failingFactory).create();
+        } catch (WebDriverException e) {
+            // Expected
+        }
+        assertThat(endpoint.getFailures(), is(1L));
+        assertThat(endpoint.getSessions(), is(0L));
+        assertThat(endpoint.getOutstandingSessions(), is(0));
+        assertThat(remoteEndpoints.getCandidates().get(1), sameInstance(endpoint));
+    }
+
+    @Test
+    public void testThatSelectionIsParsedLeniently() {
+        assertThat(RemoteEndpoints.Selection.fromString("leastsessions"), is(RemoteEndpoints.Selection.LEAST_SESSIONS));
+        assertThat(RemoteEndpoints.Selection.fromString("latency-weighted"), is(RemoteEndpoints.Selection.LATENCY_WEIGHTED));
+        assertThat(RemoteEndpoints.Selection.fromString(null), is(RemoteEndpoints.Selection.ROUND_ROBIN));
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class SessionResetTest {
+
+    private HtmlUnitDriver driver;
+
+    @Before
+    public void createDriver() {
+        driver = new HtmlUnitDriver(true);
+    }
+
+    @After
+    public void quitDriver() {
+        driver.quit();
+    }
+
+    @Test
+    public void testThatResetNavigatesToBlankPage() {
+        driver.get("about:blank");
+        long resetTime = SessionReset.reset(driver, true);
+        assertThat(driver.getCurrentUrl(), is("about:blank"));
+        assert resetTime >= 0;
+    }
+
+    @Test
+    public void testThatResetClosesExtraWindows() {
+        driver.get("about:blank");
+        String firstWindowHandle = driver.getWindowHandle();
+        driver.executeScript("window.open('about:blank')");
+        assertThat(driver.getWindowHandles().size(), is(2));
+
+        SessionReset.reset(driver, false);
+
+        assertThat(driver.getWindowHandles().size(), is(1));
+        assertThat(driver.getWindowHandle(), is(firstWindowHandle));
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class SharedSessionsTest {
+
+    private final List<WebDriver> createdDrivers = new ArrayList<>();
+
+    private final DriverPool.DriverFactory driverFactory = new DriverPool.DriverFactory() {
+        @Override
+        public WebDriver create() {
+            WebDriver driver = new HtmlUnitDriver(true);
+            createdDrivers.add(driver);
+            return driver;
+        }
+    };
+
+    @After
+    public void quitDrivers() {
+        for (WebDriver driver : createdDrivers) {
+            driver.quit();
+        }
+    }
+
+    @Test
+    public void testThatTabsShareDriverUpToMaxTabs() throws Exception {
+        WebDriver first = SharedSessions.lease("key1", 2, driverFactory);
+        WebDriver second = SharedSessions.lease("key1", 2, driverFactory);
+        WebDriver third = SharedSessions.lease("key1", 2, driverFactory);
+
+        assertThat(createdDrivers.size(), is(2));
+        assertThat(SharedSessions.isShared(first), is(true));
+        assertThat(first.getWindowHandle(), not(second.getWindowHandle()));
+
+        assertThat(SharedSessions.release(first), is(nullValue()));
+        assertThat(SharedSessions.release(second), sameInstance(createdDrivers.get(0)));
+        assertThat(SharedSessions.release(third), sameInstance(createdDrivers.get(1)));
+    }
+
+    @Test
+    public void testThatCommandsRunInTheWindowOfTheTest() throws Exception {
+        WebDriver first = SharedSessions.lease("key2", 2, driverFactory);
+        WebDriver second = SharedSessions.lease("key2", 2, driverFactory);
+
+        ((JavascriptExecutor) first).executeScript("document.body.innerHTML = '<p id=\"tab\">first</p>'");
+        ((JavascriptExecutor) second).executeScript("document.body.innerHTML = '<p id=\"tab\">second</p>'");
+        WebElement firstElement = first.findElement(By.id("tab"));
+        WebElement secondElement = second.findElement(By.id("tab"));
+
+        assertThat(secondElement.getText(), is("second"));
+        assertThat(firstElement.getText(), is("first"));
+        assertThat((String) ((JavascriptExecutor) first).executeScript("return arguments[0].textContent", firstElement), is("first"));
+
+        SharedSessions.release(first);
+        SharedSessions.release(second);
+    }
+
+    @Test
+    public void testThatQuitDoesNotQuitSharedDriver() throws Exception {
+        WebDriver first = SharedSessions.lease("key3", 2, driverFactory);
+        first.quit();
+        assertThat(first.getCurrentUrl(), is("about:blank"));
+        SharedSessions.release(first);
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import com.github.webdriverextensions.internal.WebDriverExtensionException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestShardingTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<String> createTestKeys(int count) {
+        List<String> testKeys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            testKeys.add("SomeTest#test" + i + "@Chrome");
+        }
+        return testKeys;
+    }
+
+    private static void assertDisjointAndComplete(List<String> testKeys, int total, TestTimings timings) {
+        Set<String> selected = new HashSet<>();
+        int selectedCount = 0;
+        for (int index = 0; index < total; index++) {
+            List<String> shard = new TestSharding(index, total, timings).select("SomeTest", testKeys, testKeys);
+            selected.addAll(shard);
+            selectedCount += shard.size();
+        }
+        assertThat(selectedCount, is(testKeys.size()));
+        assertThat(selected, is((Set<String>) new HashSet<>(testKeys)));
+    }
+
+    @Test
+    public void testThatHashShardsAreDisjointAndComplete() {
+        assertDisjointAndComplete(createTestKeys(50), 12, null);
+    }
+
+    @Test
+    public void testThatTimingsShardsAreDisjointCompleteAndBalanced() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("timings.txt");
+        TestTimings recordedTimings = new TestTimings(file);
+        List<String> testKeys = createTestKeys(4);
+        recordedTimings.record(testKeys.get(0), 300);
+        recordedTimings.record(testKeys.get(1), 100);
+        recordedTimings.record(testKeys.get(2), 100);
+        recordedTimings.record(testKeys.get(3), 100);
+        TestTimings timings = new TestTimings(file);
+
+        assertDisjointAndComplete(testKeys, 2, timings);
+        List<String> shard0 = new TestSharding(0, 2, timings).select("SomeTest", testKeys, testKeys);
+        List<String> shard1 = new TestSharding(1, 2, timings).select("SomeTest", testKeys, testKeys);
+        // The slow test runs alone and the three fast ones together
+        assertThat(Math.min(shard0.size(), shard1.size()), is(1));
+    }
+
+    @Test
+    public void testThatTimingsRecordedDuringTheRunDoNotChangeTheShards() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("timings.txt");
+        List<String> firstClassKeys = new ArrayList<>();
+        List<String> secondClassKeys = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            firstClassKeys.add("FirstTest#test" + i);
+            secondClassKeys.add("SecondTest#test" + i);
+            lines.add("FirstTest#test" + i + "\t" + (100 + i * 10));
+            lines.add("SecondTest#test" + i + "\t" + (100 + i * 10));
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        // Each node has its own copy of the timings and records the tests it
+        // runs before the shard of the next class is selected
+        int total = 3;
+        List<List<String>> firstClassShards = new ArrayList<>();
+        List<List<String>> secondClassShards = new ArrayList<>();
+        for (int index = 0; index < total; index++) {
+            Path nodeFile = temporaryFolder.getRoot().toPath().resolve("timings-" + index + ".txt");
+            Files.copy(file, nodeFile);
+            TestTimings timings = new TestTimings(nodeFile);
+            TestSharding sharding = new TestSharding(index, total, timings);
+            List<String> firstClassShard = sharding.select("FirstTest", firstClassKeys, firstClassKeys);
+            firstClassShards.add(firstClassShard);
+            for (String testKey : firstClassShard) {
+                timings.record(testKey, 100000 * (index + 1));
+            }
+            timings.record("SecondTest#test" + index, 100000 * (index + 1));
+            secondClassShards.add(sharding.select("SecondTest", secondClassKeys, secondClassKeys));
+        }
+
+        // No test runs on two nodes and every test runs on one
+        assertThat(countTests(firstClassShards), is(firstClassKeys.size()));
+        assertThat(union(firstClassShards), is((Set<String>) new HashSet<>(firstClassKeys)));
+        assertThat(countTests(secondClassShards), is(secondClassKeys.size()));
+        assertThat(union(secondClassShards), is((Set<String>) new HashSet<>(secondClassKeys)));
+    }
+
+    private static int countTests(List<List<String>> shards) {
+        int count = 0;
+        for (List<String> shard : shards) {
+            count += shard.size();
+        }
+        return count;
+    }
+
+    private static Set<String> union(List<List<String>> shards) {
+        Set<String> union = new HashSet<>();
+        for (List<String> shard : shards) {
+            union.addAll(shard);
+        }
+        return union;
+    }
+
+    @Test(expected = WebDriverExtensionException.class)
+    public void testThatIndexOutOfRangeIsRejected() {
+        new TestSharding(3, 3, null);
+    }
+}
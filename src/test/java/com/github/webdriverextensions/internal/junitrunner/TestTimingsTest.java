@@ -0,0 +1,54 @@
+package com.github.webdriverextensions.internal.junitrunner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestTimingsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatRecordedTimingsAreLoadedByLaterRuns() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("timings.txt");
+        TestTimings timings = new TestTimings(file);
+        timings.record("SomeTest#test1@Chrome", 100);
+        timings.record("SomeTest#test1@Chrome", 300);
+        timings.record("SomeTest#test2@Chrome", 50);
+
+        TestTimings laterTimings = new TestTimings(file);
+
+        assertThat(laterTimings.getDuration("SomeTest#test1@Chrome"), is(200L));
+        assertThat(laterTimings.getDuration("SomeTest#test2@Chrome"), is(50L));
+        assertThat(laterTimings.getDuration("SomeTest#test3@Chrome"), is(nullValue()));
+        assertThat(laterTimings.getAverageDuration(), is(125L));
+    }
+
+    @Test
+    public void testThatOnlyLastTimingsAreAveragedAndMalformedLinesAreSkipped() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("timings.txt");
+        Files.write(file, Arrays.asList("SomeTest#test1\t1000", "malformed", "SomeTest#test1\tabc",
+                "SomeTest#test1\t10", "SomeTest#test1\t10", "SomeTest#test1\t10", "SomeTest#test1\t10", "SomeTest#test1\t10"),
+                StandardCharsets.UTF_8);
+
+        TestTimings timings = new TestTimings(file);
+
+        assertThat(timings.getDuration("SomeTest#test1"), is(10L));
+    }
+
+    @Test
+    public void testThatMissingFileMeansNoTimings() {
+        TestTimings timings = new TestTimings(temporaryFolder.getRoot().toPath().resolve("missing.txt"));
+
+        assertThat(timings.getDuration("SomeTest#test1"), is(nullValue()));
+        assertThat(timings.getAverageDuration(), is(0L));
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.webdriverextensions.junitrunner;
+
+import static com.github.webdriverextensions.Bot.driver;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import com.github.webdriverextensions.junitrunner.annotations.HtmlUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(WebDriverRunner.class)
+@HtmlUnit(profile = BrowserProfile.FAST_HEADLESS)
+public class BrowserProfileRunnerTest {
+
+    @Test
+    public void testThatDriverStartsWithProfile() {
+        driver().get("about:blank");
+        assertThat(driver().getCurrentUrl(), is("about:blank"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.webdriverextensions.junitrunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Test;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+public class BrowserProfileTest {
+
+    @Test
+    public void testThatDefaultProfileKeepsCapabilities() {
+        DesiredCapabilities desiredCapabilities = new DesiredCapabilities();
+        assert BrowserProfile.DEFAULT.applyTo(BrowserType.CHROME, desiredCapabilities) == desiredCapabilities;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThatChromeOptionsAreMergedWithAnnotatedOptions() {
+        DesiredCapabilities desiredCapabilities = new DesiredCapabilities();
+        desiredCapabilities.setCapability("chromeOptions", Collections.singletonMap("args", Arrays.asList("--start-maximized", "--headless")));
+        desiredCapabilities.setCapability("pageLoadStrategy", "normal");
+
+        Capabilities capabilities = BrowserProfile.FAST_HEADLESS.applyTo(BrowserType.CHROME, desiredCapabilities);
+
+        Map<String, Object> chromeOptions = (Map<String, Object>) capabilities.getCapability("chromeOptions");
+        assertThat(chromeOptions.get("args"), is((Object) Arrays.asList("--headless", "--disable-gpu", "--disable-dev-shm-usage",
+                "--disable-extensions", "--blink-settings=imagesEnabled=false", "--start-maximized")));
+        assertThat(((Map<String, Object>) chromeOptions.get("prefs")).get("profile.managed_default_content_settings.images"), is((Object) 2));
+        // Annotated values take precedence over the preset
+        assertThat(capabilities.getCapability("pageLoadStrategy"), is((Object) "normal"));
+    }
+
+    @Test
+    public void testThatProfileIsReadFromPropertyForDefault() {
+        System.setProperty("webdriverextensions.browserprofile", "fast-headless");
+        try {
+            assertThat(BrowserProfile.resolve(BrowserProfile.DEFAULT), is(BrowserProfile.FAST_HEADLESS));
+            assertThat(BrowserProfile.resolve(BrowserProfile.HEADLESS), is(BrowserProfile.HEADLESS));
+        } finally {
+            System.clearProperty("webdriverextensions.browserprofile");
+        }
+        assertThat(BrowserProfile.resolve(BrowserProfile.DEFAULT), is(BrowserProfile.DEFAULT));
+    }
+
+    @Test
+    public void testThatHtmlUnitOnlyGetsPageLoadStrategy() {
+        Capabilities capabilities = BrowserProfile.FAST_HEADLESS.applyTo(BrowserType.HTMLUNIT, new DesiredCapabilities());
+        assertThat(capabilities.asMap().size(), is(1));
+        assertThat(capabilities.getCapability("pageLoadStrategy"), is((Object) "eager"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.webdriverextensions.junitrunner;
+
+import static com.github.webdriverextensions.Bot.driver;
+import static org.junit.Assert.assertTrue;
+import com.github.webdriverextensions.junitrunner.annotations.HtmlUnit;
+import com.github.webdriverextensions.junitrunner.annotations.Parallel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openqa.selenium.WebDriver;
+
+@RunWith(WebDriverRunner.class)
+@HtmlUnit
+@Parallel(threads = 3)
+public class ParallelRunnerTest {
+
+    private static final CountDownLatch allTestsStarted = new CountDownLatch(3);
+    private static final Set<WebDriver> drivers = Collections.synchronizedSet(new HashSet<WebDriver>());
+
+    @Test
+    public void firstTest() throws InterruptedException {
+        assertThatTestsRunInParallelWithOwnDrivers();
+    }
+
+    @Test
+    public void secondTest() throws InterruptedException {
+        assertThatTestsRunInParallelWithOwnDrivers();
+    }
+
+    @Test
+    public void thirdTest() throws InterruptedException {
+        assertThatTestsRunInParallelWithOwnDrivers();
+    }
+
+    private void assertThatTestsRunInParallelWithOwnDrivers() throws InterruptedException {
+        boolean ownDriver = drivers.add(driver());
+        assertTrue("Each test should have a driver of its own", ownDriver);
+        allTestsStarted.countDown();
+        boolean allStarted = allTestsStarted.await(30, TimeUnit.SECONDS);
+        assertTrue("All tests should run at the same time", allStarted);
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.webdriverextensions.junitrunner;
+
+import static com.github.webdriverextensions.Bot.driver;
+import static org.junit.Assert.assertTrue;
+import com.github.webdriverextensions.junitrunner.annotations.HtmlUnit;
+import com.github.webdriverextensions.junitrunner.annotations.Parallel;
+import com.github.webdriverextensions.junitrunner.annotations.SharedSession;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(WebDriverRunner.class)
+@HtmlUnit(desiredCapabilities = "{ javascriptEnabled: true }")
+@Parallel(threads = 3)
+@SharedSession(tabs = 3)
+public class SharedSessionRunnerTest {
+
+    private static final CountDownLatch allTestsStarted = new CountDownLatch(3);
+    private static final Set<String> windowHandles = Collections.synchronizedSet(new HashSet<String>());
+
+    @Test
+    public void firstTest() throws InterruptedException {
+        assertThatTestsRunInParallelInOwnWindowsOfOneDriver();
+    }
+
+    @Test
+    public void secondTest() throws InterruptedException {
+        assertThatTestsRunInParallelInOwnWindowsOfOneDriver();
+    }
+
+    @Test
+    public void thirdTest() throws InterruptedException {
+        assertThatTestsRunInParallelInOwnWindowsOfOneDriver();
+    }
+
+    private void assertThatTestsRunInParallelInOwnWindowsOfOneDriver() throws InterruptedException {
+        boolean ownWindow = windowHandles.add(driver().getWindowHandle());
+        assertTrue("Each test should have a window of its own", ownWindow);
+        allTestsStarted.countDown();
+        boolean allStarted = allTestsStarted.await(30, TimeUnit.SECONDS);
+        assertTrue("All tests should run at the same time", allStarted);
+        assertTrue("The windows should belong to one driver", driver().getWindowHandles().containsAll(windowHandles));
+    }
+}
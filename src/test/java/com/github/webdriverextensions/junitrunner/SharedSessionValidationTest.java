@@ -0,0 +1,35 @@
+package com.github.webdriverextensions.junitrunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import com.github.webdriverextensions.junitrunner.annotations.HtmlUnit;
+import com.github.webdriverextensions.junitrunner.annotations.ImplicitlyWait;
+import com.github.webdriverextensions.junitrunner.annotations.SharedSession;
+import org.junit.Test;
+import org.junit.runners.model.InitializationError;
+
+public class SharedSessionValidationTest {
+
+    @HtmlUnit
+    @SharedSession(tabs = 2)
+    public static class ImplicitlyWaitingSharedSessionTest {
+
+        @Test
+        @ImplicitlyWait(1)
+        public void test() {
+        }
+    }
+
+    @Test
+    public void testThatImplicitlyWaitIsRejectedForSharedSession() throws Exception {
+        try {
+            new WebDriverRunner(ImplicitlyWaitingSharedSessionTest.class);
+            fail("@ImplicitlyWait should not be allowed on a test sharing a browser");
+        } catch (InitializationError e) {
+            assertThat(e.getCauses().size(), is(1));
+            assertThat(e.getCauses().get(0).getMessage(), containsString("@ImplicitlyWait"));
+        }
+    }
+}